@@ -0,0 +1,98 @@
+package com.jameselner.convo.cluster;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.lang.NonNull;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+
+import java.util.List;
+
+/**
+ * Sits on the broker channel and copies every broadcast to a clustered
+ * destination onto the {@link ClusterTransport}, so the other nodes can hand
+ * it to their own subscribers. Frames that arrived from another node carry
+ * {@link #ORIGIN_NODE_HEADER} and are not sent back out. Frames marked with
+ * {@link #NODE_LOCAL_HEADER} describe this node's own state, e.g. presence of
+ * its sessions, and are never copied whatever their destination.
+ */
+@Component
+@ConditionalOnProperty(name = "convo.broker.mode", havingValue = "cluster")
+public class ClusterBrokerInterceptor implements ChannelInterceptor {
+
+    public static final String ORIGIN_NODE_HEADER = "convoOriginNode";
+    public static final String NODE_LOCAL_HEADER = "convoNodeLocal";
+
+    private final ClusterTransport transport;
+    private final ClusterSubscriptionRegistry subscriptions;
+    private final int nodeId;
+    private final List<String> clusteredDestinations;
+    private final Counter published;
+    private final DistributionSummary localFanOut;
+
+    public ClusterBrokerInterceptor(
+            final ClusterTransport transport,
+            final ClusterSubscriptionRegistry subscriptions,
+            final MeterRegistry meterRegistry,
+            @Value("${convo.id.node-id:0}") final int nodeId,
+            @Value("${convo.broker.cluster.destinations:/topic/room/,/topic/typing/}")
+            final List<String> clusteredDestinations
+    ) {
+        this.transport = transport;
+        this.subscriptions = subscriptions;
+        this.nodeId = nodeId;
+        this.clusteredDestinations = List.copyOf(clusteredDestinations);
+        this.published = Counter.builder("convo.broker.cluster.frames")
+                .tag("direction", "published")
+                .description("Broadcasts sent to the other nodes")
+                .register(meterRegistry);
+        this.localFanOut = DistributionSummary.builder("convo.broker.cluster.fanout")
+                .tag("origin", "local")
+                .description("Local subscribers reached per broadcast")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Message<?> preSend(@NonNull final Message<?> message, @NonNull final MessageChannel channel) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        String destination = accessor.getDestination();
+        if (accessor.getMessageType() != SimpMessageType.MESSAGE
+                || accessor.getHeader(ORIGIN_NODE_HEADER) != null
+                || accessor.getHeader(NODE_LOCAL_HEADER) != null
+                || !isClustered(destination)
+                || !(message.getPayload() instanceof byte[] payload)) {
+            return message;
+        }
+
+        MimeType contentType = accessor.getContentType();
+        transport.publish(new ClusterFrame(
+                nodeId,
+                destination,
+                contentType != null ? contentType.toString() : null,
+                payload
+        ));
+        published.increment();
+        localFanOut.record(subscriptions.subscriberCount(destination));
+        return message;
+    }
+
+    boolean isClustered(final String destination) {
+        if (destination == null) {
+            return false;
+        }
+        for (String prefix : clusteredDestinations) {
+            if (destination.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,12 @@
+package com.jameselner.convo.cluster;
+
+/**
+ * A broadcast as it travels between nodes: the broker destination, the
+ * serialized payload and its content type, tagged with the node it came from.
+ */
+public record ClusterFrame(
+    int originNode,
+    String destination,
+    String contentType,
+    byte[] payload
+) {}
@@ -0,0 +1,106 @@
+package com.jameselner.convo.cluster;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+
+/**
+ * Hands broadcasts published by other nodes to this node's broker, which
+ * then delivers them to the local subscribers. Frames for destinations nobody
+ * here subscribes to are dropped before they reach the broker.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "convo.broker.mode", havingValue = "cluster")
+public class ClusterFrameReceiver implements SmartLifecycle {
+
+    private final ClusterTransport transport;
+    private final ClusterSubscriptionRegistry subscriptions;
+    private final MessageChannel brokerChannel;
+    private final int nodeId;
+    private final Counter received;
+    private final Counter dropped;
+    private final DistributionSummary remoteFanOut;
+
+    private volatile boolean running;
+
+    public ClusterFrameReceiver(
+            final ClusterTransport transport,
+            final ClusterSubscriptionRegistry subscriptions,
+            @Qualifier("brokerChannel") final MessageChannel brokerChannel,
+            final MeterRegistry meterRegistry,
+            @Value("${convo.id.node-id:0}") final int nodeId
+    ) {
+        this.transport = transport;
+        this.subscriptions = subscriptions;
+        this.brokerChannel = brokerChannel;
+        this.nodeId = nodeId;
+        this.received = Counter.builder("convo.broker.cluster.frames")
+                .tag("direction", "received")
+                .description("Broadcasts received from other nodes")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("convo.broker.cluster.frames")
+                .tag("direction", "dropped")
+                .description("Broadcasts from other nodes with no local subscriber")
+                .register(meterRegistry);
+        this.remoteFanOut = DistributionSummary.builder("convo.broker.cluster.fanout")
+                .tag("origin", "remote")
+                .description("Local subscribers reached per broadcast")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void start() {
+        transport.subscribe(this::receive);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    void receive(final ClusterFrame frame) {
+        if (!running || frame.originNode() == nodeId) {
+            return;
+        }
+        received.increment();
+
+        int subscribers = subscriptions.subscriberCount(frame.destination());
+        if (subscribers == 0) {
+            dropped.increment();
+            return;
+        }
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(frame.destination());
+        if (frame.contentType() != null) {
+            accessor.setContentType(MimeType.valueOf(frame.contentType()));
+        }
+        accessor.setHeader(ClusterBrokerInterceptor.ORIGIN_NODE_HEADER, frame.originNode());
+        accessor.setLeaveMutable(true);
+
+        try {
+            brokerChannel.send(MessageBuilder.createMessage(frame.payload(), accessor.getMessageHeaders()));
+            remoteFanOut.record(subscribers);
+        } catch (RuntimeException e) {
+            log.warn("Failed to deliver frame from node {} to {}", frame.originNode(), frame.destination(), e);
+        }
+    }
+}
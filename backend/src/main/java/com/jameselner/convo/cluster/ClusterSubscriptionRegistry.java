@@ -0,0 +1,112 @@
+package com.jameselner.convo.cluster;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Subscriptions held by the STOMP sessions connected to this node, counted
+ * per destination. Frames from other nodes are only handed to the local
+ * broker when somebody here is listening.
+ */
+@Component
+@ConditionalOnProperty(name = "convo.broker.mode", havingValue = "cluster")
+public class ClusterSubscriptionRegistry {
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    // sessionId -> subscriptionId -> destination
+    private final Map<String, Map<String, String>> sessions = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> destinations = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> patterns = new ConcurrentHashMap<>();
+    private final AtomicInteger total = new AtomicInteger();
+
+    public ClusterSubscriptionRegistry(final MeterRegistry meterRegistry) {
+        Gauge.builder("convo.broker.cluster.subscriptions", total, AtomicInteger::get)
+                .description("STOMP subscriptions held by this node")
+                .register(meterRegistry);
+        Gauge.builder("convo.broker.cluster.destinations", destinations, Map::size)
+                .description("Distinct destinations subscribed on this node")
+                .register(meterRegistry);
+    }
+
+    @EventListener
+    public void handleSubscribe(final SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        add(accessor.getSessionId(), accessor.getSubscriptionId(), accessor.getDestination());
+    }
+
+    @EventListener
+    public void handleUnsubscribe(final SessionUnsubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        remove(accessor.getSessionId(), accessor.getSubscriptionId());
+    }
+
+    @EventListener
+    public void handleDisconnect(final SessionDisconnectEvent event) {
+        Map<String, String> subscriptions = sessions.remove(event.getSessionId());
+        if (subscriptions != null) {
+            subscriptions.values().forEach(this::decrement);
+        }
+    }
+
+    void add(final String sessionId, final String subscriptionId, final String destination) {
+        if (sessionId == null || subscriptionId == null || destination == null) {
+            return;
+        }
+        String previous = sessions.computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>())
+                .put(subscriptionId, destination);
+        if (previous != null) {
+            decrement(previous);
+        }
+        countersFor(destination).computeIfAbsent(destination, d -> new AtomicInteger()).incrementAndGet();
+        total.incrementAndGet();
+    }
+
+    void remove(final String sessionId, final String subscriptionId) {
+        Map<String, String> subscriptions = sessionId != null ? sessions.get(sessionId) : null;
+        if (subscriptions == null || subscriptionId == null) {
+            return;
+        }
+        String destination = subscriptions.remove(subscriptionId);
+        if (destination != null) {
+            decrement(destination);
+        }
+    }
+
+    /**
+     * Number of local subscriptions that a broadcast to {@code destination}
+     * reaches, including pattern subscriptions such as {@code /topic/room/*}.
+     */
+    public int subscriberCount(final String destination) {
+        AtomicInteger exact = destinations.get(destination);
+        int count = exact != null ? exact.get() : 0;
+        for (Map.Entry<String, AtomicInteger> pattern : patterns.entrySet()) {
+            if (pathMatcher.match(pattern.getKey(), destination)) {
+                count += pattern.getValue().get();
+            }
+        }
+        return count;
+    }
+
+    private void decrement(final String destination) {
+        countersFor(destination).computeIfPresent(destination,
+                (d, count) -> count.decrementAndGet() <= 0 ? null : count);
+        total.decrementAndGet();
+    }
+
+    private Map<String, AtomicInteger> countersFor(final String destination) {
+        return pathMatcher.isPattern(destination) ? patterns : destinations;
+    }
+}
@@ -0,0 +1,15 @@
+package com.jameselner.convo.cluster;
+
+import java.util.function.Consumer;
+
+/**
+ * Carries broadcasts between backend nodes. Implementations deliver every
+ * published frame to the listeners of every node, including the publisher's
+ * own; receivers drop frames that originate from themselves.
+ */
+public interface ClusterTransport {
+
+    void publish(ClusterFrame frame);
+
+    void subscribe(Consumer<ClusterFrame> listener);
+}
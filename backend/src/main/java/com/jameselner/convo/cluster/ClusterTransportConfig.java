@@ -0,0 +1,21 @@
+package com.jameselner.convo.cluster;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Default transport for {@code convo.broker.mode=cluster}. Without a
+ * networked {@link ClusterTransport} bean the node only loops back to itself.
+ */
+@Configuration
+@ConditionalOnProperty(name = "convo.broker.mode", havingValue = "cluster")
+public class ClusterTransportConfig {
+
+    @Bean
+    @ConditionalOnMissingBean(ClusterTransport.class)
+    public ClusterTransport loopbackClusterTransport() {
+        return new LoopbackClusterTransport(new LoopbackClusterTransport.Hub());
+    }
+}
@@ -0,0 +1,37 @@
+package com.jameselner.convo.cluster;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * In-memory transport. Nodes that share a {@link Hub} see each other's frames,
+ * which lets several nodes run inside one JVM (e.g. in tests). A node with a
+ * hub of its own behaves exactly like a single-node deployment.
+ * <p>
+ * Frames are delivered synchronously on the publishing thread.
+ */
+public class LoopbackClusterTransport implements ClusterTransport {
+
+    private final Hub hub;
+
+    public LoopbackClusterTransport(final Hub hub) {
+        this.hub = hub;
+    }
+
+    @Override
+    public void publish(final ClusterFrame frame) {
+        for (Consumer<ClusterFrame> listener : hub.listeners) {
+            listener.accept(frame);
+        }
+    }
+
+    @Override
+    public void subscribe(final Consumer<ClusterFrame> listener) {
+        hub.listeners.add(listener);
+    }
+
+    public static final class Hub {
+        private final List<Consumer<ClusterFrame>> listeners = new CopyOnWriteArrayList<>();
+    }
+}
@@ -0,0 +1,43 @@
+package com.jameselner.convo.config;
+
+import com.jameselner.convo.jdbc.ConcurrencyLimitedDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.lang.NonNull;
+
+import javax.sql.DataSource;
+
+@Configuration
+public class DataSourceConfig {
+
+    /**
+     * Puts a {@link ConcurrencyLimitedDataSource} in front of the auto-configured
+     * pool, so every user of the {@code DataSource} bean (JPA, JdbcTemplate,
+     * Flyway) shares the same permits. A max-concurrency of 0 leaves the pool bare.
+     */
+    @Bean
+    public static BeanPostProcessor concurrencyLimitedDataSourcePostProcessor(
+            final ObjectProvider<MeterRegistry> meterRegistry,
+            @Value("${convo.datasource.max-concurrency:10}") final int maxConcurrency,
+            @Value("${convo.datasource.acquire-timeout-ms:30000}") final long acquireTimeoutMs
+    ) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(@NonNull final Object bean, @NonNull final String beanName) {
+                if (!(bean instanceof DataSource dataSource)
+                        || bean instanceof ConcurrencyLimitedDataSource
+                        || maxConcurrency <= 0) {
+                    return bean;
+                }
+                ConcurrencyLimitedDataSource limited =
+                        new ConcurrencyLimitedDataSource(dataSource, maxConcurrency, acquireTimeoutMs);
+                meterRegistry.ifAvailable(limited::bindTo);
+                return limited;
+            }
+        };
+    }
+}
@@ -0,0 +1,31 @@
+package com.jameselner.convo.config;
+
+import com.jameselner.convo.model.id.SnowflakeIdGenerator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.stereotype.Component;
+
+@Configuration
+public class IdGeneratorConfig {
+
+    /**
+     * Each backend node needs its own {@code convo.id.node-id} (0-15)
+     * so concurrently generated IDs never collide.
+     */
+    @Bean
+    public SnowflakeIdGenerator snowflakeIdGenerator(@Value("${convo.id.node-id:0}") final int nodeId) {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(nodeId);
+        SnowflakeIdGenerator.install(generator);
+        return generator;
+    }
+
+    // Entities must not be persisted before the configured node is installed
+    @Component
+    static class SnowflakeEntityManagerFactoryDependsOn extends EntityManagerFactoryDependsOnPostProcessor {
+        SnowflakeEntityManagerFactoryDependsOn() {
+            super("snowflakeIdGenerator");
+        }
+    }
+}
@@ -38,7 +38,7 @@ public class SecurityConfig {
                 .csrf(AbstractHttpConfigurer::disable)
                 .cors(cors -> cors.configurationSource(corsConfigurationSource()))
                 .authorizeHttpRequests(auth -> auth
-                        .requestMatchers("/api/auth/**", "/ws/**", "/ws-chat/**").permitAll()
+                        .requestMatchers("/api/auth/**", "/ws/**", "/ws-chat/**", "/ws-chat-native/**").permitAll()
                         .anyRequest().authenticated()
                 )
                 .sessionManagement(session -> session
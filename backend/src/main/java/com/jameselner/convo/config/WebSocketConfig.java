@@ -1,34 +1,124 @@
 package com.jameselner.convo.config;
 
+import com.jameselner.convo.cluster.ClusterBrokerInterceptor;
 import com.jameselner.convo.security.JwtChannelInterceptor;
-import lombok.RequiredArgsConstructor;
+import com.jameselner.convo.websocket.CompactFrameTranscoder;
+import com.jameselner.convo.websocket.OutboundSessionBuffers;
+import com.jameselner.convo.websocket.PresenceChannelInterceptor;
+import com.jameselner.convo.websocket.WireFormatNegotiator;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.lang.NonNull;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.config.SimpleBrokerRegistration;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 import org.springframework.web.socket.server.support.HttpSessionHandshakeInterceptor;
 
-@RequiredArgsConstructor
+/**
+ * STOMP over WebSocket. {@code convo.broker.mode} selects the broker:
+ * <ul>
+ *     <li>{@code simple} - in-memory broker, broadcasts stay on this node</li>
+ *     <li>{@code relay} - an external STOMP broker (e.g. ActiveMQ) shared by all nodes</li>
+ *     <li>{@code cluster} - in-memory broker per node, with broadcasts to rooms,
+ *     typing and user status copied between nodes over a {@code ClusterTransport}</li>
+ * </ul>
+ * The inbound and outbound channels run on Boot's {@code applicationTaskExecutor},
+ * which hands out virtual threads when {@code spring.threads.virtual.enabled} is set.
+ * <p>
+ * Clients on {@code /ws-chat-native} can ask for the compact wire format
+ * at CONNECT, see {@code WireFormatNegotiator}.
+ */
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     private final JwtChannelInterceptor jwtChannelInterceptor;
+    private final PresenceChannelInterceptor presenceChannelInterceptor;
+    private final OutboundSessionBuffers outboundSessionBuffers;
+    private final WireFormatNegotiator wireFormatNegotiator;
+    private final CompactFrameTranscoder compactFrameTranscoder;
+    private final ObjectProvider<ClusterBrokerInterceptor> clusterBrokerInterceptor;
+    private final String[] allowedOriginPatterns;
+    private final String brokerMode;
+    private final String relayHost;
+    private final int relayPort;
+    private final String relayLogin;
+    private final String relayPasscode;
+    private final long heartbeatMs;
+    private final TaskScheduler messageBrokerTaskScheduler;
+
+    public WebSocketConfig(
+            final JwtChannelInterceptor jwtChannelInterceptor,
+            final PresenceChannelInterceptor presenceChannelInterceptor,
+            final OutboundSessionBuffers outboundSessionBuffers,
+            final WireFormatNegotiator wireFormatNegotiator,
+            final CompactFrameTranscoder compactFrameTranscoder,
+            final ObjectProvider<ClusterBrokerInterceptor> clusterBrokerInterceptor,
+            @Value("${convo.websocket.allowed-origin-patterns:*}") final String[] allowedOriginPatterns,
+            @Value("${convo.broker.mode:simple}") final String brokerMode,
+            @Value("${convo.broker.relay.host:localhost}") final String relayHost,
+            @Value("${convo.broker.relay.port:61613}") final int relayPort,
+            @Value("${convo.broker.relay.login:guest}") final String relayLogin,
+            @Value("${convo.broker.relay.passcode:guest}") final String relayPasscode,
+            @Value("${convo.presence.heartbeat-ms:10000}") final long heartbeatMs,
+            @Lazy @Qualifier("messageBrokerTaskScheduler") final TaskScheduler messageBrokerTaskScheduler
+    ) {
+        this.jwtChannelInterceptor = jwtChannelInterceptor;
+        this.presenceChannelInterceptor = presenceChannelInterceptor;
+        this.outboundSessionBuffers = outboundSessionBuffers;
+        this.wireFormatNegotiator = wireFormatNegotiator;
+        this.compactFrameTranscoder = compactFrameTranscoder;
+        this.clusterBrokerInterceptor = clusterBrokerInterceptor;
+        this.allowedOriginPatterns = allowedOriginPatterns;
+        this.brokerMode = brokerMode;
+        this.relayHost = relayHost;
+        this.relayPort = relayPort;
+        this.relayLogin = relayLogin;
+        this.relayPasscode = relayPasscode;
+        this.heartbeatMs = heartbeatMs;
+        this.messageBrokerTaskScheduler = messageBrokerTaskScheduler;
+    }
 
     @Override
     public void configureMessageBroker(@NonNull final MessageBrokerRegistry config) {
-        // Enable a simple in-memory message broker
         // Prefix for messages FROM server TO client
-        config.enableSimpleBroker("/topic", "/queue");
+        switch (brokerMode) {
+            case "relay" -> {
+                config.enableStompBrokerRelay("/topic", "/queue")
+                        .setRelayHost(relayHost)
+                        .setRelayPort(relayPort)
+                        .setClientLogin(relayLogin)
+                        .setClientPasscode(relayPasscode)
+                        .setSystemLogin(relayLogin)
+                        .setSystemPasscode(relayPasscode)
+                        // Lets /user destinations reach sessions on other nodes
+                        .setUserDestinationBroadcast("/topic/unresolved-user-destination")
+                        .setUserRegistryBroadcast("/topic/user-registry");
+            }
+            case "cluster" -> {
+                withHeartbeats(config.enableSimpleBroker("/topic", "/queue"));
+                config.configureBrokerChannel().interceptors(clusterBrokerInterceptor.getObject());
+            }
+            case "simple" -> withHeartbeats(config.enableSimpleBroker("/topic", "/queue"));
+            default -> throw new IllegalStateException("Unknown convo.broker.mode: " + brokerMode);
+        }
 
         // Prefix for messages FROM client TO server
         config.setApplicationDestinationPrefixes("/app");
 
         // Prefix for user-specific messages
         config.setUserDestinationPrefix("/user");
+
+        // Frames to one session leave in the order they were published, e.g. a room's messages
+        config.setPreservePublishOrder(true);
     }
 
     @Override
@@ -36,13 +126,42 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         // WebSocket endpoint that clients will connect to
         registry.addEndpoint("/ws-chat")
                 .addInterceptors(new HttpSessionHandshakeInterceptor())
-                .setAllowedOriginPatterns("*") // TODO: Restrict origins in production
+                .setAllowedOriginPatterns(allowedOriginPatterns)
                 .withSockJS(); // Fallback for browsers without WebSocket support
+
+        // Plain WebSocket, which can carry the binary frames of the compact wire format
+        registry.addEndpoint("/ws-chat-native")
+                .addInterceptors(new HttpSessionHandshakeInterceptor(), wireFormatNegotiator)
+                .setAllowedOriginPatterns(allowedOriginPatterns);
+
+        // Frames from one session are handled in the order they arrived, e.g. onto room lanes
+        registry.setPreserveReceiveOrder(true);
+    }
+
+    @Override
+    public void configureWebSocketTransport(@NonNull final WebSocketTransportRegistration registration) {
+        // Bounded send queue per session, so slow clients are cut off instead of holding up broadcasts
+        registration.addDecoratorFactory(outboundSessionBuffers);
     }
 
     @Override
     public void configureClientInboundChannel(@NonNull final ChannelRegistration registration) {
-        registration.interceptors(jwtChannelInterceptor);
+        registration.interceptors(jwtChannelInterceptor, presenceChannelInterceptor, wireFormatNegotiator);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(@NonNull final ChannelRegistration registration) {
+        registration.interceptors(compactFrameTranscoder);
+    }
+
+    /**
+     * Heartbeats let the broker and {@code PresenceService} notice clients that vanished without a DISCONNECT.
+     */
+    private void withHeartbeats(final SimpleBrokerRegistration registration) {
+        if (heartbeatMs > 0) {
+            registration.setHeartbeatValue(new long[] {heartbeatMs, heartbeatMs})
+                    .setTaskScheduler(messageBrokerTaskScheduler);
+        }
     }
 
-}
\ No newline at end of file
+}
@@ -1,15 +1,20 @@
 package com.jameselner.convo.controller;
 
-import com.jameselner.convo.dto.ChatMessageDTO;
 import com.jameselner.convo.dto.ChatRoomDTO;
+import com.jameselner.convo.dto.MessageHistoryDTO;
+import com.jameselner.convo.dto.OracleRequestDTO;
+import com.jameselner.convo.dto.SearchResultDTO;
+import com.jameselner.convo.dto.UnreadCountsDTO;
+import com.jameselner.convo.security.CustomUserDetailsService;
 import com.jameselner.convo.service.ChatService;
-import com.jameselner.convo.service.OracleService;
+import com.jameselner.convo.service.OracleDispatcher;
+import com.jameselner.convo.service.UnreadCounterService;
+import com.jameselner.convo.websocket.ChatFrameEncoder;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.domain.Page;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 
 import java.util.List;
 import java.util.Map;
@@ -21,8 +26,10 @@ import java.util.Map;
 public class ChatController {
 
     private final ChatService chatService;
-    private final OracleService oracleService;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final OracleDispatcher oracleDispatcher;
+    private final UnreadCounterService unreadCounterService;
+    private final CustomUserDetailsService userDetailsService;
+    private final ChatFrameEncoder chatFrameEncoder;
 
     @PostMapping("/room")
     public ResponseEntity<ChatRoomDTO> createChatRoom(
@@ -68,34 +75,55 @@ public class ChatController {
         return ResponseEntity.ok(chatRoom);
     }
 
+    /**
+     * Unread counts of the rooms the user has read before. Later changes are
+     * pushed on {@code /user/queue/unread}.
+     */
+    @GetMapping("/unread")
+    public ResponseEntity<UnreadCountsDTO> getUnreadCounts(final Authentication authentication) {
+        Long userId = userDetailsService.userIdOf(authentication.getName());
+        return ResponseEntity.ok(unreadCounterService.countsFor(userId, authentication.getName()));
+    }
+
     @GetMapping("/room/{roomId}/messages")
-    public ResponseEntity<Page<ChatMessageDTO>> getRoomMessages(
+    public ResponseEntity<MessageHistoryDTO> getRoomMessages(
             @PathVariable final Long roomId,
-            @RequestParam(defaultValue = "0") final int page,
+            @RequestParam(required = false) final Long before,
+            @RequestParam(required = false) final Long after,
+            @RequestParam(required = false) final String cursor,
             @RequestParam(defaultValue = "50") final int size
     ) {
-        Page<ChatMessageDTO> chatRoomMessages = chatService.getChatRoomMessages(roomId, page, size);
+        MessageHistoryDTO chatRoomMessages = chatService.getChatRoomMessages(roomId, before, after, cursor, size);
         return ResponseEntity.ok(chatRoomMessages);
     }
 
     @GetMapping("/room/{roomId}/search")
-    public ResponseEntity<List<ChatMessageDTO>> searchMessages(
+    public ResponseEntity<SearchResultDTO> searchMessages(
             @PathVariable final Long roomId,
-            @RequestParam final String keyword
+            @RequestParam final String keyword,
+            @RequestParam(defaultValue = "0") final int page,
+            @RequestParam(defaultValue = "20") final int size
     ) {
-        List<ChatMessageDTO> messages = chatService.searchMessages(roomId, keyword);
-        return ResponseEntity.ok(messages);
+        SearchResultDTO results = chatService.searchMessages(roomId, keyword, page, size);
+        return ResponseEntity.ok(results);
     }
 
+    /**
+     * With {@code async=true} the request is accepted with 202 and the prophecy
+     * is only delivered on {@code /topic/room/{roomId}}. Otherwise the response
+     * body is the JSON that was broadcast, without serializing it again.
+     */
     @PostMapping("/room/{roomId}/oracle/ask")
-    public ResponseEntity<ChatMessageDTO> askOracle(
+    public ResponseEntity<?> askOracle(
             @PathVariable final Long roomId,
-            @RequestParam(defaultValue = "2") final int order
+            @RequestParam(defaultValue = "2") final int order,
+            @RequestParam(defaultValue = "false") final boolean async
     ) {
-        OracleService.OracleResult result = oracleService.askOracle(roomId, order);
-        ChatMessageDTO oracleDto = chatService.convertToDTO(result.getMessage());
-        oracleDto.setOracleMetadata(result.getMetadata());
-        messagingTemplate.convertAndSend("/topic/room/" + roomId, oracleDto);
-        return ResponseEntity.ok(oracleDto);
+        if (async) {
+            OracleRequestDTO request = oracleDispatcher.submit(roomId, order);
+            return ResponseEntity.accepted().body(request);
+        }
+        byte[] prophecy = chatFrameEncoder.encode(oracleDispatcher.askNow(roomId, order)).payload();
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(prophecy);
     }
 }
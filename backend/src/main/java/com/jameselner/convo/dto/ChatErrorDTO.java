@@ -0,0 +1,10 @@
+package com.jameselner.convo.dto;
+
+/**
+ * Sent on {@code /user/queue/errors} when a frame the user sent to a room could not be handled.
+ */
+public record ChatErrorDTO(
+    Long chatRoomId,
+    String errorCode,
+    String message
+) {}
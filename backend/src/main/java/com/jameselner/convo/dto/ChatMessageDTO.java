@@ -1,9 +1,12 @@
 package com.jameselner.convo.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 import java.time.LocalDateTime;
 
@@ -23,6 +26,23 @@ public class ChatMessageDTO {
     private int readByCount;
     private OracleMetadata oracleMetadata;
 
+    /**
+     * This message as sent to the room, set by {@code ChatFrameEncoder} on the
+     * first send. Changes made to the DTO after that are not sent.
+     */
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private transient EncodedFrame encodedFrame;
+
+    /**
+     * The same for sessions on the compact wire format, see {@code CompactFrameTranscoder}
+     */
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private transient EncodedFrame compactFrame;
+
     @Data
     @Builder
     @NoArgsConstructor
@@ -31,6 +51,9 @@ public class ChatMessageDTO {
         private int messagesAnalyzed;
         private int uniqueTokens;
         private int chainOrder;
+        private long modelBytes;
+        private int contextNodes;
+        private int backoffSteps;
     }
 
     public enum MessageType {
@@ -0,0 +1,13 @@
+package com.jameselner.convo.dto;
+
+import org.springframework.util.MimeType;
+
+/**
+ * A payload serialized once and then shared by every send of it: the broker
+ * broadcast, each subscriber's frame and a REST response. The bytes must not
+ * be modified.
+ */
+public record EncodedFrame(
+    byte[] payload,
+    MimeType contentType
+) {}
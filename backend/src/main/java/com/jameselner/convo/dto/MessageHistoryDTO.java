@@ -0,0 +1,13 @@
+package com.jameselner.convo.dto;
+
+import java.util.List;
+
+/**
+ * One slice of a room's history. {@code nextCursor} continues in the same
+ * direction and is {@code null} once there is nothing more to read.
+ */
+public record MessageHistoryDTO(
+    List<ChatMessageDTO> messages,
+    boolean hasMore,
+    String nextCursor
+) {}
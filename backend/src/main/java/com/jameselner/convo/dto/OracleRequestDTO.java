@@ -0,0 +1,12 @@
+package com.jameselner.convo.dto;
+
+/**
+ * Acknowledges an asynchronous Oracle request; the prophecy arrives on the room topic.
+ *
+ * @param coalesced whether the request joined a generation already running for the room and order
+ */
+public record OracleRequestDTO(
+    Long roomId,
+    int order,
+    boolean coalesced
+) {}
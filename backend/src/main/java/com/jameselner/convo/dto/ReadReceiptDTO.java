@@ -0,0 +1,8 @@
+package com.jameselner.convo.dto;
+
+/**
+ * Sent to {@code /app/read/{roomId}}: everything up to this message has been read.
+ */
+public record ReadReceiptDTO(
+    Long messageId
+) {}
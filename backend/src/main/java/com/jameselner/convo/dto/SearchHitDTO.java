@@ -0,0 +1,16 @@
+package com.jameselner.convo.dto;
+
+import java.util.List;
+
+/**
+ * A matching message with its relevance score and the {@code [start, end)}
+ * character ranges of its content that matched the query.
+ */
+public record SearchHitDTO(
+    ChatMessageDTO message,
+    double score,
+    List<Highlight> highlights
+) {
+
+    public record Highlight(int start, int end) {}
+}
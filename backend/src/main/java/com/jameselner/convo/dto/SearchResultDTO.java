@@ -0,0 +1,13 @@
+package com.jameselner.convo.dto;
+
+import java.util.List;
+
+/**
+ * One page of search hits, best match first.
+ */
+public record SearchResultDTO(
+    List<SearchHitDTO> hits,
+    long totalHits,
+    int page,
+    int size
+) {}
@@ -0,0 +1,13 @@
+package com.jameselner.convo.dto;
+
+import java.util.List;
+
+/**
+ * Broadcast on {@code /topic/typing/{roomId}}: everyone currently typing in
+ * the room on one node. Each frame replaces the previous one from that node.
+ */
+public record TypingDTO(
+    Long chatRoomId,
+    int node,
+    List<String> usernames
+) {}
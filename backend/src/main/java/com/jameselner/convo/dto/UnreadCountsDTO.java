@@ -0,0 +1,10 @@
+package com.jameselner.convo.dto;
+
+import java.util.Map;
+
+/**
+ * Unread message counts by room ID. Pushed updates only carry the rooms that changed.
+ */
+public record UnreadCountsDTO(
+    Map<Long, Long> rooms
+) {}
@@ -0,0 +1,7 @@
+package com.jameselner.convo.event;
+
+/**
+ * Published when a chat room and, by cascade, its messages are deleted.
+ */
+public record ChatRoomDeletedEvent(Long chatRoomId) {
+}
@@ -0,0 +1,32 @@
+package com.jameselner.convo.event;
+
+import com.jameselner.convo.model.Message;
+
+import java.time.LocalDateTime;
+
+/**
+ * Published once a message is durably stored: after the surrounding
+ * transaction commits, or after the write-behind batch containing it lands.
+ */
+public record MessagePersistedEvent(
+    Long messageId,
+    Long chatRoomId,
+    Long senderId,
+    String senderUsername,
+    String content,
+    Message.MessageType type,
+    LocalDateTime timestamp
+) {
+
+    public static MessagePersistedEvent from(final Message message) {
+        return new MessagePersistedEvent(
+                message.getId(),
+                message.getChatRoom().getId(),
+                message.getSender().getId(),
+                message.getSender().getUsername(),
+                message.getContent(),
+                message.getType(),
+                message.getTimestamp()
+        );
+    }
+}
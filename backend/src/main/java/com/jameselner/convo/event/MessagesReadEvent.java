@@ -0,0 +1,12 @@
+package com.jameselner.convo.event;
+
+/**
+ * Published when a user's read watermark in a room moves forward: every
+ * message up to {@code lastReadMessageId} is now read.
+ */
+public record MessagesReadEvent(
+    Long userId,
+    Long chatRoomId,
+    long lastReadMessageId
+) {
+}
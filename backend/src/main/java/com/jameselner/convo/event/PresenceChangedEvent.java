@@ -0,0 +1,10 @@
+package com.jameselner.convo.event;
+
+import com.jameselner.convo.model.User;
+
+/**
+ * Published when a user's effective status changes, e.g. the last session
+ * closed and the offline grace period ran out.
+ */
+public record PresenceChangedEvent(Long userId, String username, User.UserStatus status) {
+}
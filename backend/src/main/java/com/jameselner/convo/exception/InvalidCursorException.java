@@ -0,0 +1,17 @@
+package com.jameselner.convo.exception;
+
+import org.springframework.http.HttpStatus;
+
+public class InvalidCursorException extends ConvoException {
+
+    private static final HttpStatus STATUS = HttpStatus.BAD_REQUEST;
+    private static final String ERROR_CODE = "INVALID_CURSOR";
+
+    public InvalidCursorException(String cursor) {
+        super(
+            String.format("Invalid history cursor: %s", cursor),
+            STATUS,
+            ERROR_CODE
+        );
+    }
+}
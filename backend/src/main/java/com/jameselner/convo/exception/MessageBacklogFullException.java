@@ -0,0 +1,17 @@
+package com.jameselner.convo.exception;
+
+import org.springframework.http.HttpStatus;
+
+public class MessageBacklogFullException extends ConvoException {
+
+    private static final HttpStatus STATUS = HttpStatus.SERVICE_UNAVAILABLE;
+    private static final String ERROR_CODE = "MESSAGE_BACKLOG_FULL";
+
+    public MessageBacklogFullException(int pending) {
+        super(
+            String.format("Message backlog is full (%d pending), please retry shortly", pending),
+            STATUS,
+            ERROR_CODE
+        );
+    }
+}
@@ -0,0 +1,18 @@
+package com.jameselner.convo.exception;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+@Getter
+public class RateLimitedException extends ConvoException {
+
+    private static final HttpStatus STATUS = HttpStatus.TOO_MANY_REQUESTS;
+    private static final String ERROR_CODE = "RATE_LIMITED";
+
+    private final long retryAfterMs;
+
+    public RateLimitedException(String message, long retryAfterMs) {
+        super(message, STATUS, ERROR_CODE);
+        this.retryAfterMs = retryAfterMs;
+    }
+}
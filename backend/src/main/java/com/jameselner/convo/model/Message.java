@@ -1,5 +1,6 @@
 package com.jameselner.convo.model;
 
+import com.jameselner.convo.model.id.SnowflakeId;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -7,8 +8,6 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
-import java.util.HashSet;
-import java.util.Set;
 
 @Entity
 @Table(name = "message")
@@ -19,14 +18,14 @@ import java.util.Set;
 public class Message {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SnowflakeId
     private Long id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "sender_id", nullable = false)
     private User sender;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "chat_room_id", nullable = false)
     private ChatRoom chatRoom;
 
@@ -36,14 +35,6 @@ public class Message {
     @Enumerated(EnumType.STRING)
     private MessageType type = MessageType.TEXT;
 
-    @ElementCollection
-    @CollectionTable(
-            name = "message_reader",
-            joinColumns = @JoinColumn(name = "message_id")
-    )
-    @Column(name = "user_id")
-    private Set<Long> readByUserIds = new HashSet<>();
-
     @Column(nullable = false)
     private LocalDateTime timestamp = LocalDateTime.now();
 
@@ -1,5 +1,7 @@
 package com.jameselner.convo.model;
 
+import com.jameselner.convo.model.id.SnowflakeId;
+import com.jameselner.convo.security.UserCacheEvictionListener;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -13,6 +15,7 @@ import java.util.Set;
 
 @Entity
 @Table(name = "user")
+@EntityListeners(UserCacheEvictionListener.class)
 @Data
 @Builder
 @NoArgsConstructor
@@ -20,7 +23,7 @@ import java.util.Set;
 public class User {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SnowflakeId
     private Long id;
 
     @Column(nullable = false, unique = true)
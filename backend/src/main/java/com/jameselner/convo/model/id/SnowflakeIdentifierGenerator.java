@@ -0,0 +1,37 @@
+package com.jameselner.convo.model.id;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.hibernate.generator.EventTypeSets;
+
+import java.util.EnumSet;
+
+public class SnowflakeIdentifierGenerator implements BeforeExecutionGenerator {
+
+    @Override
+    public Object generate(
+            final SharedSessionContractImplementor session,
+            final Object owner,
+            final Object currentValue,
+            final EventType eventType
+    ) {
+        return SnowflakeIdGenerator.shared().nextId();
+    }
+
+    @Override
+    public EnumSet<EventType> getEventTypes() {
+        return EventTypeSets.INSERT_ONLY;
+    }
+
+    /**
+     * IDs only come from this generator (the write-behind path assigns its own
+     * but inserts over JDBC), so an entity with an ID already exists. That lets
+     * Hibernate reference detached entities, such as cached system users,
+     * without selecting them first.
+     */
+    @Override
+    public boolean allowAssignedIdentifiers() {
+        return false;
+    }
+}
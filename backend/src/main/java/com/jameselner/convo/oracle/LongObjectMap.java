@@ -0,0 +1,128 @@
+package com.jameselner.convo.oracle;
+
+import java.util.function.Consumer;
+
+/**
+ * Open-addressing hash map from {@code long} keys to objects, without boxing
+ * the keys or allocating per entry. Linear probing with backward-shift
+ * deletion, so there are no tombstones.
+ * <p>
+ * The key {@code 0} marks an empty slot and must not be used.
+ */
+final class LongObjectMap<V> {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+
+    LongObjectMap() {
+        allocate(MIN_CAPACITY);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Approximate heap size of the table itself, excluding the values.
+     */
+    long bytes() {
+        return 2 * 16L + (long) keys.length * (Long.BYTES + Integer.BYTES);
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(final long key) {
+        int slot = slot(key);
+        while (true) {
+            long candidate = keys[slot];
+            if (candidate == key) {
+                return (V) values[slot];
+            }
+            if (candidate == 0) {
+                return null;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    void put(final long key, final V value) {
+        if (key == 0) {
+            throw new IllegalArgumentException("0 is reserved for empty slots");
+        }
+        int slot = slot(key);
+        while (keys[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        if (keys[slot] == 0) {
+            keys[slot] = key;
+            if (++size * 4 > keys.length * 3) {
+                values[slot] = value;
+                resize(keys.length * 2);
+                return;
+            }
+        }
+        values[slot] = value;
+    }
+
+    void remove(final long key) {
+        int slot = slot(key);
+        while (keys[slot] != key) {
+            if (keys[slot] == 0) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        // Shift later entries of the probe run back into the gap
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (keys[next] != 0) {
+            int home = slot(keys[next]);
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = 0;
+        values[gap] = null;
+        size--;
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEachValue(final Consumer<? super V> action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                action.accept((V) values[i]);
+            }
+        }
+    }
+
+    private int slot(final long key) {
+        // Fibonacci hashing spreads the packed token IDs over the table
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    private void allocate(final int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void resize(final int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                put(oldKeys[i], (V) oldValues[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.jameselner.convo.oracle;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Streams a room's latest messages out of the database, tokenized for its
+ * Oracle model.
+ * <p>
+ * Messages are read oldest first in keyset-paginated chunks, starting at the
+ * {@code maxMessages}-th newest. Like room history, they are sought on
+ * {@code (timestamp, id)} over {@code idx_message_chat_room_timestamp}, to
+ * which InnoDB appends the primary key, so no load sorts the room. Each chunk is tokenized on the fork/join pool
+ * while the next one is read, and its text can be collected as soon as that
+ * is done, so a long history is never held as strings all at once.
+ */
+@Component
+public class OracleHistoryLoader {
+
+    private static final String START_SQL =
+            "SELECT timestamp, id FROM message WHERE chat_room_id = ? " +
+            "ORDER BY timestamp DESC, id DESC LIMIT 1 OFFSET ?";
+
+    private static final String FIRST_CHUNK_SQL =
+            "SELECT id, content, timestamp FROM message WHERE chat_room_id = ? AND id > ? " +
+            "ORDER BY timestamp, id LIMIT ?";
+
+    private static final String CHUNK_SQL =
+            "SELECT id, content, timestamp FROM message WHERE chat_room_id = ? " +
+            "AND (timestamp > ? OR (timestamp = ? AND id >= ?)) AND id > ? " +
+            "ORDER BY timestamp, id LIMIT ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int chunkSize;
+
+    public OracleHistoryLoader(
+            final JdbcTemplate jdbcTemplate,
+            @Value("${convo.oracle.load-chunk-size:2000}") final int chunkSize
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * The room's latest {@code maxMessages} messages, oldest first.
+     */
+    public List<TokenizedChunk> load(final Long roomId, final int maxMessages) {
+        return load(roomId, maxMessages, Long.MIN_VALUE);
+    }
+
+    /**
+     * The room's latest {@code maxMessages} messages with an ID above
+     * {@code afterId}, oldest first.
+     */
+    public List<TokenizedChunk> load(final Long roomId, final int maxMessages, final long afterId) {
+        if (maxMessages <= 0) {
+            return List.of();
+        }
+        // Without a start row the room has fewer messages, read from its first
+        List<Object[]> start = jdbcTemplate.query(START_SQL,
+                (rs, row) -> new Object[] {rs.getTimestamp(1), rs.getLong(2)}, roomId, maxMessages - 1);
+        Timestamp fromTimestamp = start.isEmpty() ? null : (Timestamp) start.getFirst()[0];
+        long fromId = start.isEmpty() ? 0 : (Long) start.getFirst()[1];
+
+        List<ForkJoinTask<List<TokenizedChunk>>> tokenizing = new ArrayList<>();
+        int remaining = maxMessages;
+        while (remaining > 0) {
+            int limit = Math.min(chunkSize, remaining);
+            long[] ids = new long[limit];
+            String[] contents = new String[limit];
+            Timestamp[] lastTimestamp = {null};
+            int[] read = {0};
+            RowCallbackHandler collect = rs -> {
+                ids[read[0]] = rs.getLong(1);
+                contents[read[0]] = rs.getString(2);
+                lastTimestamp[0] = rs.getTimestamp(3);
+                read[0]++;
+            };
+            if (fromTimestamp == null) {
+                jdbcTemplate.query(FIRST_CHUNK_SQL, collect, roomId, afterId, limit);
+            } else {
+                jdbcTemplate.query(CHUNK_SQL, collect, roomId, fromTimestamp, fromTimestamp, fromId, afterId, limit);
+            }
+
+            if (read[0] > 0) {
+                tokenizing.add(TokenizedChunk.fork(ids, contents, read[0]));
+                // Seek past the last row read
+                fromTimestamp = lastTimestamp[0];
+                fromId = ids[read[0] - 1] + 1;
+            }
+            remaining -= read[0];
+            if (read[0] < limit) {
+                break;
+            }
+        }
+
+        List<TokenizedChunk> chunks = new ArrayList<>();
+        for (ForkJoinTask<List<TokenizedChunk>> task : tokenizing) {
+            chunks.addAll(task.join());
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,150 @@
+package com.jameselner.convo.oracle;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.jameselner.convo.event.ChatRoomDeletedEvent;
+import com.jameselner.convo.event.MessagePersistedEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Per-room Oracle models, served from memory.
+ * <p>
+ * A room's model is loaded from its latest messages, streamed and tokenized
+ * in parallel by {@link OracleHistoryLoader}, the first time the Oracle is
+ * asked there, then follows every stored message via
+ * {@link MessagePersistedEvent}. Rooms nobody asks for are dropped after a
+ * while and reloaded on the next request.
+ * <p>
+ * With an {@link OracleSnapshotStore} enabled, changed models are snapshotted
+ * periodically, when dropped and at shutdown. A room with a snapshot is
+ * restored from it and only replays the messages stored since, so warming up
+ * doesn't depend on the length of its history.
+ */
+@Slf4j
+@Component
+public class OracleModelRegistry {
+
+    private final OracleHistoryLoader historyLoader;
+    private final OracleSnapshotStore snapshotStore;
+    private final int maxHistory;
+    private final int maxOrder;
+    private final long memoryBudgetBytes;
+    private final Cache<Long, RoomChain> chains;
+
+    public OracleModelRegistry(
+            final OracleHistoryLoader historyLoader,
+            final OracleSnapshotStore snapshotStore,
+            final MeterRegistry meterRegistry,
+            @Value("${convo.oracle.max-history:300}") final int maxHistory,
+            @Value("${convo.oracle.max-order:5}") final int maxOrder,
+            @Value("${convo.oracle.memory-budget-bytes:4194304}") final long memoryBudgetBytes,
+            @Value("${convo.oracle.max-rooms:1000}") final long maxRooms,
+            @Value("${convo.oracle.idle-minutes:30}") final long idleMinutes
+    ) {
+        this.historyLoader = historyLoader;
+        this.snapshotStore = snapshotStore;
+        this.maxHistory = maxHistory;
+        this.maxOrder = maxOrder;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.chains = Caffeine.newBuilder()
+                .maximumSize(maxRooms)
+                .expireAfterAccess(Duration.ofMinutes(idleMinutes))
+                .recordStats()
+                .removalListener((Long roomId, RoomChain chain, RemovalCause cause) -> {
+                    if (cause.wasEvicted() && chain != null && chain.hasChangesSinceSnapshot()) {
+                        writeSnapshot(roomId, chain);
+                    }
+                })
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, chains, "oracle-models");
+    }
+
+    /**
+     * The room's model, restoring or loading it on first use.
+     */
+    public RoomChain chainFor(final Long roomId) {
+        RoomChain chain = chains.get(roomId, this::restoreOrCreate);
+        if (chain.isLoaded()) {
+            return chain;
+        }
+        // One caller loads the history, concurrent cold asks wait for it
+        // instead of repeating the scan. The chain itself stays unlocked
+        // meanwhile, so stored messages keep queueing up on it
+        synchronized (chain.loadLock) {
+            if (!chain.isLoaded()) {
+                List<TokenizedChunk> history;
+                try {
+                    history = historyLoader.load(roomId, maxHistory, chain.lastMessageId());
+                } catch (RuntimeException e) {
+                    // Don't keep collecting messages for a model that never loaded
+                    chains.asMap().remove(roomId, chain);
+                    throw e;
+                }
+                chain.loadTokenized(history);
+            }
+        }
+        return chain;
+    }
+
+    /**
+     * Snapshot every model that changed since its last snapshot.
+     */
+    @PreDestroy
+    @Scheduled(fixedDelayString = "${convo.oracle.snapshot.interval-ms:60000}")
+    public void writeSnapshots() {
+        if (!snapshotStore.isEnabled()) {
+            return;
+        }
+        chains.asMap().forEach((roomId, chain) -> {
+            if (chain.hasChangesSinceSnapshot()) {
+                writeSnapshot(roomId, chain);
+            }
+        });
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessagePersisted(final MessagePersistedEvent event) {
+        RoomChain chain = chains.getIfPresent(event.chatRoomId());
+        if (chain != null) {
+            chain.add(event.messageId(), event.content());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChatRoomDeleted(final ChatRoomDeletedEvent event) {
+        chains.invalidate(event.chatRoomId());
+        snapshotStore.delete(event.chatRoomId());
+    }
+
+    private RoomChain restoreOrCreate(final Long roomId) {
+        RoomChain chain = new RoomChain(maxHistory, maxOrder, memoryBudgetBytes);
+        try {
+            snapshotStore.restore(roomId, chain);
+            return chain;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Discarding the unreadable Oracle snapshot of room {}", roomId, e);
+            snapshotStore.delete(roomId);
+            return new RoomChain(maxHistory, maxOrder, memoryBudgetBytes);
+        }
+    }
+
+    private void writeSnapshot(final Long roomId, final RoomChain chain) {
+        try {
+            snapshotStore.write(roomId, chain);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not snapshot the Oracle model of room {}", roomId, e);
+        }
+    }
+}
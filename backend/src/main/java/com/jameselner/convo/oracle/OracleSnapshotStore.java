@@ -0,0 +1,105 @@
+package com.jameselner.convo.oracle;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Keeps one snapshot file of each room's Oracle model in a local directory.
+ * <p>
+ * Snapshots are written straight into a memory-mapped temporary file, forced
+ * to disk and moved over the previous one, so a crash leaves either the old
+ * or the new snapshot and never half of one. They are read back through a
+ * read-only mapping. An empty directory setting disables snapshots.
+ */
+@Slf4j
+@Component
+public class OracleSnapshotStore {
+
+    private static final String SUFFIX = ".snapshot";
+
+    private final Path directory;
+
+    public OracleSnapshotStore(@Value("${convo.oracle.snapshot.dir:}") final String directory) {
+        this.directory = directory.isBlank() ? null : Path.of(directory);
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Replace the room's snapshot with the chain's current model.
+     */
+    void write(final Long roomId, final RoomChain chain) throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, "room-" + roomId + "-", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer[] mapped = new MappedByteBuffer[1];
+                chain.writeSnapshot(size -> {
+                    try {
+                        mapped[0] = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                        return mapped[0];
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                mapped[0].force();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            Files.move(temp, fileFor(roomId), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Fill an empty chain from the room's snapshot.
+     *
+     * @return false if there is no snapshot
+     * @throws IllegalArgumentException if the snapshot is corrupt or doesn't fit the chain
+     */
+    boolean restore(final Long roomId, final RoomChain chain) throws IOException {
+        if (!isEnabled()) {
+            return false;
+        }
+        Path file = fileFor(roomId);
+        if (!Files.exists(file)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping outlives the channel, but the chain copies everything out of it
+            chain.restoreSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        return true;
+    }
+
+    void delete(final Long roomId) {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(fileFor(roomId));
+        } catch (IOException e) {
+            log.warn("Could not delete the Oracle snapshot of room {}", roomId, e);
+        }
+    }
+
+    private Path fileFor(final Long roomId) {
+        return directory.resolve("room-" + roomId + SUFFIX);
+    }
+}
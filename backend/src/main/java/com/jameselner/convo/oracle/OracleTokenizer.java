@@ -0,0 +1,72 @@
+package com.jameselner.convo.oracle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits message text into the words and punctuation the Oracle chains over.
+ * <p>
+ * Tokens are runs of ASCII letters, digits, underscores and apostrophes, and
+ * the single marks {@code .,!?;:} - exactly what {@code [\w']+|[.,!?;:]}
+ * matches - found by a hand-written scan rather than a regex.
+ */
+public final class OracleTokenizer {
+
+    /**
+     * Receives each token as a range of the scanned text.
+     */
+    @FunctionalInterface
+    public interface TokenSink {
+        void token(String content, int start, int end);
+    }
+
+    private OracleTokenizer() {
+    }
+
+    public static List<String> tokenize(final String content) {
+        List<String> tokens = new ArrayList<>();
+        scan(content, (text, start, end) -> tokens.add(text.substring(start, end)));
+        return tokens;
+    }
+
+    /**
+     * Report every token of {@code content} in order, without creating strings.
+     */
+    public static void scan(final String content, final TokenSink sink) {
+        if (content == null) {
+            return;
+        }
+        int length = content.length();
+        int i = 0;
+        while (i < length) {
+            char c = content.charAt(i);
+            if (isWordChar(c)) {
+                int start = i;
+                do {
+                    i++;
+                } while (i < length && isWordChar(content.charAt(i)));
+                sink.token(content, start, i);
+            } else {
+                if (isPunctuation(c)) {
+                    sink.token(content, i, i + 1);
+                }
+                i++;
+            }
+        }
+    }
+
+    public static boolean isTerminal(final String token) {
+        return ".".equals(token) || "!".equals(token) || "?".equals(token);
+    }
+
+    private static boolean isWordChar(final char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '\'';
+    }
+
+    private static boolean isPunctuation(final char c) {
+        return switch (c) {
+            case '.', ',', '!', '?', ';', ':' -> true;
+            default -> false;
+        };
+    }
+}
@@ -0,0 +1,625 @@
+package com.jameselner.convo.oracle;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32;
+
+/**
+ * Variable-order Markov model of one room's most recent messages, kept up to
+ * date as messages arrive instead of being rebuilt per request.
+ * <p>
+ * Tokens of the last {@code maxMessages} messages form one continuous stream.
+ * Contexts live in a trie read backwards from the most recent token: the
+ * root's child for {@code c} is the context "c", its child for {@code b} is
+ * "b c", and so on up to {@code maxOrder}. Every order therefore shares the
+ * nodes of its shorter suffixes, and each node only stores the frequencies of
+ * the tokens that followed it. Appending a token counts it under each context
+ * it completes. Evicting the oldest message un-counts the contexts that start
+ * in it and prunes nodes left empty, so the trie always matches the window.
+ * <p>
+ * A walk uses the longest context up to the requested order that has been
+ * seen, backing off to shorter ones instead of stopping at an unseen state.
+ * When the estimated footprint exceeds {@code memoryBudgetBytes} the oldest
+ * messages are evicted early.
+ * <p>
+ * Tokens are interned as int IDs by a {@link TokenDictionary}. Trie edges
+ * are keyed by parent node ID and token ID packed into a {@code long} in one
+ * {@link LongObjectMap}, and next tokens are drawn from {@link Successors} by
+ * alias sampling, so a walk step allocates nothing.
+ * <p>
+ * History can be loaded as {@link TokenizedChunk}s tokenized in parallel, or
+ * restored from a snapshot and then topped up with the messages since.
+ * Messages that arrive while it is still being loaded are held back and
+ * applied afterwards, skipping any the load already returned.
+ */
+public final class RoomChain {
+
+    /**
+     * The tokens of a generated prophecy and the state of the model it came from.
+     *
+     * @param backoffSteps how many tokens were drawn from a shorter context than {@code order}
+     */
+    public record Walk(List<String> tokens, int order, int messagesAnalyzed, int uniqueTokens,
+                       long modelBytes, int contextNodes, int backoffSteps) {
+    }
+
+    private record PendingMessage(long messageId, String content) {
+    }
+
+    private static final int START_ATTEMPTS = 10;
+    private static final long TOKEN_MASK = (1L << TokenDictionary.ID_BITS) - 1;
+
+    // Snapshot layout, big-endian:
+    //   int magic, int version, int maxOrder, long lastMessageId
+    //   int idLimit, then per ID the UTF-8 byte length (-1 if free) and bytes
+    //   int messageCount, then each message's token count
+    //   int windowSize, then the window's token IDs
+    //   int nodeCount, then per trie node, parents first: int parentIndex
+    //   (-1 for the root), int token, int successorCount, and a token and count per successor
+    //   long CRC32 of everything before it
+    private static final int SNAPSHOT_MAGIC = 0x4F52434C;
+    private static final int SNAPSHOT_VERSION = 1;
+
+    // Rough per-object costs for the footprint estimate
+    private static final long NODE_BYTES = 48;
+    private static final long DICTIONARY_ENTRY_BYTES = 96;
+
+    private final int maxMessages;
+    private final int maxOrder;
+    private final long memoryBudgetBytes;
+    private final TokenDictionary dictionary = new TokenDictionary();
+    private final IntWindow window = new IntWindow();
+    private final ArrayDeque<Integer> messageLengths = new ArrayDeque<>();
+    private final ContextNode root = new ContextNode(0, null, 0);
+    private final LongObjectMap<ContextNode> edges = new LongObjectMap<>();
+    private final Successors.Scratch scratch = new Successors.Scratch();
+    private final List<PendingMessage> pending = new ArrayList<>();
+
+    /**
+     * Held by whoever loads the history, apart from the chain's own monitor.
+     */
+    final Object loadLock = new Object();
+
+    private long nextNodeId = 1;
+    private long successorBytes;
+    private int[] walkBuffer = new int[0];
+    private int[] appendBuffer = new int[64];
+    private boolean loaded;
+    private long lastMessageId = Long.MIN_VALUE;
+    private long restoredLastMessageId = Long.MIN_VALUE;
+    private long changes;
+    private long snapshotChanges;
+
+    public RoomChain(final int maxMessages, final int maxOrder, final long memoryBudgetBytes) {
+        if (maxOrder < 1) {
+            throw new IllegalArgumentException("Order must be at least 1: " + maxOrder);
+        }
+        this.maxMessages = maxMessages;
+        this.maxOrder = maxOrder;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+    }
+
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Seed the window from history tokenized ahead of time, chunks oldest first.
+     * Only the first load counts.
+     */
+    public synchronized void loadTokenized(final List<TokenizedChunk> history) {
+        if (loaded) {
+            return;
+        }
+        Set<Long> loadedIds = new HashSet<>();
+        for (TokenizedChunk chunk : history) {
+            appendChunk(chunk, loadedIds);
+        }
+        for (PendingMessage message : pending) {
+            if (message.messageId() > restoredLastMessageId && !loadedIds.contains(message.messageId())) {
+                append(message.messageId(), message.content());
+            }
+        }
+        pending.clear();
+        loaded = true;
+    }
+
+    public synchronized void add(final Long messageId, final String content) {
+        if (!loaded) {
+            pending.add(new PendingMessage(messageId, content));
+            return;
+        }
+        append(messageId, content);
+    }
+
+    /**
+     * The highest message ID the model has seen, {@link Long#MIN_VALUE} if none.
+     */
+    synchronized long lastMessageId() {
+        return lastMessageId;
+    }
+
+    /**
+     * Whether messages were added since the last {@link #writeSnapshot snapshot}.
+     */
+    synchronized boolean hasChangesSinceSnapshot() {
+        return loaded && changes != snapshotChanges;
+    }
+
+    /**
+     * Write the model into a buffer of the exact size needed, obtained from
+     * {@code allocate}, and return it flipped for reading.
+     */
+    synchronized ByteBuffer writeSnapshot(final IntFunction<ByteBuffer> allocate) {
+        byte[][] encodedWords = new byte[dictionary.idLimit()][];
+        long size = 3 * Integer.BYTES + Long.BYTES + Integer.BYTES;
+        for (int id = 0; id < encodedWords.length; id++) {
+            String word = dictionary.word(id);
+            if (word != null) {
+                encodedWords[id] = word.getBytes(StandardCharsets.UTF_8);
+                size += encodedWords[id].length;
+            }
+            size += Integer.BYTES;
+        }
+        size += Integer.BYTES + (long) Integer.BYTES * messageLengths.size();
+        size += Integer.BYTES + (long) Integer.BYTES * window.size();
+
+        List<ContextNode> nodes = nodesParentsFirst();
+        size += Integer.BYTES;
+        for (ContextNode node : nodes) {
+            size += 3 * Integer.BYTES + 2L * Integer.BYTES * node.successors.size();
+        }
+        size += Long.BYTES;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Model too large to snapshot: " + size + " bytes");
+        }
+
+        ByteBuffer buffer = allocate.apply((int) size);
+        buffer.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putInt(maxOrder).putLong(lastMessageId);
+        buffer.putInt(encodedWords.length);
+        for (byte[] word : encodedWords) {
+            if (word == null) {
+                buffer.putInt(-1);
+            } else {
+                buffer.putInt(word.length).put(word);
+            }
+        }
+        buffer.putInt(messageLengths.size());
+        for (int length : messageLengths) {
+            buffer.putInt(length);
+        }
+        buffer.putInt(window.size());
+        for (int i = 0; i < window.size(); i++) {
+            buffer.putInt(window.get(i));
+        }
+
+        buffer.putInt(nodes.size());
+        Map<ContextNode, Integer> indexes = new IdentityHashMap<>(nodes.size() * 2);
+        for (int i = 0; i < nodes.size(); i++) {
+            ContextNode node = nodes.get(i);
+            indexes.put(node, i);
+            buffer.putInt(node.parent == root ? -1 : indexes.get(node.parent));
+            buffer.putInt((int) (node.edgeKey & TOKEN_MASK) - 1);
+            buffer.putInt(node.successors.size());
+            for (int s = 0; s < node.successors.size(); s++) {
+                buffer.putInt(node.successors.tokenAt(s)).putInt(node.successors.countAt(s));
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().flip());
+        buffer.putLong(crc.getValue());
+        snapshotChanges = changes;
+        return buffer.flip();
+    }
+
+    /**
+     * Fill this still empty model from a snapshot. Loading afterwards only
+     * replays messages newer than the snapshot. A chain whose restore throws
+     * may be partly filled and must be discarded.
+     *
+     * @throws IllegalArgumentException if the snapshot is corrupt or was taken with another order
+     */
+    synchronized void restoreSnapshot(final ByteBuffer snapshot) {
+        if (loaded || window.size() > 0) {
+            throw new IllegalStateException("Only an empty model can be restored");
+        }
+        ByteBuffer buffer = snapshot.slice();
+        int end = buffer.limit() - Long.BYTES;
+        if (end < 0) {
+            throw new IllegalArgumentException("Snapshot truncated");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().limit(end));
+        if (crc.getValue() != buffer.getLong(end)) {
+            throw new IllegalArgumentException("Snapshot checksum mismatch");
+        }
+        buffer.limit(end);
+        if (buffer.getInt() != SNAPSHOT_MAGIC || buffer.getInt() != SNAPSHOT_VERSION) {
+            throw new IllegalArgumentException("Not an Oracle model snapshot");
+        }
+        if (buffer.getInt() != maxOrder) {
+            throw new IllegalArgumentException("Snapshot was taken with another order");
+        }
+        long snapshotLastId = buffer.getLong();
+
+        String[] words = new String[buffer.getInt()];
+        for (int id = 0; id < words.length; id++) {
+            int length = buffer.getInt();
+            if (length >= 0) {
+                byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                words[id] = new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+        dictionary.restore(words);
+
+        int messages = buffer.getInt();
+        long tokens = 0;
+        for (int i = 0; i < messages; i++) {
+            int length = buffer.getInt();
+            messageLengths.addLast(length);
+            tokens += length;
+        }
+        int windowSize = buffer.getInt();
+        if (tokens != windowSize) {
+            throw new IllegalArgumentException("Snapshot window doesn't match its messages");
+        }
+        for (int i = 0; i < windowSize; i++) {
+            int id = buffer.getInt();
+            if (id < 0 || id >= words.length || words[id] == null) {
+                throw new IllegalArgumentException("Snapshot window has an unknown token: " + id);
+            }
+            window.addLast(id);
+            dictionary.retain(id);
+        }
+
+        ContextNode[] nodes = new ContextNode[buffer.getInt()];
+        long firstOrderTransitions = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            int parentIndex = buffer.getInt();
+            int token = buffer.getInt();
+            if (parentIndex >= i || token < 0 || token >= words.length) {
+                throw new IllegalArgumentException("Snapshot trie is malformed at node " + i);
+            }
+            ContextNode node = child(parentIndex < 0 ? root : nodes[parentIndex], token);
+            nodes[i] = node;
+            long before = node.successors.bytes();
+            int successors = buffer.getInt();
+            for (int s = 0; s < successors; s++) {
+                node.successors.restore(buffer.getInt(), buffer.getInt());
+            }
+            successorBytes += node.successors.bytes() - before;
+            if (node.depth == 1) {
+                firstOrderTransitions += node.successors.total();
+            }
+        }
+        if (buffer.hasRemaining() || firstOrderTransitions != Math.max(0, windowSize - 1)) {
+            throw new IllegalArgumentException("Snapshot trie doesn't match its window");
+        }
+
+        lastMessageId = snapshotLastId;
+        restoredLastMessageId = snapshotLastId;
+        // The limits may have been lowered since
+        evictOverflow();
+    }
+
+    /**
+     * Estimated heap used by the model.
+     */
+    public synchronized long footprintBytes() {
+        return edges.size() * NODE_BYTES + successorBytes + edges.bytes()
+                + window.bytes() + dictionary.size() * DICTIONARY_ENTRY_BYTES;
+    }
+
+    /**
+     * Walk the chain from a random starting state, as the original per-request generator did.
+     *
+     * @return {@code null} if the room has no words yet
+     */
+    public synchronized Walk generate(final int requestedOrder, final int maxTokens, final Random random) {
+        int size = window.size();
+        if (size == 0) {
+            return null;
+        }
+        int order = Math.clamp(requestedOrder, 1, Math.max(1, Math.min(maxOrder, size - 1)));
+        if (size <= order) {
+            return walk(window.copy(0, size), size, order, 0);
+        }
+
+        if (walkBuffer.length < Math.max(maxTokens, order)) {
+            walkBuffer = new int[Math.max(maxTokens, order)];
+        }
+        int[] generated = walkBuffer;
+        int start = pickStart(order, random);
+        for (int i = 0; i < order; i++) {
+            generated[i] = window.get(start + i);
+        }
+
+        int length = order;
+        int backoffSteps = 0;
+        for (int i = 0; i < maxTokens - order; i++) {
+            ContextNode context = longestContext(generated, length, order);
+            if (context == root || context.successors.isEmpty()) {
+                break;
+            }
+            if (context.depth < order) {
+                backoffSteps++;
+            }
+            int next = context.successors.sample(random, scratch);
+            generated[length++] = next;
+
+            if (dictionary.isTerminal(next)) {
+                break;
+            }
+        }
+
+        return walk(generated, length, order, backoffSteps);
+    }
+
+    /**
+     * The deepest seen context matching the last {@code order} tokens.
+     */
+    private ContextNode longestContext(final int[] tokens, final int length, final int order) {
+        ContextNode context = root;
+        for (int depth = 1; depth <= order; depth++) {
+            ContextNode child = edges.get(edgeKey(context, tokens[length - depth]));
+            if (child == null) {
+                break;
+            }
+            context = child;
+        }
+        return context;
+    }
+
+    private Walk walk(final int[] ids, final int length, final int order, final int backoffSteps) {
+        List<String> tokens = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            tokens.add(dictionary.word(ids[i]));
+        }
+        return new Walk(tokens, order, messageLengths.size(), dictionary.size(),
+                footprintBytes(), edges.size(), backoffSteps);
+    }
+
+    private int pickStart(final int order, final Random random) {
+        int maxStart = window.size() - order;
+        int start = random.nextInt(maxStart + 1);
+
+        int attempts = 0;
+        while (attempts < START_ATTEMPTS && containsTerminal(start, order)) {
+            start = random.nextInt(maxStart + 1);
+            attempts++;
+        }
+        return start;
+    }
+
+    private boolean containsTerminal(final int start, final int order) {
+        for (int i = start; i < start + order; i++) {
+            if (dictionary.isTerminal(window.get(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void append(final long messageId, final String content) {
+        lastMessageId = Math.max(lastMessageId, messageId);
+        List<String> tokens = OracleTokenizer.tokenize(content);
+        if (tokens.isEmpty()) {
+            return;
+        }
+        reserve(tokens.size());
+        int[] ids = messageBuffer(tokens.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            ids[i] = dictionary.acquire(tokens.get(i));
+        }
+        appendMessage(ids, tokens.size());
+    }
+
+    /**
+     * Append a chunk's messages, mapping its local word IDs to dictionary IDs
+     * once per word rather than once per token.
+     */
+    private void appendChunk(final TokenizedChunk chunk, final Set<Long> loadedIds) {
+        int[] dictionaryIds = new int[chunk.vocabularySize()];
+        Arrays.fill(dictionaryIds, -1);
+        int offset = 0;
+        for (int message = 0; message < chunk.messageCount(); message++) {
+            loadedIds.add(chunk.messageId(message));
+            lastMessageId = Math.max(lastMessageId, chunk.messageId(message));
+            int length = chunk.messageLength(message);
+            if (length == 0) {
+                continue;
+            }
+            reserve(length);
+            int[] ids = messageBuffer(length);
+            for (int i = 0; i < length; i++) {
+                int localId = chunk.token(offset + i);
+                // The hint is stale if eviction freed the word since
+                int id = dictionary.acquire(chunk.word(localId), dictionaryIds[localId]);
+                dictionaryIds[localId] = id;
+                ids[i] = id;
+            }
+            appendMessage(ids, length);
+            offset += length;
+        }
+    }
+
+    /**
+     * Keep every possible ID packable, however many distinct words arrive.
+     */
+    private void reserve(final int tokens) {
+        while (!messageLengths.isEmpty() && dictionary.size() + tokens > TokenDictionary.MAX_SIZE) {
+            evictOldestMessage();
+        }
+    }
+
+    private void appendMessage(final int[] ids, final int length) {
+        for (int t = 0; t < length; t++) {
+            int id = ids[t];
+            window.addLast(id);
+
+            int last = window.size() - 1;
+            ContextNode context = root;
+            for (int depth = 1; depth <= maxOrder && depth <= last; depth++) {
+                context = child(context, window.get(last - depth));
+                long before = context.successors.bytes();
+                context.successors.increment(id);
+                successorBytes += context.successors.bytes() - before;
+            }
+        }
+        messageLengths.addLast(length);
+        changes++;
+        evictOverflow();
+    }
+
+    private void evictOverflow() {
+        while (messageLengths.size() > maxMessages
+                || (messageLengths.size() > 1 && footprintBytes() > memoryBudgetBytes)) {
+            evictOldestMessage();
+        }
+    }
+
+    private List<ContextNode> nodesParentsFirst() {
+        List<List<ContextNode>> byDepth = new ArrayList<>(maxOrder);
+        for (int depth = 1; depth <= maxOrder; depth++) {
+            byDepth.add(new ArrayList<>());
+        }
+        edges.forEachValue(node -> byDepth.get(node.depth - 1).add(node));
+        List<ContextNode> nodes = new ArrayList<>(edges.size());
+        byDepth.forEach(nodes::addAll);
+        return nodes;
+    }
+
+    private int[] messageBuffer(final int length) {
+        if (appendBuffer.length < length) {
+            appendBuffer = new int[Math.max(length, appendBuffer.length * 2)];
+        }
+        return appendBuffer;
+    }
+
+    private void evictOldestMessage() {
+        int length = messageLengths.removeFirst();
+        for (int i = 0; i < length; i++) {
+            // Contexts starting at the oldest token, longest first so children are pruned before parents
+            for (int depth = Math.min(maxOrder, window.size() - 1); depth >= 1; depth--) {
+                ContextNode context = root;
+                for (int d = 1; d <= depth; d++) {
+                    context = edges.get(edgeKey(context, window.get(depth - d)));
+                }
+                long before = context.successors.bytes();
+                context.successors.decrement(window.get(depth));
+                successorBytes += context.successors.bytes() - before;
+                prune(context);
+            }
+            dictionary.release(window.removeFirst());
+        }
+    }
+
+    private ContextNode child(final ContextNode parent, final int token) {
+        long key = edgeKey(parent, token);
+        ContextNode child = edges.get(key);
+        if (child == null) {
+            child = new ContextNode(nextNodeId++, parent, parent.depth + 1);
+            child.edgeKey = key;
+            edges.put(key, child);
+            parent.children++;
+            successorBytes += child.successors.bytes();
+        }
+        return child;
+    }
+
+    /**
+     * Remove a context that nothing follows any more, and any parents it leaves empty.
+     */
+    private void prune(final ContextNode context) {
+        ContextNode node = context;
+        while (node != root && node.children == 0 && node.successors.isEmpty()) {
+            edges.remove(node.edgeKey);
+            successorBytes -= node.successors.bytes();
+            node.parent.children--;
+            node = node.parent;
+        }
+    }
+
+    private static long edgeKey(final ContextNode parent, final int token) {
+        return (parent.id << TokenDictionary.ID_BITS) | (token + 1);
+    }
+
+    /**
+     * A context in the trie: the tokens on the path from the root, most recent first.
+     */
+    private static final class ContextNode {
+        private final long id;
+        private final ContextNode parent;
+        private final int depth;
+        private final Successors successors = new Successors();
+        private long edgeKey;
+        private int children;
+
+        ContextNode(final long id, final ContextNode parent, final int depth) {
+            this.id = id;
+            this.parent = parent;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * Growable ring buffer of token IDs with indexed access from the oldest.
+     */
+    private static final class IntWindow {
+        private int[] ids = new int[256];
+        private int head;
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        int get(final int index) {
+            return ids[(head + index) & (ids.length - 1)];
+        }
+
+        void addLast(final int id) {
+            if (size == ids.length) {
+                ids = copy(0, size, ids.length * 2);
+                head = 0;
+            }
+            ids[(head + size) & (ids.length - 1)] = id;
+            size++;
+        }
+
+        int removeFirst() {
+            int id = ids[head];
+            head = (head + 1) & (ids.length - 1);
+            size--;
+            return id;
+        }
+
+        long bytes() {
+            return 16L + (long) ids.length * Integer.BYTES;
+        }
+
+        int[] copy(final int from, final int length) {
+            return copy(from, length, length);
+        }
+
+        private int[] copy(final int from, final int length, final int capacity) {
+            int[] copy = new int[capacity];
+            for (int i = 0; i < length; i++) {
+                copy[i] = get(from + i);
+            }
+            return copy;
+        }
+    }
+}
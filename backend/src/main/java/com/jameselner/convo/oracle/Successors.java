@@ -0,0 +1,180 @@
+package com.jameselner.convo.oracle;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Next-token frequencies of one context, sampled in O(1) with Vose's alias method.
+ * <p>
+ * Counts change as the window moves, so the alias table is rebuilt lazily on
+ * the first sample after a change. Arrays are reused across rebuilds, and the
+ * work arrays of a rebuild come from a {@link Scratch} shared by the whole
+ * model; sampling allocates nothing.
+ */
+final class Successors {
+
+    private static final int[] EMPTY = new int[0];
+
+    /**
+     * Work arrays for alias table construction, owned by one model.
+     */
+    static final class Scratch {
+        private long[] scaled = new long[0];
+        private int[] small = EMPTY;
+        private int[] large = EMPTY;
+
+        private void ensureCapacity(final int capacity) {
+            if (scaled.length < capacity) {
+                scaled = new long[capacity];
+                small = new int[capacity];
+                large = new int[capacity];
+            }
+        }
+    }
+
+    // Most long contexts are followed by a single token
+    private int[] tokens = new int[1];
+    private int[] counts = new int[1];
+    private int size;
+    private int total;
+
+    private int[] thresholds = EMPTY;
+    private int[] aliases = EMPTY;
+    private boolean dirty = true;
+
+    void increment(final int token) {
+        dirty = true;
+        total++;
+        for (int i = 0; i < size; i++) {
+            if (tokens[i] == token) {
+                counts[i]++;
+                return;
+            }
+        }
+        if (size == tokens.length) {
+            tokens = Arrays.copyOf(tokens, size * 2);
+            counts = Arrays.copyOf(counts, size * 2);
+        }
+        tokens[size] = token;
+        counts[size] = 1;
+        size++;
+    }
+
+    /**
+     * @return whether no successors are left
+     */
+    boolean decrement(final int token) {
+        for (int i = 0; i < size; i++) {
+            if (tokens[i] == token) {
+                dirty = true;
+                total--;
+                if (--counts[i] == 0) {
+                    size--;
+                    tokens[i] = tokens[size];
+                    counts[i] = counts[size];
+                }
+                break;
+            }
+        }
+        return size == 0;
+    }
+
+    /**
+     * Add a token that isn't present yet with its count, as read from a snapshot.
+     */
+    void restore(final int token, final int count) {
+        if (size == tokens.length) {
+            tokens = Arrays.copyOf(tokens, size * 2);
+            counts = Arrays.copyOf(counts, size * 2);
+        }
+        tokens[size] = token;
+        counts[size] = count;
+        size++;
+        total += count;
+        dirty = true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int total() {
+        return total;
+    }
+
+    int tokenAt(final int index) {
+        return tokens[index];
+    }
+
+    int countAt(final int index) {
+        return counts[index];
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int sample(final Random random, final Scratch scratch) {
+        if (dirty) {
+            rebuild(scratch);
+        }
+        int column = random.nextInt(size);
+        return random.nextInt(total) < thresholds[column] ? tokens[column] : tokens[aliases[column]];
+    }
+
+    /**
+     * Approximate heap size: the object and its four arrays, counting the
+     * alias arrays at full size whether or not they exist yet. Only changes
+     * when an increment grows the arrays.
+     */
+    long bytes() {
+        return 40L + 4 * 16L + 4L * Integer.BYTES * tokens.length;
+    }
+
+    /**
+     * Column {@code i} keeps its own token with probability
+     * {@code thresholds[i] / total} and otherwise yields {@code aliases[i]}.
+     * Integer arithmetic keeps the distribution exact.
+     */
+    private void rebuild(final Scratch scratch) {
+        if (thresholds.length < size) {
+            thresholds = new int[tokens.length];
+            aliases = new int[tokens.length];
+        }
+        scratch.ensureCapacity(size);
+        long[] scaled = scratch.scaled;
+        int[] small = scratch.small;
+        int[] large = scratch.large;
+
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < size; i++) {
+            scaled[i] = (long) counts[i] * size;
+            if (scaled[i] < total) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            thresholds[less] = (int) scaled[less];
+            aliases[less] = more;
+            scaled[more] -= total - scaled[less];
+            if (scaled[more] < total) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        while (largeCount > 0) {
+            thresholds[large[--largeCount]] = total;
+        }
+        while (smallCount > 0) {
+            thresholds[small[--smallCount]] = total;
+        }
+        dirty = false;
+    }
+}
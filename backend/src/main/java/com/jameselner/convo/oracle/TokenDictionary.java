@@ -0,0 +1,139 @@
+package com.jameselner.convo.oracle;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Interns a room's tokens as small int IDs, counting how often each occurs in
+ * the window. The ID of a token that leaves the window is reused, so IDs stay
+ * below the number of distinct tokens ever live at once.
+ */
+final class TokenDictionary {
+
+    /**
+     * Bits per token ID in a packed trie edge key.
+     */
+    static final int ID_BITS = 21;
+
+    /**
+     * Keys store {@code id + 1} so that no packed key is 0.
+     */
+    static final int MAX_SIZE = (1 << ID_BITS) - 1;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private String[] words = new String[64];
+    private int[] counts = new int[64];
+    private boolean[] terminal = new boolean[64];
+    private int[] freeIds = new int[16];
+    private int freeCount;
+    private int nextId;
+
+    /**
+     * Count one more occurrence of a word, assigning an ID if it is new.
+     */
+    int acquire(final String word) {
+        Integer existing = ids.get(word);
+        int id;
+        if (existing != null) {
+            id = existing;
+        } else {
+            id = freeCount > 0 ? freeIds[--freeCount] : nextId++;
+            ensureCapacity(id + 1);
+            ids.put(word, id);
+            words[id] = word;
+            terminal[id] = OracleTokenizer.isTerminal(word);
+        }
+        counts[id]++;
+        return id;
+    }
+
+    /**
+     * Like {@link #acquire(String)}, but first tries {@code hint}: the ID the
+     * word had when the caller last saw it, or -1.
+     */
+    int acquire(final String word, final int hint) {
+        if (hint >= 0 && word.equals(words[hint])) {
+            counts[hint]++;
+            return hint;
+        }
+        return acquire(word);
+    }
+
+    /**
+     * Count one occurrence less, freeing the ID once none are left.
+     */
+    void release(final int id) {
+        if (--counts[id] > 0) {
+            return;
+        }
+        ids.remove(words[id]);
+        words[id] = null;
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+        }
+        freeIds[freeCount++] = id;
+    }
+
+    /**
+     * Count one more occurrence of a word that already has an ID.
+     */
+    void retain(final int id) {
+        counts[id]++;
+    }
+
+    /**
+     * Reinstate IDs from a snapshot: {@code snapshotWords[id]} for every ID
+     * handed out so far, null where freed. Counts start at zero, to be
+     * {@link #retain retained} for each occurrence.
+     */
+    void restore(final String[] snapshotWords) {
+        ensureCapacity(snapshotWords.length);
+        for (int id = snapshotWords.length - 1; id >= 0; id--) {
+            String word = snapshotWords[id];
+            if (word == null) {
+                if (freeCount == freeIds.length) {
+                    freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+                }
+                freeIds[freeCount++] = id;
+                continue;
+            }
+            ids.put(word, id);
+            words[id] = word;
+            terminal[id] = OracleTokenizer.isTerminal(word);
+        }
+        nextId = snapshotWords.length;
+    }
+
+    /**
+     * One past the highest ID handed out so far.
+     */
+    int idLimit() {
+        return nextId;
+    }
+
+    String word(final int id) {
+        return words[id];
+    }
+
+    boolean isTerminal(final int id) {
+        return terminal[id];
+    }
+
+    /**
+     * Number of distinct tokens in the window.
+     */
+    int size() {
+        return ids.size();
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity <= words.length) {
+            return;
+        }
+        int grown = Math.max(capacity, words.length * 2);
+        words = Arrays.copyOf(words, grown);
+        counts = Arrays.copyOf(counts, grown);
+        terminal = Arrays.copyOf(terminal, grown);
+    }
+}
@@ -0,0 +1,212 @@
+package com.jameselner.convo.oracle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The tokens of a run of consecutive messages, numbered against a vocabulary
+ * of the run's own.
+ * <p>
+ * Runs share nothing, so a history is split into runs that are tokenized in
+ * parallel on the fork/join pool. {@link RoomChain} then merges them in
+ * order, which costs one dictionary lookup per distinct word of a run rather
+ * than one per token. The scan hashes a token straight from the message text,
+ * so only the first occurrence of a word in a run allocates a string.
+ */
+public final class TokenizedChunk {
+
+    private static final int LEAF_MESSAGES = 256;
+
+    private final long[] messageIds;
+    private final int[] messageLengths;
+    private final String[] words;
+    private final int[] tokens;
+
+    private TokenizedChunk(final long[] messageIds, final int[] messageLengths,
+                           final String[] words, final int[] tokens) {
+        this.messageIds = messageIds;
+        this.messageLengths = messageLengths;
+        this.words = words;
+        this.tokens = tokens;
+    }
+
+    /**
+     * Tokenize {@code contents[from..to)} on the calling thread.
+     */
+    public static TokenizedChunk of(final long[] messageIds, final String[] contents, final int from, final int to) {
+        Builder builder = new Builder(to - from);
+        for (int i = from; i < to; i++) {
+            builder.add(messageIds[i], contents[i]);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Start tokenizing the first {@code count} messages on the common pool,
+     * split into runs of a few hundred messages.
+     */
+    public static ForkJoinTask<List<TokenizedChunk>> fork(final long[] messageIds, final String[] contents,
+                                                          final int count) {
+        return ForkJoinPool.commonPool().submit(new TokenizeTask(messageIds, contents, 0, count));
+    }
+
+    int messageCount() {
+        return messageIds.length;
+    }
+
+    long messageId(final int message) {
+        return messageIds[message];
+    }
+
+    int messageLength(final int message) {
+        return messageLengths[message];
+    }
+
+    int vocabularySize() {
+        return words.length;
+    }
+
+    String word(final int localId) {
+        return words[localId];
+    }
+
+    int token(final int index) {
+        return tokens[index];
+    }
+
+    private static final class TokenizeTask extends RecursiveTask<List<TokenizedChunk>> {
+
+        private final long[] messageIds;
+        private final String[] contents;
+        private final int from;
+        private final int to;
+
+        TokenizeTask(final long[] messageIds, final String[] contents, final int from, final int to) {
+            this.messageIds = messageIds;
+            this.contents = contents;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<TokenizedChunk> compute() {
+            if (to - from <= LEAF_MESSAGES) {
+                List<TokenizedChunk> leaf = new ArrayList<>(1);
+                leaf.add(of(messageIds, contents, from, to));
+                return leaf;
+            }
+            int middle = (from + to) >>> 1;
+            TokenizeTask left = new TokenizeTask(messageIds, contents, from, middle);
+            left.fork();
+            List<TokenizedChunk> right = new TokenizeTask(messageIds, contents, middle, to).compute();
+            List<TokenizedChunk> chunks = left.join();
+            chunks.addAll(right);
+            return chunks;
+        }
+    }
+
+    /**
+     * Collects tokens, interning words in an open-addressing table keyed by
+     * the text they were scanned from.
+     */
+    private static final class Builder implements OracleTokenizer.TokenSink {
+
+        private final long[] messageIds;
+        private final int[] messageLengths;
+        private int messages;
+
+        private int[] tokens = new int[1024];
+        private int tokenCount;
+
+        private String[] words = new String[256];
+        private int[] hashes = new int[256];
+        private int wordCount;
+        // Local ID + 1 per slot, 0 when empty
+        private int[] table = new int[512];
+
+        Builder(final int capacity) {
+            this.messageIds = new long[capacity];
+            this.messageLengths = new int[capacity];
+        }
+
+        void add(final long messageId, final String content) {
+            int before = tokenCount;
+            OracleTokenizer.scan(content, this);
+            messageIds[messages] = messageId;
+            messageLengths[messages] = tokenCount - before;
+            messages++;
+        }
+
+        @Override
+        public void token(final String content, final int start, final int end) {
+            int length = end - start;
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + content.charAt(i);
+            }
+
+            int mask = table.length - 1;
+            int slot = spread(hash) & mask;
+            int localId;
+            while (true) {
+                int entry = table[slot];
+                if (entry == 0) {
+                    localId = addWord(content.substring(start, end), hash, slot);
+                    break;
+                }
+                String word = words[entry - 1];
+                if (hashes[entry - 1] == hash && word.length() == length
+                        && content.regionMatches(start, word, 0, length)) {
+                    localId = entry - 1;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            if (tokenCount == tokens.length) {
+                tokens = Arrays.copyOf(tokens, tokenCount * 2);
+            }
+            tokens[tokenCount++] = localId;
+        }
+
+        TokenizedChunk build() {
+            return new TokenizedChunk(messageIds, messageLengths,
+                    Arrays.copyOf(words, wordCount), Arrays.copyOf(tokens, tokenCount));
+        }
+
+        private int addWord(final String word, final int hash, final int slot) {
+            if (wordCount == words.length) {
+                words = Arrays.copyOf(words, wordCount * 2);
+                hashes = Arrays.copyOf(hashes, wordCount * 2);
+            }
+            int localId = wordCount++;
+            words[localId] = word;
+            hashes[localId] = hash;
+            table[slot] = localId + 1;
+            if (wordCount * 2 > table.length) {
+                rehash(table.length * 2);
+            }
+            return localId;
+        }
+
+        private void rehash(final int capacity) {
+            table = new int[capacity];
+            int mask = capacity - 1;
+            for (int localId = 0; localId < wordCount; localId++) {
+                int slot = spread(hashes[localId]) & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = localId + 1;
+            }
+        }
+
+        private static int spread(final int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
@@ -3,28 +3,54 @@ package com.jameselner.convo.repository;
 import com.jameselner.convo.model.Message;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface MessageRepository extends JpaRepository<Message, Long> {
-    List<Message> findByChatRoomIdOrderByTimestampAsc(Long chatRoomId);
 
-    Page<Message> findByChatRoomIdOrderByTimestampDesc(Long chatRoomId, Pageable pageable);
+    String MESSAGE_VIEW_SELECT = "SELECT m.id AS id, m.chatRoom.id AS chatRoomId, " +
+            "s.id AS senderId, s.username AS senderUsername, m.content AS content, " +
+            "m.type AS type, m.timestamp AS timestamp, m.edited AS edited " +
+            "FROM Message m JOIN m.sender s ";
 
-    @Query("SELECT m FROM Message m WHERE m.chatRoom.id = ?1 " +
-            "AND LOWER(m.content) LIKE LOWER(CONCAT('%', ?2, '%')) " +
-            "ORDER BY m.timestamp DESC")
-    List<Message> searchInChatRoom(Long chatRoomId, String keyword);
+    // Keyset pagination over idx_message_chat_room_timestamp; InnoDB appends the
+    // primary key to the index, so (timestamp, id) is a unique seek position.
+    @Query(MESSAGE_VIEW_SELECT +
+            "WHERE m.chatRoom.id = :chatRoomId " +
+            "ORDER BY m.timestamp DESC, m.id DESC")
+    Slice<MessageView> findLatestInChatRoom(Long chatRoomId, Pageable pageable);
+
+    @Query(MESSAGE_VIEW_SELECT +
+            "WHERE m.chatRoom.id = :chatRoomId " +
+            "AND (m.timestamp < :timestamp OR (m.timestamp = :timestamp AND m.id < :id)) " +
+            "ORDER BY m.timestamp DESC, m.id DESC")
+    Slice<MessageView> findBeforeInChatRoom(Long chatRoomId, LocalDateTime timestamp, Long id, Pageable pageable);
+
+    @Query(MESSAGE_VIEW_SELECT +
+            "WHERE m.chatRoom.id = :chatRoomId " +
+            "AND (m.timestamp > :timestamp OR (m.timestamp = :timestamp AND m.id > :id)) " +
+            "ORDER BY m.timestamp ASC, m.id ASC")
+    Slice<MessageView> findAfterInChatRoom(Long chatRoomId, LocalDateTime timestamp, Long id, Pageable pageable);
 
-    @Query("SELECT m FROM Message m WHERE m.chatRoom.id = ?1 " +
-            "ORDER BY m.timestamp DESC")
-    List<Message> findLatestMessages(Long chatRoomId);
+    @Query("SELECT m.timestamp FROM Message m WHERE m.id = :id AND m.chatRoom.id = :chatRoomId")
+    Optional<LocalDateTime> findTimestampInChatRoom(Long id, Long chatRoomId);
+
+    @Query(value = MESSAGE_VIEW_SELECT +
+            "WHERE m.chatRoom.id = ?1 " +
+            "AND LOWER(m.content) LIKE LOWER(CONCAT('%', ?2, '%')) " +
+            "ORDER BY m.timestamp DESC, m.id DESC",
+            countQuery = "SELECT COUNT(m) FROM Message m WHERE m.chatRoom.id = ?1 " +
+            "AND LOWER(m.content) LIKE LOWER(CONCAT('%', ?2, '%'))")
+    Page<MessageView> searchInChatRoom(Long chatRoomId, String keyword, Pageable pageable);
 
-    @Query("SELECT m FROM Message m WHERE m.chatRoom.id = ?1 " +
-            "ORDER BY m.timestamp DESC")
-    List<Message> findTopByChatRoomId(Long chatRoomId, Pageable pageable);
+    @Query(MESSAGE_VIEW_SELECT + "WHERE m.id IN :ids")
+    List<MessageView> findViewsByIdIn(Collection<Long> ids);
 }
@@ -0,0 +1,21 @@
+package com.jameselner.convo.repository;
+
+import com.jameselner.convo.model.Message;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read-side projection of a message with everything {@code ChatMessageDTO}
+ * needs, fetched in a single statement instead of walking entity associations.
+ * The read count comes from {@code ReadReceiptService}.
+ */
+public interface MessageView {
+    Long getId();
+    Long getChatRoomId();
+    Long getSenderId();
+    String getSenderUsername();
+    String getContent();
+    Message.MessageType getType();
+    LocalDateTime getTimestamp();
+    boolean isEdited();
+}
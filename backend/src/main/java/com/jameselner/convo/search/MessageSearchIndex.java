@@ -0,0 +1,137 @@
+package com.jameselner.convo.search;
+
+import com.jameselner.convo.event.ChatRoomDeletedEvent;
+import com.jameselner.convo.event.MessagePersistedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process full-text index of chat messages, one {@link RoomIndex} per room.
+ * <p>
+ * New messages are added once they are stored, via {@link MessagePersistedEvent}.
+ * On startup the index is rebuilt from the {@code message} table in a background
+ * thread; until that finishes {@link #isReady()} is {@code false} and callers
+ * should fall back to the database. Adding is idempotent, so messages that
+ * arrive during the rebuild are safe to index twice.
+ * <p>
+ * Each room keeps at most {@code convo.search.index.max-messages-per-room}
+ * of its newest messages; the ones dropped to stay within that are counted
+ * by {@code convo.search.index.evicted}.
+ */
+@Slf4j
+@Component
+public class MessageSearchIndex {
+
+    private static final String REBUILD_SQL =
+            "SELECT id, chat_room_id, content FROM message WHERE id > ? ORDER BY id LIMIT ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int rebuildChunkSize;
+    private final int maxMessagesPerRoom;
+    private final Counter evicted;
+    private final Map<Long, RoomIndex> rooms = new ConcurrentHashMap<>();
+
+    private volatile boolean ready;
+
+    public MessageSearchIndex(
+            final JdbcTemplate jdbcTemplate,
+            final MeterRegistry meterRegistry,
+            @Value("${convo.search.index.enabled:true}") final boolean enabled,
+            @Value("${convo.search.index.rebuild-chunk-size:5000}") final int rebuildChunkSize,
+            @Value("${convo.search.index.max-messages-per-room:100000}") final int maxMessagesPerRoom
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.rebuildChunkSize = rebuildChunkSize;
+        this.maxMessagesPerRoom = maxMessagesPerRoom;
+        this.evicted = Counter.builder("convo.search.index.evicted")
+                .description("Messages dropped from the search index to keep rooms within their cap")
+                .register(meterRegistry);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public SearchPage search(final Long chatRoomId, final SearchQuery query, final int offset, final int limit) {
+        RoomIndex room = rooms.get(chatRoomId);
+        if (room == null || query.isEmpty()) {
+            return new SearchPage(0, List.of());
+        }
+        return room.search(query, offset, limit);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessagePersisted(final MessagePersistedEvent event) {
+        if (enabled) {
+            index(event.chatRoomId(), event.messageId(), event.content());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChatRoomDeleted(final ChatRoomDeletedEvent event) {
+        rooms.remove(event.chatRoomId());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        if (!enabled) {
+            return;
+        }
+        Thread rebuild = new Thread(this::rebuild, "message-search-rebuild");
+        rebuild.setDaemon(true);
+        rebuild.start();
+    }
+
+    /**
+     * Index every stored message, reading the table in primary key order.
+     */
+    void rebuild() {
+        long start = System.currentTimeMillis();
+        long lastId = 0;
+        int indexed = 0;
+        try {
+            while (true) {
+                long[] cursor = {lastId};
+                int[] read = {0};
+                jdbcTemplate.query(REBUILD_SQL, rs -> {
+                    long id = rs.getLong(1);
+                    index(rs.getLong(2), id, rs.getString(3));
+                    cursor[0] = id;
+                    read[0]++;
+                }, lastId, rebuildChunkSize);
+
+                indexed += read[0];
+                lastId = cursor[0];
+                if (read[0] < rebuildChunkSize) {
+                    break;
+                }
+            }
+            ready = true;
+            log.info("Search index rebuilt: {} messages in {} rooms ({} ms)",
+                    indexed, rooms.size(), System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            log.error("Search index rebuild failed after {} messages, falling back to database search", indexed, e);
+        }
+    }
+
+    private void index(final Long chatRoomId, final Long messageId, final String content) {
+        if (chatRoomId == null || messageId == null || content == null) {
+            return;
+        }
+        rooms.computeIfAbsent(chatRoomId, id -> new RoomIndex(maxMessagesPerRoom, evicted::increment))
+                .add(messageId, content);
+    }
+}
@@ -0,0 +1,433 @@
+package com.jameselner.convo.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+
+/**
+ * Positional inverted index over the messages of one chat room.
+ * <p>
+ * Documents get ordinals in insertion order, so every postings list is sorted
+ * by ordinal and clauses are combined with linear merges. Query cost depends on
+ * the postings that are touched, not on how many messages the room holds.
+ * Hits are ranked with BM25, with newer messages, i.e. higher (Snowflake)
+ * message IDs, first on equal scores. Live messages can be added while the
+ * startup rebuild is still reading older ones, so ordinals alone don't say
+ * which message is newer.
+ * <p>
+ * A room holds at most {@code maxMessages} messages. Past that its oldest
+ * quarter is dropped and the rest renumbered in message ID order; older
+ * messages are then no longer found by search.
+ */
+final class RoomIndex {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final int MAX_PREFIX_EXPANSIONS = 64;
+
+    private final int maxMessages;
+    private final IntConsumer onEvicted;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Integer> ordinals = new HashMap<>();
+    private final NavigableMap<String, Postings> postings = new TreeMap<>();
+
+    private long[] messageIds = new long[16];
+    private int[] lengths = new int[16];
+    private int docCount;
+    private long totalLength;
+    /**
+     * Newest message dropped to stay within {@code maxMessages}, older ones aren't taken back
+     */
+    private long evictedThroughId = Long.MIN_VALUE;
+
+    RoomIndex(final int maxMessages, final IntConsumer onEvicted) {
+        this.maxMessages = Math.max(maxMessages, 1);
+        this.onEvicted = onEvicted;
+    }
+
+    RoomIndex() {
+        this(Integer.MAX_VALUE, evicted -> {
+        });
+    }
+
+    /**
+     * @return {@code false} if the message was already indexed, or is older
+     * than the messages dropped to stay within {@code maxMessages}
+     */
+    boolean add(final long messageId, final String content) {
+        Map<String, IntList> termPositions = new HashMap<>();
+        int length = SearchTokenizer.tokenize(content, (term, position, start, end) ->
+                termPositions.computeIfAbsent(term, t -> new IntList()).add(position));
+
+        int evicted = 0;
+        lock.writeLock().lock();
+        try {
+            if (messageId <= evictedThroughId || ordinals.putIfAbsent(messageId, docCount) != null) {
+                return false;
+            }
+            if (docCount == messageIds.length) {
+                messageIds = Arrays.copyOf(messageIds, docCount * 2);
+                lengths = Arrays.copyOf(lengths, docCount * 2);
+            }
+            messageIds[docCount] = messageId;
+            lengths[docCount] = length;
+
+            for (Map.Entry<String, IntList> entry : termPositions.entrySet()) {
+                postings.computeIfAbsent(entry.getKey(), t -> new Postings()).add(docCount, entry.getValue());
+            }
+            docCount++;
+            totalLength += length;
+            if (docCount > maxMessages) {
+                evicted = evictOldest(docCount - (maxMessages - maxMessages / 4));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (evicted > 0) {
+            onEvicted.accept(evicted);
+        }
+        return true;
+    }
+
+    /**
+     * Drop the {@code count} oldest messages and renumber the rest by message
+     * ID, rebuilding every postings list. Only runs once per {@code maxMessages / 4}
+     * adds, so its cost is spread over them.
+     */
+    private int evictOldest(final int count) {
+        long[] byAge = Arrays.copyOf(messageIds, docCount);
+        Arrays.sort(byAge);
+
+        int kept = docCount - count;
+        int[] renumbered = new int[docCount];
+        Arrays.fill(renumbered, -1);
+        long[] keptIds = new long[Math.max(kept * 2, 16)];
+        int[] keptLengths = new int[keptIds.length];
+        Map<Long, Integer> keptOrdinals = new HashMap<>();
+        totalLength = 0;
+        for (int doc = 0; doc < kept; doc++) {
+            long messageId = byAge[count + doc];
+            int old = ordinals.get(messageId);
+            renumbered[old] = doc;
+            keptIds[doc] = messageId;
+            keptLengths[doc] = lengths[old];
+            keptOrdinals.put(messageId, doc);
+            totalLength += lengths[old];
+        }
+        ordinals.clear();
+        ordinals.putAll(keptOrdinals);
+
+        Iterator<Map.Entry<String, Postings>> terms = postings.entrySet().iterator();
+        while (terms.hasNext()) {
+            Map.Entry<String, Postings> entry = terms.next();
+            Postings list = entry.getValue();
+            // Pack (new ordinal, old index) so a single sort restores ordinal order
+            long[] packed = new long[list.size];
+            int n = 0;
+            for (int i = 0; i < list.size; i++) {
+                int doc = renumbered[list.docs[i]];
+                if (doc >= 0) {
+                    packed[n++] = ((long) doc << 32) | i;
+                }
+            }
+            if (n == 0) {
+                terms.remove();
+                continue;
+            }
+            Arrays.sort(packed, 0, n);
+            Postings rebuilt = new Postings();
+            for (int k = 0; k < n; k++) {
+                int i = (int) packed[k];
+                rebuilt.add((int) (packed[k] >>> 32), list.positions, list.offsets[i], list.offsets[i + 1]);
+            }
+            entry.setValue(rebuilt);
+        }
+
+        evictedThroughId = Math.max(evictedThroughId, byAge[count - 1]);
+        messageIds = keptIds;
+        lengths = keptLengths;
+        docCount = kept;
+        return count;
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return docCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    SearchPage search(final SearchQuery query, final int offset, final int limit) {
+        lock.readLock().lock();
+        try {
+            Matches matches = null;
+            for (SearchQuery.Clause clause : query.clauses()) {
+                Matches clauseMatches = switch (clause) {
+                    case SearchQuery.Term term -> matchTerm(term.term());
+                    case SearchQuery.Prefix prefix -> matchPrefix(prefix.prefix());
+                    case SearchQuery.Phrase phrase -> matchPhrase(phrase.terms());
+                };
+                matches = matches == null ? clauseMatches : matches.intersect(clauseMatches);
+                if (matches.size == 0) {
+                    break;
+                }
+            }
+
+            if (matches == null || matches.size == 0) {
+                return new SearchPage(0, List.of());
+            }
+            return topHits(matches, offset, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private SearchPage topHits(final Matches matches, final int offset, final int limit) {
+        if (offset >= matches.size) {
+            return new SearchPage(matches.size, List.of());
+        }
+        // No more than every match, which also keeps offset + limit from overflowing
+        int wanted = (int) Math.min((long) offset + limit, matches.size);
+        // Min-heap on rank, so the weakest of the current top hits is evicted first
+        PriorityQueue<Integer> heap = new PriorityQueue<>(wanted + 1,
+                (a, b) -> compareRank(matches, a, b));
+        for (int i = 0; i < matches.size; i++) {
+            heap.add(i);
+            if (heap.size() > wanted) {
+                heap.poll();
+            }
+        }
+
+        List<SearchPage.Hit> ranked = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            int i = heap.poll();
+            ranked.add(new SearchPage.Hit(messageIds[matches.docs[i]], matches.scores[i]));
+        }
+        List<SearchPage.Hit> best = ranked.reversed();
+
+        return new SearchPage(matches.size, List.copyOf(best.subList(offset, best.size())));
+    }
+
+    private int compareRank(final Matches matches, final int a, final int b) {
+        int byScore = Float.compare(matches.scores[a], matches.scores[b]);
+        return byScore != 0
+                ? byScore
+                : Long.compare(messageIds[matches.docs[a]], messageIds[matches.docs[b]]);
+    }
+
+    private Matches matchTerm(final String term) {
+        Postings list = postings.get(term);
+        if (list == null) {
+            return Matches.EMPTY;
+        }
+
+        float idf = idf(list.size);
+        Matches matches = new Matches(list.size);
+        for (int i = 0; i < list.size; i++) {
+            int doc = list.docs[i];
+            matches.append(doc, bm25(list.frequency(i), doc, idf));
+        }
+        return matches;
+    }
+
+    private Matches matchPrefix(final String prefix) {
+        NavigableMap<String, Postings> expansions =
+                postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+
+        // Pack (doc, score) so a single sort groups each document's expansions together
+        int total = 0;
+        int expanded = 0;
+        for (Postings list : expansions.values()) {
+            if (expanded++ == MAX_PREFIX_EXPANSIONS) {
+                break;
+            }
+            total += list.size;
+        }
+        long[] packed = new long[total];
+        int n = 0;
+        expanded = 0;
+        for (Postings list : expansions.values()) {
+            if (expanded++ == MAX_PREFIX_EXPANSIONS) {
+                break;
+            }
+            float idf = idf(list.size);
+            for (int i = 0; i < list.size; i++) {
+                int doc = list.docs[i];
+                float score = bm25(list.frequency(i), doc, idf);
+                packed[n++] = ((long) doc << 32) | Float.floatToIntBits(score);
+            }
+        }
+        Arrays.sort(packed);
+
+        Matches matches = new Matches(total);
+        for (long entry : packed) {
+            int doc = (int) (entry >>> 32);
+            float score = Float.intBitsToFloat((int) entry);
+            if (matches.size > 0 && matches.docs[matches.size - 1] == doc) {
+                matches.scores[matches.size - 1] += score;
+            } else {
+                matches.append(doc, score);
+            }
+        }
+        return matches;
+    }
+
+    private Matches matchPhrase(final List<String> terms) {
+        Postings[] lists = new Postings[terms.size()];
+        float idf = 0;
+        for (int t = 0; t < lists.length; t++) {
+            lists[t] = postings.get(terms.get(t));
+            if (lists[t] == null) {
+                return Matches.EMPTY;
+            }
+            idf += idf(lists[t].size);
+        }
+
+        Postings lead = lists[0];
+        int[] cursors = new int[lists.length];
+        Matches matches = new Matches(lead.size);
+
+        candidates:
+        for (int i = 0; i < lead.size; i++) {
+            int doc = lead.docs[i];
+            for (int t = 1; t < lists.length; t++) {
+                Postings list = lists[t];
+                while (cursors[t] < list.size && list.docs[cursors[t]] < doc) {
+                    cursors[t]++;
+                }
+                if (cursors[t] == list.size) {
+                    break candidates;
+                }
+                if (list.docs[cursors[t]] != doc) {
+                    continue candidates;
+                }
+            }
+
+            int occurrences = 0;
+            for (int p = lead.offsets[i]; p < lead.offsets[i + 1]; p++) {
+                int position = lead.positions[p];
+                boolean all = true;
+                for (int t = 1; t < lists.length && all; t++) {
+                    all = lists[t].hasPosition(cursors[t], position + t);
+                }
+                if (all) {
+                    occurrences++;
+                }
+            }
+            if (occurrences > 0) {
+                matches.append(doc, bm25(occurrences, doc, idf));
+            }
+        }
+        return matches;
+    }
+
+    private float idf(final int documentFrequency) {
+        return (float) Math.log(1 + (docCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    }
+
+    private float bm25(final int frequency, final int doc, final float idf) {
+        float averageLength = docCount == 0 ? 1 : (float) totalLength / docCount;
+        float norm = K1 * (1 - B + B * lengths[doc] / Math.max(averageLength, 1));
+        return idf * frequency * (K1 + 1) / (frequency + norm);
+    }
+
+    /**
+     * Documents and term positions for one term, in ordinal order.
+     */
+    private static final class Postings {
+        private int[] docs = new int[4];
+        private int[] offsets = new int[5];
+        private int[] positions = new int[4];
+        private int size;
+
+        void add(final int doc, final IntList termPositions) {
+            add(doc, termPositions.values, 0, termPositions.size);
+        }
+
+        void add(final int doc, final int[] termPositions, final int from, final int to) {
+            if (size + 1 == docs.length) {
+                docs = Arrays.copyOf(docs, docs.length * 2);
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            int start = offsets[size];
+            int end = start + to - from;
+            if (end > positions.length) {
+                positions = Arrays.copyOf(positions, Math.max(end, positions.length * 2));
+            }
+            System.arraycopy(termPositions, from, positions, start, to - from);
+            docs[size] = doc;
+            offsets[size + 1] = end;
+            size++;
+        }
+
+        int frequency(final int i) {
+            return offsets[i + 1] - offsets[i];
+        }
+
+        boolean hasPosition(final int i, final int position) {
+            return Arrays.binarySearch(positions, offsets[i], offsets[i + 1], position) >= 0;
+        }
+    }
+
+    /**
+     * Matching documents in ordinal order with their accumulated scores.
+     */
+    private static final class Matches {
+        private static final Matches EMPTY = new Matches(0);
+
+        private final int[] docs;
+        private final float[] scores;
+        private int size;
+
+        Matches(final int capacity) {
+            docs = new int[capacity];
+            scores = new float[capacity];
+        }
+
+        void append(final int doc, final float score) {
+            docs[size] = doc;
+            scores[size] = score;
+            size++;
+        }
+
+        Matches intersect(final Matches other) {
+            Matches result = new Matches(Math.min(size, other.size));
+            int i = 0;
+            int j = 0;
+            while (i < size && j < other.size) {
+                if (docs[i] < other.docs[j]) {
+                    i++;
+                } else if (docs[i] > other.docs[j]) {
+                    j++;
+                } else {
+                    result.append(docs[i], scores[i] + other.scores[j]);
+                    i++;
+                    j++;
+                }
+            }
+            return result;
+        }
+    }
+
+    private static final class IntList {
+        private int[] values = new int[2];
+        private int size;
+
+        void add(final int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.jameselner.convo.search;
+
+import java.util.List;
+
+/**
+ * One page of ranked search hits, best first.
+ */
+public record SearchPage(long totalHits, List<Hit> hits) {
+
+    public record Hit(long messageId, double score) {
+    }
+}
@@ -0,0 +1,123 @@
+package com.jameselner.convo.search;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Parsed search keyword. Every clause must match:
+ * <ul>
+ *     <li>{@code hello} - a single term</li>
+ *     <li>{@code hel*} - any term starting with the prefix</li>
+ *     <li>{@code "good morning"} - consecutive terms</li>
+ * </ul>
+ */
+public final class SearchQuery {
+
+    sealed interface Clause permits Term, Prefix, Phrase {
+    }
+
+    record Term(String term) implements Clause {
+    }
+
+    record Prefix(String prefix) implements Clause {
+    }
+
+    record Phrase(List<String> terms) implements Clause {
+    }
+
+    private final List<Clause> clauses;
+    private final Set<String> highlightTerms = new HashSet<>();
+    private final List<String> highlightPrefixes = new ArrayList<>();
+
+    private SearchQuery(final List<Clause> clauses) {
+        this.clauses = List.copyOf(clauses);
+        for (Clause clause : clauses) {
+            switch (clause) {
+                case Term term -> highlightTerms.add(term.term());
+                case Prefix prefix -> highlightPrefixes.add(prefix.prefix());
+                case Phrase phrase -> highlightTerms.addAll(phrase.terms());
+            }
+        }
+    }
+
+    public static SearchQuery parse(final String keyword) {
+        List<Clause> clauses = new ArrayList<>();
+        if (keyword == null) {
+            return new SearchQuery(clauses);
+        }
+
+        int i = 0;
+        int length = keyword.length();
+        while (i < length) {
+            char c = keyword.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '"') {
+                int close = keyword.indexOf('"', i + 1);
+                int end = close < 0 ? length : close;
+                addPhrase(clauses, keyword.substring(i + 1, end));
+                i = end + 1;
+            } else {
+                int end = i;
+                while (end < length && !Character.isWhitespace(keyword.charAt(end)) && keyword.charAt(end) != '"') {
+                    end++;
+                }
+                addWord(clauses, keyword.substring(i, end));
+                i = end;
+            }
+        }
+        return new SearchQuery(clauses);
+    }
+
+    private static void addPhrase(final List<Clause> clauses, final String text) {
+        List<String> terms = terms(text);
+        if (terms.size() == 1) {
+            clauses.add(new Term(terms.getFirst()));
+        } else if (terms.size() > 1) {
+            clauses.add(new Phrase(terms));
+        }
+    }
+
+    private static void addWord(final List<Clause> clauses, final String word) {
+        List<String> terms = terms(word);
+        if (terms.isEmpty()) {
+            return;
+        }
+        if (word.endsWith("*") && terms.size() == 1) {
+            clauses.add(new Prefix(terms.getFirst()));
+        } else {
+            // "e-mail" is indexed as two terms, so search it as a phrase
+            addPhrase(clauses, word);
+        }
+    }
+
+    private static List<String> terms(final String text) {
+        List<String> terms = new ArrayList<>();
+        SearchTokenizer.tokenize(text, (term, position, start, end) -> terms.add(term));
+        return terms;
+    }
+
+    public boolean isEmpty() {
+        return clauses.isEmpty();
+    }
+
+    List<Clause> clauses() {
+        return clauses;
+    }
+
+    /**
+     * Character ranges of {@code content} matched by this query,
+     * as {@code [start, end)} pairs in text order.
+     */
+    public List<int[]> highlight(final String content) {
+        List<int[]> ranges = new ArrayList<>();
+        SearchTokenizer.tokenize(content, (term, position, start, end) -> {
+            if (highlightTerms.contains(term) || highlightPrefixes.stream().anyMatch(term::startsWith)) {
+                ranges.add(new int[] {start, end});
+            }
+        });
+        return ranges;
+    }
+}
@@ -0,0 +1,53 @@
+package com.jameselner.convo.search;
+
+import java.util.Locale;
+
+/**
+ * Splits message text into lower-cased terms: runs of letters and digits,
+ * keeping apostrophes between letters ("don't"). Reports character offsets
+ * so the same pass can drive indexing and highlighting.
+ */
+final class SearchTokenizer {
+
+    @FunctionalInterface
+    interface TermSink {
+        void accept(String term, int position, int start, int end);
+    }
+
+    private SearchTokenizer() {
+    }
+
+    /**
+     * @return the number of terms emitted
+     */
+    static int tokenize(final String text, final TermSink sink) {
+        if (text == null) {
+            return 0;
+        }
+
+        int position = 0;
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            if (i >= length) {
+                break;
+            }
+
+            int start = i;
+            while (i < length && (Character.isLetterOrDigit(text.charAt(i)) || isInnerApostrophe(text, i))) {
+                i++;
+            }
+            sink.accept(text.substring(start, i).toLowerCase(Locale.ROOT), position++, start, i);
+        }
+        return position;
+    }
+
+    private static boolean isInnerApostrophe(final String text, final int i) {
+        return text.charAt(i) == '\''
+                && i > 0 && Character.isLetterOrDigit(text.charAt(i - 1))
+                && i + 1 < text.length() && Character.isLetterOrDigit(text.charAt(i + 1));
+    }
+}
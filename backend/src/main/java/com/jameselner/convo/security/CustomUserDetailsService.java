@@ -16,16 +16,29 @@ import java.util.ArrayList;
 public class CustomUserDetailsService implements UserDetailsService {
 
     private final UserRepository userRepository;
+    private final UserDetailsCache userDetailsCache;
 
     @Override
     public UserDetails loadUserByUsername(final String username) throws UsernameNotFoundException {
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
+        UserDetailsCache.CachedUser user = userDetailsCache.get(username, this::loadFromDatabase);
 
         return new org.springframework.security.core.userdetails.User(
-                user.getUsername(),
-                user.getPassword(),
+                user.username(),
+                user.password(),
                 new ArrayList<>()
         );
     }
+
+    /**
+     * The user's ID, served from the same cache as authentication.
+     */
+    public Long userIdOf(final String username) {
+        return userDetailsCache.get(username, this::loadFromDatabase).id();
+    }
+
+    private UserDetailsCache.CachedUser loadFromDatabase(final String username) {
+        User user = userRepository.findByUsername(username)
+                .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
+        return new UserDetailsCache.CachedUser(user.getId(), user.getUsername(), user.getPassword());
+    }
 }
@@ -11,7 +11,6 @@ import org.springframework.messaging.support.ChannelInterceptor;
 import org.springframework.messaging.support.MessageHeaderAccessor;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
 @Slf4j
@@ -19,8 +18,7 @@ import org.springframework.stereotype.Component;
 @RequiredArgsConstructor
 public class JwtChannelInterceptor implements ChannelInterceptor {
 
-    private final JwtUtil jwtUtil;
-    private final CustomUserDetailsService userDetailsService;
+    private final JwtTokenAuthenticator tokenAuthenticator;
 
     @Override
     public Message<?> preSend(@NonNull final Message<?> message, @NonNull final MessageChannel channel) {
@@ -33,20 +31,14 @@ public class JwtChannelInterceptor implements ChannelInterceptor {
 
                 if (authHeader != null && authHeader.startsWith("Bearer ")) {
                     String jwt = authHeader.substring(7);
-                    try {
-                        String username = jwtUtil.extractUsername(jwt);
-                        UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-
-                        if (jwtUtil.validateToken(jwt, userDetails)) {
-                            UsernamePasswordAuthenticationToken authenticationToken =
-                                    new UsernamePasswordAuthenticationToken(
-                                            userDetails, null, userDetails.getAuthorities());
-                            SecurityContextHolder.getContext().setAuthentication(authenticationToken);
-                            accessor.setUser(authenticationToken);
-                            log.debug("Authenticated WebSocket connection for user: {}", username);
-                        }
-                    } catch (Exception e) {
-                        log.error("JWT validation failed for WebSocket connection", e);
+                    UsernamePasswordAuthenticationToken authenticationToken = tokenAuthenticator.authenticate(jwt);
+
+                    if (authenticationToken != null) {
+                        SecurityContextHolder.getContext().setAuthentication(authenticationToken);
+                        accessor.setUser(authenticationToken);
+                        log.debug("Authenticated WebSocket connection for user: {}", authenticationToken.getName());
+                    } else {
+                        log.warn("JWT validation failed for WebSocket connection");
                     }
                 }
             }
@@ -0,0 +1,137 @@
+package com.jameselner.convo.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns a bearer token into an authentication, shared by the REST filter and
+ * the STOMP CONNECT interceptor.
+ * <p>
+ * Verified tokens are cached by their signature until they expire, so a
+ * client that reuses its token pays for HMAC verification once. A cache hit
+ * still compares the signed header and payload, so a token with a copied
+ * signature but altered claims is never accepted from the cache.
+ */
+@Slf4j
+@Component
+public class JwtTokenAuthenticator {
+
+    private record CachedToken(String signedContent, String username, long expiresAtMillis) {
+    }
+
+    private final JwtUtil jwtUtil;
+    private final CustomUserDetailsService userDetailsService;
+    private final Cache<String, CachedToken> verifiedTokens;
+
+    public JwtTokenAuthenticator(
+            final JwtUtil jwtUtil,
+            final CustomUserDetailsService userDetailsService,
+            final MeterRegistry meterRegistry,
+            @Value("${convo.security.token-cache.max-size:10000}") final long maxSize,
+            @Value("${convo.security.token-cache.max-ttl-seconds:3600}") final long maxTtlSeconds
+    ) {
+        this.jwtUtil = jwtUtil;
+        this.userDetailsService = userDetailsService;
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new UntilTokenExpiry(Duration.ofSeconds(maxTtlSeconds).toNanos()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, "jwt-tokens");
+    }
+
+    /**
+     * @return the authentication for a valid token, or {@code null} if the
+     * token is malformed, expired, forged or its user no longer exists
+     */
+    public UsernamePasswordAuthenticationToken authenticate(final String jwt) {
+        int signatureStart = jwt.lastIndexOf('.');
+        if (signatureStart <= 0 || signatureStart == jwt.length() - 1) {
+            return null;
+        }
+        String signature = jwt.substring(signatureStart + 1);
+        String signedContent = jwt.substring(0, signatureStart);
+
+        String username = cachedUsername(signature, signedContent);
+        if (username == null) {
+            username = verify(jwt, signature, signedContent);
+            if (username == null) {
+                return null;
+            }
+        }
+
+        UserDetails userDetails;
+        try {
+            userDetails = userDetailsService.loadUserByUsername(username);
+        } catch (UsernameNotFoundException e) {
+            log.debug("Token subject {} no longer exists", username);
+            return null;
+        }
+        return new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+    }
+
+    private String cachedUsername(final String signature, final String signedContent) {
+        CachedToken cached = verifiedTokens.getIfPresent(signature);
+        if (cached == null || cached.expiresAtMillis() <= System.currentTimeMillis()) {
+            return null;
+        }
+        boolean sameContent = MessageDigest.isEqual(
+                cached.signedContent().getBytes(StandardCharsets.US_ASCII),
+                signedContent.getBytes(StandardCharsets.US_ASCII)
+        );
+        return sameContent ? cached.username() : null;
+    }
+
+    private String verify(final String jwt, final String signature, final String signedContent) {
+        JwtUtil.VerifiedToken token;
+        try {
+            token = jwtUtil.parse(jwt);
+        } catch (JwtException | IllegalArgumentException e) {
+            log.debug("Rejected JWT: {}", e.getMessage());
+            return null;
+        }
+
+        verifiedTokens.put(signature,
+                new CachedToken(signedContent, token.username(), token.expiresAt().toEpochMilli()));
+        return token.username();
+    }
+
+    /**
+     * Keeps each entry until its token's {@code exp}, capped at the configured maximum.
+     */
+    private record UntilTokenExpiry(long maxTtlNanos) implements Expiry<String, CachedToken> {
+
+        @Override
+        public long expireAfterCreate(final String signature, final CachedToken token, final long currentTime) {
+            long remainingMillis = token.expiresAtMillis() - System.currentTimeMillis();
+            return Math.clamp(TimeUnit.MILLISECONDS.toNanos(remainingMillis), 0, maxTtlNanos);
+        }
+
+        @Override
+        public long expireAfterUpdate(final String signature, final CachedToken token,
+                                      final long currentTime, final long currentDuration) {
+            return expireAfterCreate(signature, token, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(final String signature, final CachedToken token,
+                                    final long currentTime, final long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -1,55 +1,89 @@
 package com.jameselner.convo.security;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.time.Instant;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.function.Function;
 
+/**
+ * Issues and verifies HS256 tokens.
+ * <p>
+ * Keys and the parser are built once; both are immutable and thread-safe.
+ * Tokens are signed with the current key and carry its ID in the {@code kid}
+ * header. Keys listed in {@code jwt.retired-keys} ({@code kid:secret,...})
+ * still verify tokens issued before a rotation until those expire. Tokens
+ * without a {@code kid} predate key IDs and are checked with the current key.
+ */
 @Component
 public class JwtUtil {
 
-    @Value("${jwt.secret:mySecretKeyThatIsAtLeast256BitsLongForHS256Algorithm}")
-    private String secret;
-
-    @Value("${jwt.expiration:86400000}") // 24 hours
-    private Long expiration;
-
-    private Key getSigningKey() {
-        return Keys.hmacShaKeyFor(secret.getBytes());
+    /**
+     * Claims of a token whose signature and expiry have been checked.
+     */
+    public record VerifiedToken(String username, Instant issuedAt, Instant expiresAt, String keyId) {
     }
 
-    public String extractUsername(final String token) {
-        return extractClaim(token, Claims::getSubject);
-    }
+    private final Long expiration;
+    private final String currentKeyId;
+    private final Key currentKey;
+    private final Map<String, Key> verificationKeys;
+    private final JwtParser parser;
 
-    public Date extractExpiration(final String token) {
-        return extractClaim(token, Claims::getExpiration);
-    }
+    public JwtUtil(
+            @Value("${jwt.secret:mySecretKeyThatIsAtLeast256BitsLongForHS256Algorithm}") final String secret,
+            @Value("${jwt.expiration:86400000}") final Long expiration, // 24 hours
+            @Value("${jwt.key-id:default}") final String keyId,
+            @Value("${jwt.retired-keys:}") final String retiredKeys
+    ) {
+        this.expiration = expiration;
+        this.currentKeyId = keyId;
+        this.currentKey = hmacKey(secret);
 
-    public <T> T extractClaim(final String token, final Function<Claims, T> claimsResolver) {
-        final Claims claims = extractAllClaims(token);
-        return claimsResolver.apply(claims);
-    }
+        Map<String, Key> keys = new HashMap<>(parseRetiredKeys(retiredKeys));
+        keys.put(keyId, currentKey);
+        this.verificationKeys = Map.copyOf(keys);
 
-    private Claims extractAllClaims(final String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        this.parser = Jwts.parserBuilder()
+                .setSigningKeyResolver(new SigningKeyResolverAdapter() {
+                    @Override
+                    public Key resolveSigningKey(final JwsHeader header, final Claims claims) {
+                        return resolveKey(header.getKeyId());
+                    }
+                })
+                .build();
     }
 
-    private Boolean isTokenExpired(final String token) {
-        return extractExpiration(token).before(new Date());
+    /**
+     * Verify a token in a single pass.
+     *
+     * @throws JwtException if the token is malformed, forged, expired or signed with an unknown key
+     */
+    public VerifiedToken parse(final String token) {
+        var jws = parser.parseClaimsJws(token);
+        Claims claims = jws.getBody();
+        if (claims.getSubject() == null || claims.getExpiration() == null) {
+            throw new JwtException("Token has no subject or expiry");
+        }
+        return new VerifiedToken(
+                claims.getSubject(),
+                claims.getIssuedAt() != null ? claims.getIssuedAt().toInstant() : null,
+                claims.getExpiration().toInstant(),
+                jws.getHeader().getKeyId()
+        );
     }
 
     public String generateToken(final UserDetails userDetails) {
@@ -58,17 +92,44 @@ public class JwtUtil {
     }
 
     private String createToken(final Map<String, Object> claims, final String subject) {
+        long now = System.currentTimeMillis();
         return Jwts.builder()
+                .setHeaderParam(JwsHeader.KEY_ID, currentKeyId)
                 .setClaims(claims)
                 .setSubject(subject)
-                .setIssuedAt(new Date(System.currentTimeMillis()))
-                .setExpiration(new Date(System.currentTimeMillis() + expiration))
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
+                .setIssuedAt(new Date(now))
+                .setExpiration(new Date(now + expiration))
+                .signWith(currentKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
-    public Boolean validateToken(final String token, final UserDetails userDetails) {
-        final String username = extractUsername(token);
-        return (username.equals(userDetails.getUsername()) && !isTokenExpired(token));
+    private Key resolveKey(final String keyId) {
+        if (keyId == null) {
+            return currentKey;
+        }
+        Key key = verificationKeys.get(keyId);
+        if (key == null) {
+            throw new JwtException("Unknown signing key: " + keyId);
+        }
+        return key;
+    }
+
+    private static Key hmacKey(final String secret) {
+        return Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Map<String, Key> parseRetiredKeys(final String retiredKeys) {
+        Map<String, Key> keys = new HashMap<>();
+        if (retiredKeys == null || retiredKeys.isBlank()) {
+            return keys;
+        }
+        for (String entry : retiredKeys.split(",")) {
+            int separator = entry.indexOf(':');
+            if (separator <= 0 || separator == entry.length() - 1) {
+                throw new IllegalArgumentException("jwt.retired-keys entries must be kid:secret");
+            }
+            keys.put(entry.substring(0, separator).trim(), hmacKey(entry.substring(separator + 1).trim()));
+        }
+        return keys;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,24 @@
+package com.jameselner.convo.security;
+
+import com.jameselner.convo.model.User;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/**
+ * JPA entity listener on {@link User}. Hibernate resolves it from the Spring
+ * context, so cached credentials are dropped as soon as a user changes.
+ */
+@Component
+@RequiredArgsConstructor
+public class UserCacheEvictionListener {
+
+    private final UserDetailsCache userDetailsCache;
+
+    @PostUpdate
+    @PostRemove
+    public void evict(final User user) {
+        userDetailsCache.evict(user.getId(), user.getUsername());
+    }
+}
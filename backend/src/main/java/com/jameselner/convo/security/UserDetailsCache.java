@@ -0,0 +1,90 @@
+package com.jameselner.convo.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of the user fields needed for authentication, keyed by username.
+ * <p>
+ * Entries are evicted by {@link UserCacheEvictionListener} whenever a user row
+ * is updated or removed through JPA; the TTL covers changes made behind
+ * Hibernate's back.
+ */
+@Component
+public class UserDetailsCache {
+
+    /**
+     * Only immutable values are cached. Spring Security erases the password of
+     * the {@code UserDetails} it authenticated, so every caller gets a fresh one.
+     */
+    record CachedUser(Long id, String username, String password) {
+    }
+
+    private final Cache<String, CachedUser> cache;
+    /**
+     * Username each cached user was loaded under, so a user can be evicted
+     * by ID after a rename without scanning the cache
+     */
+    private final Map<Long, String> usernamesById = new ConcurrentHashMap<>();
+
+    public UserDetailsCache(
+            final MeterRegistry meterRegistry,
+            @Value("${convo.security.user-cache.max-size:10000}") final long maxSize,
+            @Value("${convo.security.user-cache.ttl-seconds:600}") final long ttlSeconds
+    ) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .evictionListener((String username, CachedUser user, RemovalCause cause) -> forget(user, username))
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "user-details");
+    }
+
+    CachedUser get(final String username, final Function<String, CachedUser> loader) {
+        return cache.get(username, name -> {
+            CachedUser user = loader.apply(name);
+            if (user.id() != null) {
+                usernamesById.put(user.id(), name);
+            }
+            return user;
+        });
+    }
+
+    public void evict(final String username) {
+        if (username != null) {
+            forget(cache.asMap().remove(username), username);
+        }
+    }
+
+    /**
+     * Evict by ID as well, so a renamed user's old username stops resolving.
+     */
+    public void evict(final Long userId, final String username) {
+        evict(username);
+        if (userId != null) {
+            evict(usernamesById.get(userId));
+        }
+    }
+
+    public void evictAll() {
+        cache.invalidateAll();
+        usernamesById.clear();
+    }
+
+    private void forget(final CachedUser user, final String username) {
+        if (user != null && user.id() != null) {
+            usernamesById.remove(user.id(), username);
+        }
+    }
+}
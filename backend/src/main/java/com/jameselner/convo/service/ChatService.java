@@ -1,49 +1,95 @@
 package com.jameselner.convo.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.jameselner.convo.dto.ChatMessageDTO;
 import com.jameselner.convo.dto.ChatRoomDTO;
+import com.jameselner.convo.dto.MessageHistoryDTO;
+import com.jameselner.convo.dto.SearchHitDTO;
+import com.jameselner.convo.dto.SearchResultDTO;
+import com.jameselner.convo.event.ChatRoomDeletedEvent;
+import com.jameselner.convo.event.MessagePersistedEvent;
 import com.jameselner.convo.exception.ResourceNotFoundException;
 import com.jameselner.convo.model.ChatRoom;
 import com.jameselner.convo.model.Message;
 import com.jameselner.convo.model.User;
+import com.jameselner.convo.model.id.SnowflakeIdGenerator;
 import com.jameselner.convo.repository.ChatRoomRepository;
 import com.jameselner.convo.repository.MessageRepository;
+import com.jameselner.convo.repository.MessageView;
 import com.jameselner.convo.repository.UserRepository;
+import com.jameselner.convo.search.MessageSearchIndex;
+import com.jameselner.convo.search.SearchPage;
+import com.jameselner.convo.search.SearchQuery;
+import com.jameselner.convo.security.CustomUserDetailsService;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Slice;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.transaction.annotation.Transactional;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class ChatService {
 
+    private static final int MAX_HISTORY_PAGE_SIZE = 100;
+    private static final int MAX_SEARCH_PAGE_SIZE = 100;
+
     private final ChatRoomRepository chatRoomRepository;
     private final MessageRepository messageRepository;
     private final UserRepository userRepository;
+    private final MessageWriteBehindQueue writeBehindQueue;
+    private final SnowflakeIdGenerator idGenerator;
+    private final MessageSearchIndex searchIndex;
+    private final ReadReceiptService readReceiptService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final CustomUserDetailsService userDetailsService;
+    // Rooms known to exist; deletes on other nodes are picked up once the entry expires
+    private final Cache<Long, Boolean> knownChatRooms = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofMinutes(10))
+            .build();
 
     @Transactional
     public Message saveMessage(final String username, final Long chatRoomId, final String content) {
         return saveMessage(username, chatRoomId, content, Message.MessageType.TEXT);
     }
 
+    /**
+     * In write-behind mode the sender's ID comes from the authentication cache
+     * and the room is only looked up the first time it is seen, so the frame
+     * doesn't wait on the database before it is queued.
+     */
     public Message saveMessage(
             final String username,
             final Long chatRoomId,
             final String content,
             final Message.MessageType messageType
     ) {
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new ResourceNotFoundException("User", username));
+        User user;
+        ChatRoom chatRoom;
+        if (writeBehindQueue.isEnabled()) {
+            user = cachedSender(username);
+            chatRoom = knownChatRoom(chatRoomId);
+        } else {
+            user = userRepository.findByUsername(username)
+                    .orElseThrow(() -> new ResourceNotFoundException("User", username));
 
-        ChatRoom chatRoom = chatRoomRepository.findById(chatRoomId)
-                .orElseThrow(() -> new ResourceNotFoundException("ChatRoom", chatRoomId));
+            chatRoom = chatRoomRepository.findById(chatRoomId)
+                    .orElseThrow(() -> new ResourceNotFoundException("ChatRoom", chatRoomId));
+        }
 
         Message message = Message.builder()
                 .sender(user)
@@ -53,23 +99,178 @@ public class ChatService {
                 .type(messageType)
                 .build();
 
-        return messageRepository.save(message);
+        return persistMessage(message);
     }
 
-    public Page<ChatMessageDTO> getChatRoomMessages(final Long chatRoomId, final int page, final int size) {
-        Pageable pageable = PageRequest.of(page, size, Sort.by("timestamp").descending());
-        Page<Message> messages = messageRepository.findByChatRoomIdOrderByTimestampDesc(
-                chatRoomId, pageable
-        );
+    /**
+     * Only the ID and username are needed to insert and broadcast a message.
+     */
+    private User cachedSender(final String username) {
+        try {
+            return User.builder()
+                    .id(userDetailsService.userIdOf(username))
+                    .username(username)
+                    .build();
+        } catch (UsernameNotFoundException e) {
+            throw new ResourceNotFoundException("User", username);
+        }
+    }
+
+    private ChatRoom knownChatRoom(final Long chatRoomId) {
+        if (knownChatRooms.getIfPresent(chatRoomId) == null) {
+            if (!chatRoomRepository.existsById(chatRoomId)) {
+                throw new ResourceNotFoundException("ChatRoom", chatRoomId);
+            }
+            knownChatRooms.put(chatRoomId, Boolean.TRUE);
+        }
+        return chatRoomRepository.getReferenceById(chatRoomId);
+    }
+
+    /**
+     * Persist a new message, either directly or through the write-behind queue.
+     * In write-behind mode the returned message already carries its final ID
+     * but may not be visible to queries until the next flush.
+     */
+    public Message persistMessage(final Message message) {
+        if (!writeBehindQueue.isEnabled()) {
+            Message saved = messageRepository.save(message);
+            eventPublisher.publishEvent(MessagePersistedEvent.from(saved));
+            return saved;
+        }
 
-        return messages.map(this::convertToDTO);
+        message.setId(idGenerator.nextId());
+        writeBehindQueue.enqueue(message);
+        return message;
     }
 
-    public List<ChatMessageDTO> searchMessages(final Long chatRoomId, final String keyword) {
-        List<Message> messages = messageRepository.searchInChatRoom(chatRoomId, keyword);
-        return messages.stream()
+    /**
+     * Read one slice of a room's history by seeking on {@code (timestamp, id)}.
+     * A {@code cursor} from a previous slice wins over {@code before}/{@code after}
+     * message IDs. Without any of them the latest messages are returned.
+     */
+    public MessageHistoryDTO getChatRoomMessages(
+            final Long chatRoomId,
+            final Long before,
+            final Long after,
+            final String cursor,
+            final int size
+    ) {
+        Pageable pageable = PageRequest.of(0, Math.clamp(size, 1, MAX_HISTORY_PAGE_SIZE));
+        MessageCursor position = resolveCursor(chatRoomId, before, after, cursor);
+
+        Slice<MessageView> messages;
+        if (position == null) {
+            messages = messageRepository.findLatestInChatRoom(chatRoomId, pageable);
+        } else if (position.direction() == MessageCursor.Direction.BEFORE) {
+            messages = messageRepository.findBeforeInChatRoom(
+                    chatRoomId, position.timestamp(), position.id(), pageable
+            );
+        } else {
+            messages = messageRepository.findAfterInChatRoom(
+                    chatRoomId, position.timestamp(), position.id(), pageable
+            );
+        }
+
+        MessageCursor.Direction direction = position != null
+                ? position.direction()
+                : MessageCursor.Direction.BEFORE;
+        String nextCursor = null;
+        if (messages.hasNext()) {
+            MessageView last = messages.getContent().getLast();
+            nextCursor = new MessageCursor(direction, last.getTimestamp(), last.getId()).encode();
+        }
+
+        List<ChatMessageDTO> content = messages.getContent().stream()
                 .map(this::convertToDTO)
                 .toList();
+        return new MessageHistoryDTO(content, messages.hasNext(), nextCursor);
+    }
+
+    private MessageCursor resolveCursor(
+            final Long chatRoomId,
+            final Long before,
+            final Long after,
+            final String cursor
+    ) {
+        if (cursor != null && !cursor.isBlank()) {
+            return MessageCursor.decode(cursor);
+        }
+
+        Long anchorId = before != null ? before : after;
+        if (anchorId == null) {
+            return null;
+        }
+
+        LocalDateTime anchorTimestamp = messageRepository.findTimestampInChatRoom(anchorId, chatRoomId)
+                .orElseThrow(() -> new ResourceNotFoundException("Message", anchorId));
+        MessageCursor.Direction direction = before != null
+                ? MessageCursor.Direction.BEFORE
+                : MessageCursor.Direction.AFTER;
+        return new MessageCursor(direction, anchorTimestamp, anchorId);
+    }
+
+    /**
+     * Search a room's messages. Served from the in-memory index once it has
+     * been rebuilt, ranked by relevance; until then a {@code LIKE} scan over the
+     * room is used, newest first.
+     */
+    public SearchResultDTO searchMessages(
+            final Long chatRoomId,
+            final String keyword,
+            final int page,
+            final int size
+    ) {
+        int pageSize = Math.clamp(size, 1, MAX_SEARCH_PAGE_SIZE);
+        int pageNumber = Math.max(page, 0);
+        SearchQuery query = SearchQuery.parse(keyword);
+
+        if (!searchIndex.isReady()) {
+            return searchWithoutIndex(chatRoomId, keyword, query, pageNumber, pageSize);
+        }
+
+        // A page far enough out overflows int; any offset that large is past the last hit anyway
+        int offset = (int) Math.min((long) pageNumber * pageSize, Integer.MAX_VALUE);
+        SearchPage result = searchIndex.search(chatRoomId, query, offset, pageSize);
+        List<Long> ids = result.hits().stream()
+                .map(SearchPage.Hit::messageId)
+                .toList();
+        Map<Long, MessageView> views = ids.isEmpty()
+                ? Map.of()
+                : messageRepository.findViewsByIdIn(ids).stream()
+                        .collect(Collectors.toMap(MessageView::getId, Function.identity()));
+
+        List<SearchHitDTO> hits = new ArrayList<>(ids.size());
+        for (SearchPage.Hit hit : result.hits()) {
+            MessageView view = views.get(hit.messageId());
+            // Deleted since it was indexed
+            if (view != null) {
+                hits.add(toSearchHit(view, hit.score(), query));
+            }
+        }
+        return new SearchResultDTO(hits, result.totalHits(), pageNumber, pageSize);
+    }
+
+    private SearchResultDTO searchWithoutIndex(
+            final Long chatRoomId,
+            final String keyword,
+            final SearchQuery query,
+            final int page,
+            final int size
+    ) {
+        Page<MessageView> messages = messageRepository.searchInChatRoom(
+                chatRoomId, keyword, PageRequest.of(page, size)
+        );
+        List<SearchHitDTO> hits = messages.getContent().stream()
+                .map(view -> toSearchHit(view, 0, query))
+                .toList();
+        return new SearchResultDTO(hits, messages.getTotalElements(), page, size);
+    }
+
+    private SearchHitDTO toSearchHit(final MessageView view, final double score, final SearchQuery query) {
+        List<SearchHitDTO.Highlight> highlights = query.highlight(view.getContent()).stream()
+                .map(range -> new SearchHitDTO.Highlight(range[0], range[1]))
+                .toList();
+        return new SearchHitDTO(convertToDTO(view), score, highlights);
     }
 
     @Transactional
@@ -106,6 +307,8 @@ public class ChatService {
                 .orElseThrow(() -> new ResourceNotFoundException("ChatRoom", roomId));
 
         chatRoomRepository.delete(chatRoom);
+        knownChatRooms.invalidate(roomId);
+        eventPublisher.publishEvent(new ChatRoomDeletedEvent(roomId));
     }
 
     public List<ChatRoomDTO> getAllPublicRooms() {
@@ -121,6 +324,25 @@ public class ChatService {
         return new ChatRoomDTO(room);
     }
 
+    public ChatMessageDTO convertToDTO(final MessageView message) {
+        ChatMessageDTO dto = new ChatMessageDTO();
+        dto.setId(message.getId());
+        dto.setSenderUsername(message.getSenderUsername());
+        dto.setSenderId(message.getSenderId());
+        dto.setChatRoomId(message.getChatRoomId());
+        dto.setContent(message.getContent());
+        dto.setType(mapMessageType(message.getType()));
+        dto.setTimestamp(message.getTimestamp());
+        dto.setEdited(message.isEdited());
+        dto.setReadByCount(readReceiptService.readByCount(
+                message.getChatRoomId(), message.getId(), message.getSenderId()));
+        return dto;
+    }
+
+    /**
+     * Map a message that was just created in this request. Sender and room are
+     * already in hand and nobody has read it yet, so no association is loaded.
+     */
     public ChatMessageDTO convertToDTO(final Message message) {
         ChatMessageDTO dto = new ChatMessageDTO();
         dto.setId(message.getId());
@@ -131,7 +353,7 @@ public class ChatService {
         dto.setType(mapMessageType(message.getType()));
         dto.setTimestamp(message.getTimestamp());
         dto.setEdited(message.isEdited());
-        dto.setReadByCount(message.getReadByUserIds() != null ? message.getReadByUserIds().size() : 0);
+        dto.setReadByCount(0);
         return dto;
     }
 
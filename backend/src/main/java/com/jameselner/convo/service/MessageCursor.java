@@ -0,0 +1,46 @@
+package com.jameselner.convo.service;
+
+import com.jameselner.convo.exception.InvalidCursorException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Seek position in a room's history, ordered by {@code (timestamp, id)}.
+ * Clients only ever see the opaque {@link #encode()} form.
+ */
+public record MessageCursor(Direction direction, LocalDateTime timestamp, long id) {
+
+    public enum Direction {
+        /** Older messages, newest first */
+        BEFORE,
+        /** Newer messages, oldest first */
+        AFTER
+    }
+
+    private static final char SEPARATOR = '|';
+
+    public String encode() {
+        String raw = direction.name() + SEPARATOR + timestamp + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static MessageCursor decode(final String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\" + SEPARATOR);
+            if (parts.length != 3) {
+                throw new InvalidCursorException(cursor);
+            }
+            return new MessageCursor(
+                    Direction.valueOf(parts[0]),
+                    LocalDateTime.parse(parts[1]),
+                    Long.parseLong(parts[2])
+            );
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new InvalidCursorException(cursor);
+        }
+    }
+}
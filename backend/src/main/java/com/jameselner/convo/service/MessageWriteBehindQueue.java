@@ -0,0 +1,264 @@
+package com.jameselner.convo.service;
+
+import com.jameselner.convo.event.MessagePersistedEvent;
+import com.jameselner.convo.exception.MessageBacklogFullException;
+import com.jameselner.convo.model.Message;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind buffer for chat messages.
+ * <p>
+ * When enabled, {@link ChatService} hands messages over with a pre-assigned ID
+ * and returns immediately, so the STOMP handler can broadcast without waiting
+ * on MySQL. A single flusher thread drains the queue into JDBC batches bounded
+ * by {@code batch-size} and {@code flush-interval-ms}. Producers block for up to
+ * {@code offer-timeout-ms} when the queue is full and are then rejected.
+ * <p>
+ * Inserts are idempotent on the primary key, so a batch is simply retried until
+ * it lands. On shutdown the queue stops accepting new messages and is drained
+ * before the data source goes away.
+ */
+@Slf4j
+@Component
+public class MessageWriteBehindQueue implements SmartLifecycle {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO message (id, sender_id, chat_room_id, content, type, timestamp, edited) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE id = id";
+
+    private static final long MAX_RETRY_BACKOFF_MS = 5_000;
+    private static final int SHUTDOWN_MAX_ATTEMPTS = 5;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final long offerTimeoutMs;
+    private final long shutdownTimeoutMs;
+    private final BlockingQueue<Message> queue;
+
+    private volatile boolean running;
+    private Thread flusher;
+
+    public MessageWriteBehindQueue(
+            final JdbcTemplate jdbcTemplate,
+            final ApplicationEventPublisher eventPublisher,
+            @Value("${convo.chat.write-behind.enabled:false}") final boolean enabled,
+            @Value("${convo.chat.write-behind.batch-size:200}") final int batchSize,
+            @Value("${convo.chat.write-behind.flush-interval-ms:50}") final long flushIntervalMs,
+            @Value("${convo.chat.write-behind.capacity:10000}") final int capacity,
+            @Value("${convo.chat.write-behind.offer-timeout-ms:250}") final long offerTimeoutMs,
+            @Value("${convo.chat.write-behind.shutdown-timeout-ms:30000}") final long shutdownTimeoutMs
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    /**
+     * Queue a message that already carries its ID. Blocks briefly when the
+     * buffer is full and throws {@link MessageBacklogFullException} if it stays full.
+     */
+    public void enqueue(final Message message) {
+        if (!running) {
+            throw new MessageBacklogFullException(queue.size());
+        }
+
+        boolean accepted;
+        try {
+            accepted = queue.offer(message, offerTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            accepted = false;
+        }
+
+        if (!accepted) {
+            throw new MessageBacklogFullException(queue.size());
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!enabled || running) {
+            return;
+        }
+        running = true;
+        flusher = new Thread(this::runFlushLoop, "message-write-behind");
+        flusher.start();
+        log.info("Message write-behind enabled (batchSize={}, flushIntervalMs={})", batchSize, flushIntervalMs);
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            flusher.join(shutdownTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            log.error("Write-behind shut down with {} messages still pending", queue.size());
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Stop after the web server has stopped taking requests, but before the
+     * data source is closed.
+     */
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    private void runFlushLoop() {
+        List<Message> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                collectBatch(batch);
+            } catch (InterruptedException e) {
+                // Keep draining, the loop exits once stopped and empty
+                continue;
+            }
+            if (!batch.isEmpty()) {
+                writeWithRetry(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void collectBatch(final List<Message> batch) throws InterruptedException {
+        Message first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                break;
+            }
+            Message next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void writeWithRetry(final List<Message> batch) {
+        int attempts = 0;
+        boolean rowByRow = false;
+        while (true) {
+            try {
+                if (rowByRow) {
+                    writeIndividually(batch);
+                } else {
+                    writeBatch(batch);
+                }
+                return;
+            } catch (DataIntegrityViolationException e) {
+                // A bad row (e.g. its room was deleted meanwhile) must not wedge the queue
+                rowByRow = true;
+            } catch (RuntimeException e) {
+                attempts++;
+                if (!running && attempts >= SHUTDOWN_MAX_ATTEMPTS) {
+                    log.error("Dropping {} messages after {} failed attempts during shutdown", batch.size(), attempts, e);
+                    return;
+                }
+                long backoff = Math.min(MAX_RETRY_BACKOFF_MS, flushIntervalMs << Math.min(attempts, 10));
+                log.warn("Write-behind batch of {} failed (attempt {}), retrying in {} ms", batch.size(), attempts, backoff, e);
+                sleep(backoff);
+            }
+        }
+    }
+
+    private void writeBatch(final List<Message> batch) {
+        List<Object[]> rows = new ArrayList<>(batch.size());
+        for (Message message : batch) {
+            rows.add(toRow(message));
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+        batch.forEach(this::publishPersisted);
+    }
+
+    private void writeIndividually(final List<Message> batch) {
+        for (Message message : batch) {
+            try {
+                jdbcTemplate.update(INSERT_SQL, toRow(message));
+                publishPersisted(message);
+            } catch (DataIntegrityViolationException e) {
+                log.error("Discarding message {} for room {}: {}",
+                        message.getId(), message.getChatRoom().getId(), e.getMostSpecificCause().getMessage());
+            }
+        }
+    }
+
+    private void publishPersisted(final Message message) {
+        try {
+            eventPublisher.publishEvent(MessagePersistedEvent.from(message));
+        } catch (RuntimeException e) {
+            // The row is stored, a failing listener must not cause a retry
+            log.warn("Listener failed for persisted message {}", message.getId(), e);
+        }
+    }
+
+    private Object[] toRow(final Message message) {
+        Message.MessageType type = message.getType() != null ? message.getType() : Message.MessageType.TEXT;
+        return new Object[] {
+                message.getId(),
+                message.getSender().getId(),
+                message.getChatRoom().getId(),
+                message.getContent(),
+                type.name(),
+                Timestamp.valueOf(message.getTimestamp()),
+                message.isEdited()
+        };
+    }
+
+    private void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.jameselner.convo.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.jameselner.convo.dto.ChatMessageDTO;
+import com.jameselner.convo.dto.OracleRequestDTO;
+import com.jameselner.convo.exception.RateLimitedException;
+import com.jameselner.convo.exception.ResourceNotFoundException;
+import com.jameselner.convo.repository.ChatRoomRepository;
+import com.jameselner.convo.websocket.ChatFrameEncoder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs Oracle requests and broadcasts the prophecy to {@code /topic/room/{roomId}}.
+ * <p>
+ * Asynchronous requests return as soon as they are accepted. Requests for a
+ * room and order whose generation is already queued or running join it
+ * instead of starting another, since every subscriber of the room receives
+ * the same broadcast. New generations run on a bounded pool and are rejected
+ * once its queue is full.
+ * <p>
+ * Every generation, synchronous or not, takes a token from the room's bucket,
+ * so a busy room can't monopolise the pool. Coalesced requests are free.
+ */
+@Slf4j
+@Component
+public class OracleDispatcher implements SmartLifecycle {
+
+    private static final long BUSY_RETRY_AFTER_MS = 1_000;
+    private static final long SHUTDOWN_TIMEOUT_MS = 10_000;
+
+    private record Generation(Long roomId, int order) {
+    }
+
+    private final OracleService oracleService;
+    private final ChatService chatService;
+    private final ChatRoomRepository chatRoomRepository;
+    private final ChatFrameEncoder chatFrameEncoder;
+    private final int maxOrder;
+    private final int burst;
+    private final int refillPerMinute;
+    private final Cache<Long, TokenBucket> buckets;
+    private final Set<Generation> inFlight = ConcurrentHashMap.newKeySet();
+    private final ThreadPoolExecutor executor;
+
+    private volatile boolean running;
+
+    public OracleDispatcher(
+            final OracleService oracleService,
+            final ChatService chatService,
+            final ChatRoomRepository chatRoomRepository,
+            final ChatFrameEncoder chatFrameEncoder,
+            final MeterRegistry meterRegistry,
+            @Value("${convo.oracle.max-order:5}") final int maxOrder,
+            @Value("${convo.oracle.async.threads:2}") final int threads,
+            @Value("${convo.oracle.async.queue-capacity:64}") final int queueCapacity,
+            @Value("${convo.oracle.rate.burst:5}") final int burst,
+            @Value("${convo.oracle.rate.per-minute:20}") final int refillPerMinute
+    ) {
+        this.oracleService = oracleService;
+        this.chatService = chatService;
+        this.chatRoomRepository = chatRoomRepository;
+        this.chatFrameEncoder = chatFrameEncoder;
+        this.maxOrder = maxOrder;
+        this.burst = burst;
+        this.refillPerMinute = refillPerMinute;
+        // An idle room's bucket is full again by the time it expires
+        this.buckets = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofMinutes(Math.max(1, 2L * burst / Math.max(1, refillPerMinute))))
+                .build();
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                task -> {
+                    Thread thread = new Thread(task, "oracle-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        ExecutorServiceMetrics.monitor(meterRegistry, executor, "oracle");
+    }
+
+    /**
+     * Generate on the calling thread and return the broadcast prophecy, which
+     * carries the frame it was broadcast as.
+     */
+    public ChatMessageDTO askNow(final Long roomId, final int order) {
+        acquireToken(roomId);
+        return generateAndBroadcast(roomId, order);
+    }
+
+    /**
+     * Queue a generation, or join the one already pending for this room and order.
+     *
+     * @throws RateLimitedException if the room is out of tokens or the pool is saturated
+     */
+    public OracleRequestDTO submit(final Long roomId, final int order) {
+        Generation generation = new Generation(roomId, Math.clamp(order, 1, Math.max(1, maxOrder)));
+        if (inFlight.contains(generation)) {
+            return new OracleRequestDTO(roomId, generation.order(), true);
+        }
+        if (!chatRoomRepository.existsById(roomId)) {
+            throw new ResourceNotFoundException("ChatRoom", roomId);
+        }
+        acquireToken(roomId);
+        if (!inFlight.add(generation)) {
+            return new OracleRequestDTO(roomId, generation.order(), true);
+        }
+
+        try {
+            executor.execute(() -> run(generation));
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(generation);
+            throw new RateLimitedException("The Oracle is busy, please retry shortly", BUSY_RETRY_AFTER_MS);
+        }
+        return new OracleRequestDTO(roomId, generation.order(), false);
+    }
+
+    private void run(final Generation generation) {
+        try {
+            generateAndBroadcast(generation.roomId(), generation.order());
+        } catch (RuntimeException e) {
+            log.error("Oracle generation failed for room {}", generation.roomId(), e);
+        } finally {
+            inFlight.remove(generation);
+        }
+    }
+
+    private ChatMessageDTO generateAndBroadcast(final Long roomId, final int order) {
+        // askOracle commits before returning, so subscribers never see an unsaved message
+        OracleService.OracleResult result = oracleService.askOracle(roomId, order);
+        ChatMessageDTO oracleDto = chatService.convertToDTO(result.getMessage());
+        oracleDto.setOracleMetadata(result.getMetadata());
+        chatFrameEncoder.broadcast("/topic/room/" + roomId, oracleDto);
+        return oracleDto;
+    }
+
+    private void acquireToken(final Long roomId) {
+        long now = System.nanoTime();
+        TokenBucket bucket = buckets.get(roomId, id -> new TokenBucket(burst, refillPerMinute, now));
+        long waitNanos = bucket.tryAcquire(now);
+        if (waitNanos > 0) {
+            throw new RateLimitedException(
+                    "The Oracle needs a moment before answering this room again",
+                    Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos)));
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                log.warn("Oracle executor shut down with {} generations pending", executor.getQueue().size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Stop after the web server has stopped taking requests, but before the
+     * message write-behind is drained.
+     */
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 2048;
+    }
+}
@@ -0,0 +1,389 @@
+package com.jameselner.convo.service;
+
+import com.jameselner.convo.dto.UserDTO;
+import com.jameselner.convo.event.PresenceChangedEvent;
+import com.jameselner.convo.exception.ResourceNotFoundException;
+import com.jameselner.convo.model.User;
+import com.jameselner.convo.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Online state of users, kept in memory.
+ * <p>
+ * Each user has the set of WebSocket sessions open on this node and is ONLINE
+ * while at least one is open, so closing one of several tabs changes nothing.
+ * When the last session closes the user only goes OFFLINE after a grace
+ * period, which a reconnect cancels. Sessions that negotiated STOMP
+ * heartbeats and then fall silent are expired, in case the disconnect was
+ * never seen; if one of them speaks again before it closes, it is taken back
+ * as if it had just opened. Every effective change is published as a
+ * {@link PresenceChangedEvent}.
+ * <p>
+ * Status changes only mark the user dirty, and a scheduled flush writes the
+ * latest {@code status}/{@code last_seen} of every dirty user in one JDBC
+ * batch, so a reconnect storm costs one batch instead of a read and a write
+ * per event. The user row is read once per user to learn its ID and email.
+ * On shutdown every user this node had online is written as OFFLINE.
+ */
+@Slf4j
+@Service
+public class PresenceService implements SmartLifecycle {
+
+    private static final String UPDATE_SQL = "UPDATE user SET status = ?, last_seen = ? WHERE id = ?";
+
+    private final UserRepository userRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final long offlineGraceNanos;
+    private final long heartbeatMs;
+    private final Map<String, Presence> presences = new ConcurrentHashMap<>();
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    // Expired for silence but not closed yet, so a frame can bring them back
+    private final Map<String, Session> expired = new ConcurrentHashMap<>();
+    private final Set<Presence> pendingOffline = ConcurrentHashMap.newKeySet();
+    private final Map<Long, Presence> dirty = new ConcurrentHashMap<>();
+
+    private volatile boolean running;
+
+    public PresenceService(
+            final UserRepository userRepository,
+            final JdbcTemplate jdbcTemplate,
+            final ApplicationEventPublisher eventPublisher,
+            @Value("${convo.presence.offline-grace-ms:5000}") final long offlineGraceMs,
+            @Value("${convo.presence.heartbeat-ms:10000}") final long heartbeatMs
+    ) {
+        this.userRepository = userRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
+        this.offlineGraceNanos = TimeUnit.MILLISECONDS.toNanos(offlineGraceMs);
+        this.heartbeatMs = heartbeatMs;
+    }
+
+    /**
+     * A user opened a session. Cancels a pending OFFLINE and keeps an
+     * explicit AWAY/BUSY status.
+     *
+     * @param clientHeartbeatMs the interval the client offered to send STOMP
+     *                          heartbeats at, 0 for none. With heartbeats on
+     *                          both sides the session expires after three
+     *                          missed intervals.
+     */
+    public void sessionOpened(final String username, final String sessionId, final long clientHeartbeatMs) {
+        open(presenceOf(username), sessionId, timeoutNanos(clientHeartbeatMs));
+    }
+
+    private void open(final Presence presence, final String sessionId, final long timeoutNanos) {
+        PresenceChangedEvent change = null;
+        synchronized (presence) {
+            if (sessions.putIfAbsent(sessionId, new Session(presence, timeoutNanos)) != null) {
+                return;
+            }
+            presence.sessionIds.add(sessionId);
+            cancelOffline(presence);
+            if (presence.status == User.UserStatus.OFFLINE) {
+                change = transition(presence, User.UserStatus.ONLINE);
+            }
+        }
+        publish(change);
+    }
+
+    /**
+     * A session closed. Once a user has none left, they go OFFLINE after the grace period.
+     */
+    public void sessionClosed(final String sessionId) {
+        expired.remove(sessionId);
+        Session session = sessions.remove(sessionId);
+        if (session != null) {
+            release(session.presence, sessionId);
+        }
+    }
+
+    /**
+     * Any inbound frame, heartbeats included, shows the session is alive. A
+     * session that was expired for silence is opened again.
+     */
+    public void touch(final String sessionId) {
+        Session session = sessions.get(sessionId);
+        if (session != null) {
+            session.lastActivity = System.nanoTime();
+            return;
+        }
+        Session silent = expired.remove(sessionId);
+        if (silent != null) {
+            log.info("Silent session {} of {} is back", sessionId, silent.presence.username);
+            open(silent.presence, sessionId, silent.timeoutNanos);
+        }
+    }
+
+    /**
+     * Set an explicit status. Anything but OFFLINE still needs an open
+     * session, so without one the grace period starts.
+     */
+    public void setStatus(final String username, final User.UserStatus status) {
+        Presence presence = presenceOf(username);
+        PresenceChangedEvent change;
+        synchronized (presence) {
+            if (status == User.UserStatus.OFFLINE) {
+                cancelOffline(presence);
+            } else if (presence.sessionIds.isEmpty()) {
+                scheduleOffline(presence);
+            }
+            change = transition(presence, status);
+        }
+        publish(change);
+    }
+
+    public List<UserDTO> getOnlineUsers() {
+        List<UserDTO> online = new ArrayList<>();
+        for (Presence presence : presences.values()) {
+            synchronized (presence) {
+                if (presence.status == User.UserStatus.ONLINE) {
+                    online.add(presence.toDTO());
+                }
+            }
+        }
+        online.sort(Comparator.comparing(UserDTO::getUsername));
+        return online;
+    }
+
+    /**
+     * Current in-memory status of a user this node has seen, which may be
+     * newer than the database row.
+     */
+    public Optional<User.UserStatus> statusOf(final String username) {
+        Presence presence = presences.get(username);
+        if (presence == null) {
+            return Optional.empty();
+        }
+        synchronized (presence) {
+            return Optional.of(presence.status);
+        }
+    }
+
+    public int getPendingCount() {
+        return dirty.size();
+    }
+
+    /**
+     * Expire silent sessions, then take users whose grace period ran out OFFLINE.
+     */
+    @Scheduled(fixedDelayString = "${convo.presence.sweep-interval-ms:1000}")
+    public void sweep() {
+        long now = System.nanoTime();
+        for (Map.Entry<String, Session> entry : sessions.entrySet()) {
+            Session session = entry.getValue();
+            if (now - session.lastActivity >= session.timeoutNanos
+                    && sessions.remove(entry.getKey(), session)) {
+                log.info("Expiring silent session {} of {}", entry.getKey(), session.presence.username);
+                expired.put(entry.getKey(), session);
+                release(session.presence, entry.getKey());
+            }
+        }
+
+        now = System.nanoTime();
+        List<PresenceChangedEvent> changes = new ArrayList<>();
+        for (Presence presence : pendingOffline) {
+            synchronized (presence) {
+                if (presence.offlinePending && now - presence.offlineDeadline >= 0) {
+                    cancelOffline(presence);
+                    PresenceChangedEvent change = transition(presence, User.UserStatus.OFFLINE);
+                    if (change != null) {
+                        changes.add(change);
+                    }
+                }
+            }
+        }
+        changes.forEach(this::publish);
+    }
+
+    /**
+     * Write the latest state of every user that changed since the last flush.
+     */
+    @Scheduled(fixedDelayString = "${convo.presence.flush-interval-ms:1000}")
+    public void flush() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+
+        List<Presence> batch = new ArrayList<>(dirty.values());
+        List<Object[]> rows = new ArrayList<>(batch.size());
+        for (Presence presence : batch) {
+            // Removed before reading, so a change made meanwhile marks it dirty again
+            dirty.remove(presence.userId, presence);
+            synchronized (presence) {
+                rows.add(new Object[] {
+                        presence.status.name(),
+                        Timestamp.valueOf(presence.lastSeen),
+                        presence.userId
+                });
+            }
+        }
+
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_SQL, rows);
+        } catch (RuntimeException e) {
+            log.warn("Failed to persist presence of {} users, retrying on next flush", batch.size(), e);
+            batch.forEach(presence -> dirty.putIfAbsent(presence.userId, presence));
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    /**
+     * Take everyone this node still has online, or on their way offline,
+     * OFFLINE and write it, since no sweep will run to finish their grace
+     * period. Nothing is published: clients of this node are gone, and other
+     * nodes keep their own sessions' presence.
+     */
+    @Override
+    public void stop() {
+        running = false;
+        for (Presence presence : presences.values()) {
+            synchronized (presence) {
+                cancelOffline(presence);
+                presence.sessionIds.clear();
+                transition(presence, User.UserStatus.OFFLINE);
+            }
+        }
+        sessions.clear();
+        expired.clear();
+        flush();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Flush after the web server has stopped, before the data source closes.
+     */
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    private long timeoutNanos(final long clientHeartbeatMs) {
+        if (clientHeartbeatMs <= 0 || heartbeatMs <= 0) {
+            return Long.MAX_VALUE;
+        }
+        return TimeUnit.MILLISECONDS.toNanos(3 * Math.max(clientHeartbeatMs, heartbeatMs));
+    }
+
+    private void release(final Presence presence, final String sessionId) {
+        synchronized (presence) {
+            presence.sessionIds.remove(sessionId);
+            if (presence.sessionIds.isEmpty() && presence.status != User.UserStatus.OFFLINE) {
+                scheduleOffline(presence);
+            }
+        }
+    }
+
+    private void scheduleOffline(final Presence presence) {
+        presence.offlinePending = true;
+        presence.offlineDeadline = System.nanoTime() + offlineGraceNanos;
+        pendingOffline.add(presence);
+    }
+
+    private void cancelOffline(final Presence presence) {
+        presence.offlinePending = false;
+        pendingOffline.remove(presence);
+    }
+
+    /**
+     * @return the change to publish once the lock is released, or {@code null} if the status is unchanged
+     */
+    private PresenceChangedEvent transition(final Presence presence, final User.UserStatus status) {
+        if (presence.status == status) {
+            return null;
+        }
+        presence.status = status;
+        presence.lastSeen = LocalDateTime.now();
+        dirty.put(presence.userId, presence);
+        return new PresenceChangedEvent(presence.userId, presence.username, status);
+    }
+
+    private void publish(final PresenceChangedEvent change) {
+        if (change == null) {
+            return;
+        }
+        try {
+            eventPublisher.publishEvent(change);
+        } catch (RuntimeException e) {
+            log.warn("Failed to publish presence change of {}", change.username(), e);
+        }
+    }
+
+    private Presence presenceOf(final String username) {
+        Presence presence = presences.get(username);
+        if (presence != null) {
+            return presence;
+        }
+
+        User user = userRepository.findByUsername(username)
+                .orElseThrow(() -> new ResourceNotFoundException("User", username));
+        return presences.computeIfAbsent(username, name -> new Presence(user));
+    }
+
+    private static final class Presence {
+        private final Long userId;
+        private final String username;
+        private final String email;
+        private User.UserStatus status;
+        private LocalDateTime lastSeen;
+        private final Set<String> sessionIds = new HashSet<>();
+        private boolean offlinePending;
+        private long offlineDeadline;
+
+        Presence(final User user) {
+            this.userId = user.getId();
+            this.username = user.getUsername();
+            this.email = user.getEmail();
+            // Whatever the row says, nobody is connected to this node yet
+            this.status = User.UserStatus.OFFLINE;
+            this.lastSeen = user.getLastSeen();
+        }
+
+        UserDTO toDTO() {
+            UserDTO dto = new UserDTO();
+            dto.setId(userId);
+            dto.setUsername(username);
+            dto.setEmail(email);
+            dto.setStatus(status.name());
+            dto.setLastSeen(lastSeen);
+            return dto;
+        }
+    }
+
+    private static final class Session {
+        private final Presence presence;
+        private final long timeoutNanos;
+        private volatile long lastActivity = System.nanoTime();
+
+        Session(final Presence presence, final long timeoutNanos) {
+            this.presence = presence;
+            this.timeoutNanos = timeoutNanos;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.jameselner.convo.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.jameselner.convo.event.ChatRoomDeletedEvent;
+import com.jameselner.convo.event.MessagesReadEvent;
+import com.jameselner.convo.exception.ResourceNotFoundException;
+import com.jameselner.convo.model.id.SnowflakeIdGenerator;
+import com.jameselner.convo.repository.ChatRoomRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read receipts as one watermark per user and room: the ID of the latest
+ * message the user has read there, which marks every earlier one read too.
+ * <p>
+ * A room's watermarks are loaded into memory on first use and kept sorted, so
+ * how many users have read a message is a binary search rather than a query.
+ * Moving a watermark only updates memory and marks it dirty, and a scheduled
+ * flush upserts the latest watermark of every dirty user and room in one JDBC
+ * batch. Scrolling through a room costs one row per reader, not one per
+ * message read. Every move is published as a {@link MessagesReadEvent}.
+ */
+@Slf4j
+@Service
+public class ReadReceiptService implements SmartLifecycle {
+
+    private static final String SELECT_SQL =
+            "SELECT user_id, last_read_message_id FROM read_receipt WHERE chat_room_id = ?";
+
+    // Watermarks only move forward, whichever write lands last
+    private static final String UPSERT_SQL =
+            "INSERT INTO read_receipt (user_id, chat_room_id, last_read_message_id, updated_at) " +
+            "VALUES (?, ?, ?, ?) ON DUPLICATE KEY UPDATE " +
+            "last_read_message_id = GREATEST(last_read_message_id, VALUES(last_read_message_id)), " +
+            "updated_at = VALUES(updated_at)";
+
+    private static final long MAX_CLOCK_SKEW_MS = 5_000;
+
+    private record Key(Long userId, Long chatRoomId) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ChatRoomRepository chatRoomRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Cache<Long, RoomReceipts> rooms;
+    private final Map<Key, Long> dirty = new ConcurrentHashMap<>();
+
+    private volatile boolean running;
+
+    public ReadReceiptService(
+            final JdbcTemplate jdbcTemplate,
+            final ChatRoomRepository chatRoomRepository,
+            final ApplicationEventPublisher eventPublisher,
+            final MeterRegistry meterRegistry,
+            @Value("${convo.read-receipts.max-rooms:10000}") final long maxRooms,
+            @Value("${convo.read-receipts.idle-minutes:30}") final long idleMinutes
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.chatRoomRepository = chatRoomRepository;
+        this.eventPublisher = eventPublisher;
+        this.rooms = Caffeine.newBuilder()
+                .maximumSize(maxRooms)
+                .expireAfterAccess(Duration.ofMinutes(idleMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, rooms, "read-receipts");
+    }
+
+    /**
+     * Move the user's watermark in the room up to {@code messageId}. Message
+     * IDs are time-ordered, so any ID that isn't from the future is a valid
+     * position, whether or not it is a message of this room.
+     *
+     * @return whether the watermark moved
+     * @throws ResourceNotFoundException if the room doesn't exist
+     */
+    public boolean markRead(final Long userId, final Long chatRoomId, final long messageId) {
+        if (SnowflakeIdGenerator.timestampOf(messageId) > System.currentTimeMillis() + MAX_CLOCK_SKEW_MS) {
+            return false;
+        }
+        // Only rooms known to exist get into the cache, so the batch can't trip over a foreign key
+        RoomReceipts receipts = rooms.getIfPresent(chatRoomId);
+        if (receipts == null) {
+            if (!chatRoomRepository.existsById(chatRoomId)) {
+                throw new ResourceNotFoundException("ChatRoom", chatRoomId);
+            }
+            receipts = receiptsOf(chatRoomId);
+        }
+        if (!receipts.advance(userId, messageId)) {
+            return false;
+        }
+        dirty.merge(new Key(userId, chatRoomId), messageId, Math::max);
+        eventPublisher.publishEvent(new MessagesReadEvent(userId, chatRoomId, messageId));
+        return true;
+    }
+
+    /**
+     * How many users other than its sender have read a message.
+     */
+    public int readByCount(final Long chatRoomId, final Long messageId, final Long senderId) {
+        return receiptsOf(chatRoomId).readersOf(messageId, senderId);
+    }
+
+    /**
+     * The user's watermarks that moved since the last flush, by room.
+     */
+    public Map<Long, Long> pendingWatermarksOf(final Long userId) {
+        Map<Long, Long> pending = new HashMap<>();
+        dirty.forEach((key, messageId) -> {
+            if (key.userId().equals(userId)) {
+                pending.put(key.chatRoomId(), messageId);
+            }
+        });
+        return pending;
+    }
+
+    public int getPendingCount() {
+        return dirty.size();
+    }
+
+    /**
+     * Write the latest watermark of every user and room that moved since the last flush.
+     */
+    @Scheduled(fixedDelayString = "${convo.read-receipts.flush-interval-ms:1000}")
+    public void flush() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+
+        List<Map.Entry<Key, Long>> batch = new ArrayList<>(dirty.size());
+        List<Object[]> rows = new ArrayList<>(dirty.size());
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (Map.Entry<Key, Long> entry : dirty.entrySet()) {
+            batch.add(Map.entry(entry.getKey(), entry.getValue()));
+            rows.add(new Object[] {entry.getKey().userId(), entry.getKey().chatRoomId(), entry.getValue(), now});
+        }
+
+        try {
+            jdbcTemplate.batchUpdate(UPSERT_SQL, rows);
+        } catch (RuntimeException e) {
+            log.warn("Failed to persist {} read receipts, retrying on next flush", rows.size(), e);
+            return;
+        }
+        // A watermark that moved again meanwhile stays dirty
+        batch.forEach(entry -> dirty.remove(entry.getKey(), entry.getValue()));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChatRoomDeleted(final ChatRoomDeletedEvent event) {
+        // The rows went with the room
+        rooms.invalidate(event.chatRoomId());
+        dirty.keySet().removeIf(key -> key.chatRoomId().equals(event.chatRoomId()));
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        flush();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Flush after the web server has stopped, before the data source closes.
+     */
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    private RoomReceipts receiptsOf(final Long chatRoomId) {
+        return rooms.get(chatRoomId, this::load);
+    }
+
+    private RoomReceipts load(final Long chatRoomId) {
+        RoomReceipts receipts = new RoomReceipts();
+        jdbcTemplate.query(SELECT_SQL, rs -> {
+            receipts.advance(rs.getLong(1), rs.getLong(2));
+        }, chatRoomId);
+        // Watermarks of a room that was dropped from the cache before they were flushed
+        dirty.forEach((key, messageId) -> {
+            if (key.chatRoomId().equals(chatRoomId)) {
+                receipts.advance(key.userId(), messageId);
+            }
+        });
+        return receipts;
+    }
+
+    /**
+     * The watermarks of one room, by user and in ascending order.
+     */
+    private static final class RoomReceipts {
+        private final Map<Long, Long> byUser = new HashMap<>();
+        private long[] sorted = new long[8];
+        private int size;
+
+        synchronized boolean advance(final Long userId, final long messageId) {
+            Long previous = byUser.get(userId);
+            if (previous != null && previous >= messageId) {
+                return false;
+            }
+            byUser.put(userId, messageId);
+            if (previous != null) {
+                remove(previous);
+            }
+            insert(messageId);
+            return true;
+        }
+
+        synchronized int readersOf(final long messageId, final Long senderId) {
+            int readers = size - lowerBound(messageId);
+            Long sender = byUser.get(senderId);
+            if (sender != null && sender >= messageId) {
+                readers--;
+            }
+            return readers;
+        }
+
+        private void insert(final long messageId) {
+            if (size == sorted.length) {
+                sorted = Arrays.copyOf(sorted, size * 2);
+            }
+            int at = lowerBound(messageId);
+            System.arraycopy(sorted, at, sorted, at + 1, size - at);
+            sorted[at] = messageId;
+            size++;
+        }
+
+        private void remove(final long messageId) {
+            int at = lowerBound(messageId);
+            System.arraycopy(sorted, at + 1, sorted, at, size - at - 1);
+            size--;
+        }
+
+        /**
+         * Index of the first watermark at or after {@code messageId}.
+         */
+        private int lowerBound(final long messageId) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (sorted[middle] < messageId) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
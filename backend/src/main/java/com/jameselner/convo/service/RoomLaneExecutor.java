@@ -0,0 +1,223 @@
+package com.jameselner.convo.service;
+
+import com.jameselner.convo.exception.MessageBacklogFullException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Runs work for a chat room on the room's lane, one of a fixed number of
+ * single-writer queues that rooms are hashed onto.
+ * <p>
+ * A lane runs its tasks one at a time in submission order, so the messages
+ * of a room are persisted and broadcast in the order they arrived, and their
+ * IDs increase in that order. Different lanes run in parallel, so a hot room
+ * only holds up the rooms that share its lane. Submitters block for up to
+ * {@code offer-timeout-ms} when a lane is full and are then rejected. A task
+ * that fails is counted and handed to its failure handler on the lane, since
+ * nobody else is waiting on it.
+ * <p>
+ * Each lane's worker is a virtual thread when {@code spring.threads.virtual.enabled}
+ * is set, and a platform daemon thread otherwise.
+ * <p>
+ * On shutdown the lanes stop accepting work and drain, before the
+ * write-behind queue they may feed stops.
+ */
+@Slf4j
+@Component
+public class RoomLaneExecutor implements SmartLifecycle {
+
+    private final Lane[] lanes;
+    private final long offerTimeoutMs;
+    private final long shutdownTimeoutMs;
+    private final boolean virtualThreads;
+    private final Counter rejected;
+    private final Counter failed;
+
+    private volatile boolean running;
+
+    public RoomLaneExecutor(
+            final MeterRegistry meterRegistry,
+            @Value("${convo.chat.lanes.count:32}") final int laneCount,
+            @Value("${convo.chat.lanes.capacity:1000}") final int capacity,
+            @Value("${convo.chat.lanes.offer-timeout-ms:250}") final long offerTimeoutMs,
+            @Value("${convo.chat.lanes.shutdown-timeout-ms:30000}") final long shutdownTimeoutMs,
+            @Value("${spring.threads.virtual.enabled:false}") final boolean virtualThreads
+    ) {
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+        this.virtualThreads = virtualThreads;
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            Lane lane = new Lane(i, capacity);
+            lanes[i] = lane;
+            Gauge.builder("convo.chat.lane.depth", lane.queue, BlockingQueue::size)
+                    .tag("lane", Integer.toString(i))
+                    .description("Tasks queued on a room lane")
+                    .register(meterRegistry);
+        }
+        this.rejected = Counter.builder("convo.chat.lane.rejected")
+                .description("Tasks rejected because their lane stayed full")
+                .register(meterRegistry);
+        this.failed = Counter.builder("convo.chat.lane.failed")
+                .description("Tasks that threw on their lane")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queue a task on the room's lane, after everything already queued for the room.
+     *
+     * @throws MessageBacklogFullException if the lane stays full or the executor is stopped
+     */
+    public void execute(final Long chatRoomId, final Runnable task) {
+        execute(chatRoomId, task, null);
+    }
+
+    /**
+     * Queue a task on the room's lane; if it throws, {@code onFailure} gets the exception on the lane.
+     *
+     * @throws MessageBacklogFullException if the lane stays full or the executor is stopped
+     */
+    public void execute(final Long chatRoomId, final Runnable task, final Consumer<RuntimeException> onFailure) {
+        Lane lane = laneOf(chatRoomId);
+        if (!running) {
+            throw new MessageBacklogFullException(lane.queue.size());
+        }
+
+        boolean accepted;
+        try {
+            accepted = lane.queue.offer(new LaneTask(task, onFailure), offerTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            accepted = false;
+        }
+
+        if (!accepted) {
+            rejected.increment();
+            throw new MessageBacklogFullException(lane.queue.size());
+        }
+    }
+
+    public int getPendingCount() {
+        int pending = 0;
+        for (Lane lane : lanes) {
+            pending += lane.queue.size();
+        }
+        return pending;
+    }
+
+    @Override
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        Thread.Builder workers = virtualThreads ? Thread.ofVirtual() : Thread.ofPlatform().daemon();
+        for (Lane lane : lanes) {
+            lane.worker = workers.name("room-lane-" + lane.index).start(() -> runLane(lane));
+        }
+        log.info("Room lanes started (lanes={})", lanes.length);
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shutdownTimeoutMs);
+        for (Lane lane : lanes) {
+            try {
+                long remaining = Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+                lane.worker.join(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        int pending = getPendingCount();
+        if (pending > 0) {
+            log.error("Room lanes shut down with {} tasks still pending", pending);
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Stop after the web server has stopped taking frames, but before the
+     * write-behind queue and the data source.
+     */
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 3072;
+    }
+
+    int laneIndexOf(final Long chatRoomId) {
+        // Spread sequential IDs before taking the modulus
+        long mixed = chatRoomId * 0x9E3779B97F4A7C15L;
+        return (int) Math.floorMod(mixed ^ (mixed >>> 32), (long) lanes.length);
+    }
+
+    private Lane laneOf(final Long chatRoomId) {
+        return lanes[laneIndexOf(chatRoomId)];
+    }
+
+    private void runLane(final Lane lane) {
+        while (running || !lane.queue.isEmpty()) {
+            LaneTask task;
+            try {
+                task = lane.queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // Keep draining, the loop exits once stopped and empty
+                continue;
+            }
+            if (task == null) {
+                continue;
+            }
+            try {
+                task.task().run();
+            } catch (RuntimeException e) {
+                failed.increment();
+                log.warn("Room lane {} task failed", lane.index, e);
+                notifyFailure(task, e);
+            }
+        }
+    }
+
+    private static void notifyFailure(final LaneTask task, final RuntimeException failure) {
+        if (task.onFailure() == null) {
+            return;
+        }
+        try {
+            task.onFailure().accept(failure);
+        } catch (RuntimeException e) {
+            log.warn("Failure handler of a room lane task failed", e);
+        }
+    }
+
+    private record LaneTask(Runnable task, Consumer<RuntimeException> onFailure) {
+    }
+
+    private static final class Lane {
+        private final int index;
+        private final BlockingQueue<LaneTask> queue;
+        private Thread worker;
+
+        Lane(final int index, final int capacity) {
+            this.index = index;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+    }
+}
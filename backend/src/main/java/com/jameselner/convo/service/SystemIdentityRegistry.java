@@ -0,0 +1,74 @@
+package com.jameselner.convo.service;
+
+import com.jameselner.convo.model.User;
+import com.jameselner.convo.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Users the application itself posts as, such as the Oracle.
+ * <p>
+ * Each identity is seeded by a Flyway migration and loaded once at startup.
+ * Callers get the same detached {@link User}, which carries everything a
+ * message and its DTO need, so posting as a system user never touches the
+ * user table. Treat it as read-only.
+ * <p>
+ * A schema that missed the seed gets the identity created here, before any
+ * request can race for it, with a password no login can match.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SystemIdentityRegistry {
+
+    @Getter
+    @RequiredArgsConstructor
+    public enum SystemIdentity {
+        ORACLE("Oracle", "oracle@convo.system");
+
+        private final String username;
+        private final String email;
+    }
+
+    /**
+     * Not a BCrypt hash, so no password ever matches it.
+     */
+    static final String UNUSABLE_PASSWORD = "!";
+
+    private final UserRepository userRepository;
+    private final Map<SystemIdentity, User> users = new EnumMap<>(SystemIdentity.class);
+
+    @PostConstruct
+    void provision() {
+        for (SystemIdentity identity : SystemIdentity.values()) {
+            users.put(identity, userRepository.findByUsername(identity.getUsername())
+                    .orElseGet(() -> create(identity)));
+        }
+    }
+
+    public User get(final SystemIdentity identity) {
+        return users.get(identity);
+    }
+
+    private User create(final SystemIdentity identity) {
+        log.warn("System user {} was not seeded, creating it", identity.getUsername());
+        try {
+            return userRepository.save(User.builder()
+                    .username(identity.getUsername())
+                    .email(identity.getEmail())
+                    .password(UNUSABLE_PASSWORD)
+                    .status(User.UserStatus.OFFLINE)
+                    .build());
+        } catch (DataIntegrityViolationException e) {
+            // Another instance created it first
+            return userRepository.findByUsername(identity.getUsername()).orElseThrow(() -> e);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.jameselner.convo.service;
+
+import com.jameselner.convo.dto.TypingDTO;
+import com.jameselner.convo.event.ChatRoomDeletedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Who is typing in each room, broadcast as one set per room instead of one
+ * frame per keystroke.
+ * <p>
+ * A typing frame only records the user with an expiry; repeating it while
+ * the user is already typing just extends the expiry. Every interval, users
+ * whose expiry passed are dropped and each room whose set changed gets a
+ * single {@link TypingDTO} on {@code /topic/typing/{roomId}}, so a room costs
+ * at most one frame per interval however many people type in it. A stop
+ * frame takes the user out early, but isn't needed.
+ */
+@Service
+public class TypingAggregator {
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final int nodeId;
+    private final long ttlNanos;
+    // Rooms are only touched inside compute, which serializes access per room
+    private final Map<Long, RoomTyping> rooms = new ConcurrentHashMap<>();
+    private final Counter received;
+    private final Counter broadcast;
+
+    public TypingAggregator(
+            final SimpMessagingTemplate messagingTemplate,
+            final MeterRegistry meterRegistry,
+            @Value("${convo.id.node-id:0}") final int nodeId,
+            @Value("${convo.typing.ttl-ms:3000}") final long ttlMs
+    ) {
+        this.messagingTemplate = messagingTemplate;
+        this.nodeId = nodeId;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        this.received = Counter.builder("convo.typing.frames")
+                .tag("direction", "received")
+                .description("Typing frames sent by clients")
+                .register(meterRegistry);
+        this.broadcast = Counter.builder("convo.typing.frames")
+                .tag("direction", "broadcast")
+                .description("Typing sets broadcast to rooms")
+                .register(meterRegistry);
+        Gauge.builder("convo.typing.rooms", rooms, Map::size)
+                .description("Rooms with someone typing")
+                .register(meterRegistry);
+    }
+
+    /**
+     * The user is typing in the room, for another TTL from now.
+     */
+    public void typing(final Long chatRoomId, final String username) {
+        received.increment();
+        long expiresAt = System.nanoTime() + ttlNanos;
+        rooms.compute(chatRoomId, (id, room) -> {
+            RoomTyping typing = room != null ? room : new RoomTyping();
+            if (typing.typists.put(username, expiresAt) == null) {
+                typing.changed = true;
+            }
+            return typing;
+        });
+    }
+
+    /**
+     * The user stopped typing in the room, e.g. because they sent their message or left.
+     */
+    public void stopTyping(final Long chatRoomId, final String username) {
+        rooms.computeIfPresent(chatRoomId, (id, room) -> {
+            if (room.typists.remove(username) != null) {
+                room.changed = true;
+            }
+            return room;
+        });
+    }
+
+    /**
+     * Drop expired typists and broadcast the set of every room that changed.
+     */
+    @Scheduled(fixedDelayString = "${convo.typing.interval-ms:500}")
+    public void broadcastChanges() {
+        long now = System.nanoTime();
+        List<TypingDTO> frames = new ArrayList<>();
+        for (Long chatRoomId : rooms.keySet()) {
+            rooms.computeIfPresent(chatRoomId, (id, room) -> {
+                if (room.typists.values().removeIf(expiresAt -> now - expiresAt >= 0)) {
+                    room.changed = true;
+                }
+                if (room.changed) {
+                    frames.add(new TypingDTO(id, nodeId, room.typists.keySet().stream().sorted().toList()));
+                    room.changed = false;
+                }
+                // The empty set has been broadcast, so the room can go
+                return room.typists.isEmpty() ? null : room;
+            });
+        }
+        for (TypingDTO frame : frames) {
+            messagingTemplate.convertAndSend("/topic/typing/" + frame.chatRoomId(), frame);
+        }
+        broadcast.increment(frames.size());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChatRoomDeleted(final ChatRoomDeletedEvent event) {
+        rooms.remove(event.chatRoomId());
+    }
+
+    private static final class RoomTyping {
+        private final Map<String, Long> typists = new HashMap<>();
+        private boolean changed;
+    }
+}
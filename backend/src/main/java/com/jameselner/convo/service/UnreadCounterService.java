@@ -0,0 +1,247 @@
+package com.jameselner.convo.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.jameselner.convo.dto.UnreadCountsDTO;
+import com.jameselner.convo.event.ChatRoomDeletedEvent;
+import com.jameselner.convo.event.MessagePersistedEvent;
+import com.jameselner.convo.event.MessagesReadEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Unread message counts per user and room: the messages of a room after the
+ * user's read watermark that somebody else sent.
+ * <p>
+ * The rooms a user has read at least once are the rooms they follow. Their
+ * counts are loaded with one query the first time the user asks, then kept in
+ * memory: every stored message bumps the counter of each loaded follower, and
+ * reading up to the room's latest message resets it. A watermark that stops
+ * short of the latest message is recounted from the database instead. The
+ * recount and new messages update a counter under its lock, and a message
+ * the recount already saw, or one arriving while a recount is due, isn't
+ * counted again.
+ * <p>
+ * Changed counts are pushed to their user on {@code /user/queue/unread},
+ * coalesced per interval, so a client only fetches the summary once.
+ */
+@Service
+public class UnreadCounterService {
+
+    private static final String LOAD_SQL =
+            "SELECT rr.chat_room_id, rr.last_read_message_id, " +
+            "(SELECT COUNT(*) FROM message m WHERE m.chat_room_id = rr.chat_room_id " +
+            "AND m.id > rr.last_read_message_id AND m.sender_id <> rr.user_id) " +
+            "FROM read_receipt rr WHERE rr.user_id = ?";
+
+    private static final String COUNT_SQL =
+            "SELECT COUNT(*), COALESCE(MAX(id), 0) FROM message " +
+            "WHERE chat_room_id = ? AND id > ? AND sender_id <> ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReadReceiptService readReceiptService;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final Cache<Long, UserCounters> users;
+    // Room -> IDs of users following it; entries of unloaded users are dropped lazily
+    private final Map<Long, Set<Long>> followers = new ConcurrentHashMap<>();
+    private final Map<Long, Long> latestMessageIds = new ConcurrentHashMap<>();
+    private final Set<UserCounters> changed = ConcurrentHashMap.newKeySet();
+
+    public UnreadCounterService(
+            final JdbcTemplate jdbcTemplate,
+            final ReadReceiptService readReceiptService,
+            final SimpMessagingTemplate messagingTemplate,
+            final MeterRegistry meterRegistry,
+            @Value("${convo.unread.max-users:10000}") final long maxUsers,
+            @Value("${convo.unread.idle-minutes:30}") final long idleMinutes
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readReceiptService = readReceiptService;
+        this.messagingTemplate = messagingTemplate;
+        this.users = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterAccess(Duration.ofMinutes(idleMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, users, "unread-counters");
+    }
+
+    /**
+     * Unread counts of every room the user follows, loading them on first use.
+     */
+    public UnreadCountsDTO countsFor(final Long userId, final String username) {
+        UserCounters counters = users.get(userId, id -> load(id, username));
+        Map<Long, Long> counts = new HashMap<>();
+        counters.rooms.forEach((roomId, room) -> counts.put(roomId, countOf(counters, roomId, room)));
+        return new UnreadCountsDTO(counts);
+    }
+
+    /**
+     * Push the counts that changed since the last push to their users.
+     */
+    @Scheduled(fixedDelayString = "${convo.unread.push-interval-ms:500}")
+    public void pushChanges() {
+        for (UserCounters counters : changed) {
+            changed.remove(counters);
+            Map<Long, Long> counts = new HashMap<>();
+            for (Long roomId : counters.changedRooms) {
+                counters.changedRooms.remove(roomId);
+                RoomCounter room = counters.rooms.get(roomId);
+                if (room != null) {
+                    counts.put(roomId, countOf(counters, roomId, room));
+                }
+            }
+            if (!counts.isEmpty() && users.getIfPresent(counters.userId) == counters) {
+                messagingTemplate.convertAndSendToUser(counters.username, "/queue/unread", new UnreadCountsDTO(counts));
+            }
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessagePersisted(final MessagePersistedEvent event) {
+        latestMessageIds.merge(event.chatRoomId(), event.messageId(), Math::max);
+        Set<Long> userIds = followers.get(event.chatRoomId());
+        if (userIds == null) {
+            return;
+        }
+        for (Long userId : userIds) {
+            UserCounters counters = users.getIfPresent(userId);
+            if (counters == null) {
+                userIds.remove(userId);
+                continue;
+            }
+            RoomCounter room = counters.rooms.get(event.chatRoomId());
+            if (room != null && !userId.equals(event.senderId()) && countNew(room, event.messageId())) {
+                markChanged(counters, event.chatRoomId());
+            }
+        }
+    }
+
+    @EventListener
+    public void onMessagesRead(final MessagesReadEvent event) {
+        UserCounters counters = users.getIfPresent(event.userId());
+        if (counters == null) {
+            return;
+        }
+        RoomCounter room = counters.rooms.computeIfAbsent(event.chatRoomId(), id -> {
+            follow(id, event.userId());
+            return new RoomCounter(event.lastReadMessageId());
+        });
+        synchronized (room) {
+            room.watermark = Math.max(room.watermark, event.lastReadMessageId());
+            Long latest = latestMessageIds.get(event.chatRoomId());
+            if (latest != null && room.watermark >= latest) {
+                room.count.reset();
+                room.stale = false;
+            } else {
+                room.stale = true;
+            }
+        }
+        markChanged(counters, event.chatRoomId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChatRoomDeleted(final ChatRoomDeletedEvent event) {
+        followers.remove(event.chatRoomId());
+        latestMessageIds.remove(event.chatRoomId());
+        users.asMap().values().forEach(counters -> counters.rooms.remove(event.chatRoomId()));
+    }
+
+    private UserCounters load(final Long userId, final String username) {
+        UserCounters counters = new UserCounters(userId, username);
+        jdbcTemplate.query(LOAD_SQL, rs -> {
+            RoomCounter room = new RoomCounter(rs.getLong(2));
+            room.count.add(rs.getLong(3));
+            counters.rooms.put(rs.getLong(1), room);
+        }, userId);
+        // Watermarks that haven't been flushed yet, possibly in rooms without a row
+        readReceiptService.pendingWatermarksOf(userId).forEach((roomId, watermark) -> {
+            RoomCounter room = counters.rooms.get(roomId);
+            if (room == null || watermark > room.watermark) {
+                RoomCounter moved = new RoomCounter(watermark);
+                moved.stale = true;
+                counters.rooms.put(roomId, moved);
+            }
+        });
+        counters.rooms.keySet().forEach(roomId -> follow(roomId, userId));
+        return counters;
+    }
+
+    /**
+     * @return whether the room's count changed, or will once it is recounted
+     */
+    private static boolean countNew(final RoomCounter room, final long messageId) {
+        synchronized (room) {
+            // A client can read a write-behind message before it is stored
+            if (messageId <= room.watermark || messageId <= room.countedThrough) {
+                return false;
+            }
+            // The recount will see this message, it is stored by now
+            if (!room.stale) {
+                room.count.increment();
+            }
+            return true;
+        }
+    }
+
+    private long countOf(final UserCounters counters, final Long roomId, final RoomCounter room) {
+        synchronized (room) {
+            if (room.stale) {
+                jdbcTemplate.query(COUNT_SQL, rs -> {
+                    room.count.reset();
+                    room.count.add(rs.getLong(1));
+                    room.countedThrough = rs.getLong(2);
+                }, roomId, room.watermark, counters.userId);
+                room.stale = false;
+            }
+            return room.count.sum();
+        }
+    }
+
+    private void follow(final Long roomId, final Long userId) {
+        followers.computeIfAbsent(roomId, id -> ConcurrentHashMap.newKeySet()).add(userId);
+    }
+
+    private void markChanged(final UserCounters counters, final Long roomId) {
+        counters.changedRooms.add(roomId);
+        changed.add(counters);
+    }
+
+    private static final class UserCounters {
+        private final Long userId;
+        private final String username;
+        private final Map<Long, RoomCounter> rooms = new ConcurrentHashMap<>();
+        private final Set<Long> changedRooms = ConcurrentHashMap.newKeySet();
+
+        UserCounters(final Long userId, final String username) {
+            this.userId = userId;
+            this.username = username;
+        }
+    }
+
+    private static final class RoomCounter {
+        private final LongAdder count = new LongAdder();
+        private volatile long watermark;
+        private boolean stale;
+        // Newest message the last recount included
+        private long countedThrough;
+
+        RoomCounter(final long watermark) {
+            this.watermark = watermark;
+        }
+    }
+}
@@ -5,9 +5,7 @@ import com.jameselner.convo.model.User;
 import com.jameselner.convo.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
-import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,28 +14,25 @@ import java.util.Optional;
 public class UserService {
 
     private final UserRepository userRepository;
+    private final PresenceService presenceService;
 
-    @Transactional
+    /**
+     * Status changes are held in memory and persisted in batches, see {@link PresenceService}.
+     */
     public void updateUserStatus(final String username, final String status) {
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new RuntimeException("User not found: " + username));
-
-        user.setStatus(User.UserStatus.valueOf(status));
-        user.setLastSeen(LocalDateTime.now());
-        userRepository.save(user);
+        presenceService.setStatus(username, User.UserStatus.valueOf(status));
     }
 
     public UserDTO getUserByUsername(final String username) {
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found: " + username));
-        return new UserDTO(user);
+        UserDTO dto = new UserDTO(user);
+        presenceService.statusOf(username).ifPresent(status -> dto.setStatus(status.name()));
+        return dto;
     }
 
     public List<UserDTO> getOnlineUsers() {
-        List<User> users = userRepository.findByStatus(User.UserStatus.ONLINE);
-        return users.stream()
-                .map(UserDTO::new)
-                .toList();
+        return presenceService.getOnlineUsers();
     }
 
     public Optional<User> findByUsername(final String username) {
@@ -0,0 +1,71 @@
+package com.jameselner.convo.websocket;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.jameselner.convo.dto.ChatMessageDTO;
+import com.jameselner.convo.dto.EncodedFrame;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.UncheckedIOException;
+
+/**
+ * Serializes a {@link ChatMessageDTO} once and sends those bytes wherever
+ * the message goes.
+ * <p>
+ * The JSON is written by a writer prepared for {@code ChatMessageDTO} up
+ * front and cached on the DTO, so a prophecy that is both broadcast and
+ * returned to the asker is serialized once. Broadcasts hand the bytes to the
+ * broker as they are, bypassing the message converters, along with the DTO
+ * for sessions on the compact wire format.
+ * <p>
+ * Room history goes through the regular converters instead. Its messages'
+ * {@code readByCount} changes whenever anyone's read watermark moves, so
+ * bytes cached for them would go stale.
+ */
+@Component
+public class ChatFrameEncoder {
+
+    private final ObjectWriter writer;
+    private final SimpMessagingTemplate messagingTemplate;
+
+    public ChatFrameEncoder(final ObjectMapper objectMapper, final SimpMessagingTemplate messagingTemplate) {
+        this.writer = objectMapper.writerFor(ChatMessageDTO.class);
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    /**
+     * The DTO's cached frame, serialized now if this is its first use.
+     */
+    public EncodedFrame encode(final ChatMessageDTO message) {
+        EncodedFrame frame = message.getEncodedFrame();
+        if (frame == null) {
+            try {
+                frame = new EncodedFrame(writer.writeValueAsBytes(message), MimeTypeUtils.APPLICATION_JSON);
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+            }
+            message.setEncodedFrame(frame);
+        }
+        return frame;
+    }
+
+    public void broadcast(final String destination, final ChatMessageDTO message) {
+        messagingTemplate.send(destination, toMessage(encode(message), message));
+    }
+
+    static Message<byte[]> toMessage(final EncodedFrame frame, final ChatMessageDTO message) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create();
+        accessor.setContentType(frame.contentType());
+        // Lets CompactFrameTranscoder encode it for compact sessions
+        accessor.setHeader(CompactFrameTranscoder.SOURCE_HEADER, message);
+        // The template still has to set the destination
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(frame.payload(), accessor.getMessageHeaders());
+    }
+}
@@ -1,17 +1,30 @@
 package com.jameselner.convo.websocket;
 
+import com.jameselner.convo.cluster.ClusterBrokerInterceptor;
+import com.jameselner.convo.dto.ChatErrorDTO;
 import com.jameselner.convo.dto.ChatMessageDTO;
+import com.jameselner.convo.dto.ReadReceiptDTO;
 import com.jameselner.convo.dto.UserStatusDTO;
+import com.jameselner.convo.event.PresenceChangedEvent;
+import com.jameselner.convo.exception.ConvoException;
+import com.jameselner.convo.exception.MessageBacklogFullException;
 import com.jameselner.convo.model.Message;
+import com.jameselner.convo.security.CustomUserDetailsService;
 import com.jameselner.convo.service.ChatService;
+import com.jameselner.convo.service.ReadReceiptService;
+import com.jameselner.convo.service.RoomLaneExecutor;
+import com.jameselner.convo.service.TypingAggregator;
 import com.jameselner.convo.service.UserService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
-import org.springframework.messaging.handler.annotation.SendTo;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageHeaderAccessor;
 import org.springframework.stereotype.Controller;
 
 import java.security.Principal;
@@ -23,16 +36,22 @@ public class ChatWebSocketController {
 
     private final ChatService chatService;
     private final UserService userService;
+    private final ReadReceiptService readReceiptService;
+    private final TypingAggregator typingAggregator;
+    private final RoomLaneExecutor roomLaneExecutor;
+    private final CustomUserDetailsService userDetailsService;
+    private final ChatFrameEncoder chatFrameEncoder;
     private final SimpMessagingTemplate messagingTemplate;
 
     /**
      * Handle incoming chat messages
      * Clients send to: /app/chat/{roomId}
      * Server broadcasts to: /topic/room/{roomId}
+     * Persist and broadcast run on the room's lane, so a room's messages keep their order.
+     * If the lane turns the message away, or persisting it fails, the sender is told on /user/queue/errors
      */
     @MessageMapping("/chat/{roomId}")
-    @SendTo("/topic/room/{roomId}")
-    public ChatMessageDTO sendMessage(
+    public void sendMessage(
             @DestinationVariable final Long roomId,
             @Payload final ChatMessageDTO messageDTO,
             final Principal principal
@@ -40,40 +59,70 @@ public class ChatWebSocketController {
 
         log.info("Received message from {} in room {}", principal.getName(), roomId);
 
-        // Save a message to a database
-        Message savedMessage = chatService.saveMessage(
-                principal.getName(),
-                roomId,
-                messageDTO.getContent()
-        );
+        String username = principal.getName();
+        try {
+            roomLaneExecutor.execute(roomId, () -> {
+                // Save a message to a database
+                Message savedMessage = chatService.saveMessage(username, roomId, messageDTO.getContent());
+
+                // Convert to DTO and broadcast
+                chatFrameEncoder.broadcast("/topic/room/" + roomId, chatService.convertToDTO(savedMessage));
+            }, failure -> sendError(username, roomId, failure));
+        } catch (MessageBacklogFullException e) {
+            log.warn("Room {} lane rejected a message from {}: {}", roomId, username, e.getMessage());
+            sendError(username, roomId, e);
+        }
+    }
 
-        // Convert to DTO and broadcast
-        return chatService.convertToDTO(savedMessage);
+    private void sendError(final String username, final Long roomId, final RuntimeException failure) {
+        ChatErrorDTO error = failure instanceof ConvoException convoException
+                ? new ChatErrorDTO(roomId, convoException.getErrorCode(), convoException.getMessage())
+                : new ChatErrorDTO(roomId, "INTERNAL_ERROR", "Your message could not be delivered");
+        messagingTemplate.convertAndSendToUser(username, "/queue/errors", error);
     }
 
     /**
      * Handle typing indicators
      * Clients send to: /app/typing/{roomId}
-     * Server broadcasts to: /topic/typing/{roomId}
+     * The room's typing set is broadcast to /topic/typing/{roomId} at most once per interval
      */
     @MessageMapping("/typing/{roomId}")
-    @SendTo("/topic/typing/{roomId}")
-    public ChatMessageDTO handleTyping(
+    public void handleTyping(
             @DestinationVariable final Long roomId,
             @Payload final ChatMessageDTO messageDTO,
             final Principal principal
     ) {
-        messageDTO.setSenderUsername(principal.getName());
-        messageDTO.setType(ChatMessageDTO.MessageType.TYPING);
-        return messageDTO;
+        if (messageDTO.getType() == ChatMessageDTO.MessageType.STOP_TYPING) {
+            typingAggregator.stopTyping(roomId, principal.getName());
+        } else {
+            typingAggregator.typing(roomId, principal.getName());
+        }
+    }
+
+    /**
+     * Handle read receipts
+     * Clients send to: /app/read/{roomId}
+     * Moves the sender's read position in the room; nothing is broadcast
+     */
+    @MessageMapping("/read/{roomId}")
+    public void markRead(
+            @DestinationVariable final Long roomId,
+            @Payload final ReadReceiptDTO receipt,
+            final Principal principal
+    ) {
+        if (receipt.messageId() == null) {
+            return;
+        }
+        Long userId = userDetailsService.userIdOf(principal.getName());
+        readReceiptService.markRead(userId, roomId, receipt.messageId());
     }
 
     /**
      * Handle user joining a chat room
+     * Server broadcasts the notice to: /topic/room/{roomId}
      */
     @MessageMapping("/join/{roomId}")
-    @SendTo("/topic/room/{roomId}")
-    public ChatMessageDTO userJoin(
+    public void userJoin(
             @DestinationVariable final Long roomId,
             final Principal principal
     ) {
@@ -82,38 +131,55 @@ public class ChatWebSocketController {
 
         userService.updateUserStatus(principal.getName(), "ONLINE");
 
-        return ChatMessageDTO.builder()
+        chatFrameEncoder.broadcast("/topic/room/" + roomId, ChatMessageDTO.builder()
                 .senderUsername(principal.getName())
                 .chatRoomId(roomId)
                 .content(principal.getName() + " joined the chat")
                 .type(ChatMessageDTO.MessageType.JOIN)
-                .build();
+                .build());
     }
 
     /**
      * Handle user leaving a chat room
+     * Server broadcasts the notice to: /topic/room/{roomId}
      */
     @MessageMapping("/leave/{roomId}")
-    @SendTo("/topic/room/{roomId}")
-    public ChatMessageDTO userLeave(
+    public void userLeave(
             @DestinationVariable final Long roomId,
             final Principal principal
     ) {
 
         log.info("User {} left room {}", principal.getName(), roomId);
 
-        return ChatMessageDTO.builder()
+        typingAggregator.stopTyping(roomId, principal.getName());
+
+        chatFrameEncoder.broadcast("/topic/room/" + roomId, ChatMessageDTO.builder()
                 .senderUsername(principal.getName())
                 .chatRoomId(roomId)
                 .content(principal.getName() + " left the chat")
                 .type(ChatMessageDTO.MessageType.LEAVE)
-                .build();
+                .build());
     }
 
     /**
-     * Broadcast user status changes
+     * Broadcast user status changes, as JSON or compact frames depending on the session.
+     * Presence only knows this node's sessions, so in cluster mode the delta stays on this
+     * node: an OFFLINE here says nothing about the user's sessions on other nodes
      */
     public void broadcastUserStatus(final UserStatusDTO statusDTO) {
-        messagingTemplate.convertAndSend("/topic/user-status", statusDTO);
+        MessageHeaders headers = CompactFrameTranscoder.sourceHeaders(statusDTO);
+        SimpMessageHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(headers, SimpMessageHeaderAccessor.class);
+        if (accessor != null) {
+            accessor.setHeader(ClusterBrokerInterceptor.NODE_LOCAL_HEADER, Boolean.TRUE);
+        }
+        messagingTemplate.convertAndSend("/topic/user-status", statusDTO, headers);
+    }
+
+    /**
+     * Push each presence change as a delta, so clients only fetch the online list once
+     */
+    @EventListener
+    public void onPresenceChanged(final PresenceChangedEvent event) {
+        broadcastUserStatus(new UserStatusDTO(event.userId(), event.username(), event.status().name()));
     }
 }
\ No newline at end of file
@@ -0,0 +1,282 @@
+package com.jameselner.convo.websocket;
+
+import com.jameselner.convo.dto.ChatMessageDTO;
+import com.jameselner.convo.dto.UserStatusDTO;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Compact binary encoding of the DTOs sent to {@link WireFormat#COMPACT} sessions.
+ * <p>
+ * Fields are written in a fixed order without names. A frame starts with a
+ * kind byte and a varint bitmap of the fields that are present; absent
+ * fields take no space. Integers are zigzag varints, strings a varint byte
+ * length followed by UTF-8, enums their ordinal (new constants are only
+ * ever appended), and a {@code LocalDateTime} its epoch second as if it
+ * were UTC followed by its nano-of-second.
+ * <pre>
+ * ChatMessageDTO (kind 1), flag bits in field order
+ *   0 id  1 chatRoomId  2 senderId  3 senderUsername  4 timestamp
+ *   5 content  6 type  7 edited (no payload)  8 oracleMetadata
+ *   then readByCount, always present
+ *   oracleMetadata: messagesAnalyzed uniqueTokens chainOrder modelBytes contextNodes backoffSteps
+ * UserStatusDTO (kind 2), flag bits in field order
+ *   0 userId  1 username  2 status
+ * </pre>
+ */
+public final class CompactFrameCodec {
+
+    static final int CHAT_MESSAGE = 1;
+    static final int USER_STATUS = 2;
+
+    private static final ChatMessageDTO.MessageType[] MESSAGE_TYPES = ChatMessageDTO.MessageType.values();
+
+    private CompactFrameCodec() {
+    }
+
+    public static byte[] encode(final ChatMessageDTO message) {
+        ChatMessageDTO.OracleMetadata oracle = message.getOracleMetadata();
+        int flags = flag(message.getId(), 0)
+                | flag(message.getChatRoomId(), 1)
+                | flag(message.getSenderId(), 2)
+                | flag(message.getSenderUsername(), 3)
+                | flag(message.getTimestamp(), 4)
+                | flag(message.getContent(), 5)
+                | flag(message.getType(), 6)
+                | (message.isEdited() ? 1 << 7 : 0)
+                | flag(oracle, 8);
+
+        Writer out = new Writer(64 + length(message.getSenderUsername()) + length(message.getContent()));
+        out.write(CHAT_MESSAGE);
+        out.writeVarint(flags);
+        if (message.getId() != null) {
+            out.writeLong(message.getId());
+        }
+        if (message.getChatRoomId() != null) {
+            out.writeLong(message.getChatRoomId());
+        }
+        if (message.getSenderId() != null) {
+            out.writeLong(message.getSenderId());
+        }
+        if (message.getSenderUsername() != null) {
+            out.writeString(message.getSenderUsername());
+        }
+        if (message.getTimestamp() != null) {
+            out.writeTimestamp(message.getTimestamp());
+        }
+        if (message.getContent() != null) {
+            out.writeString(message.getContent());
+        }
+        if (message.getType() != null) {
+            out.write(message.getType().ordinal());
+        }
+        if (oracle != null) {
+            out.writeLong(oracle.getMessagesAnalyzed());
+            out.writeLong(oracle.getUniqueTokens());
+            out.writeLong(oracle.getChainOrder());
+            out.writeLong(oracle.getModelBytes());
+            out.writeLong(oracle.getContextNodes());
+            out.writeLong(oracle.getBackoffSteps());
+        }
+        out.writeLong(message.getReadByCount());
+        return out.toByteArray();
+    }
+
+    public static byte[] encode(final UserStatusDTO status) {
+        int flags = flag(status.userId(), 0)
+                | flag(status.username(), 1)
+                | flag(status.status(), 2);
+
+        Writer out = new Writer(16 + length(status.username()) + length(status.status()));
+        out.write(USER_STATUS);
+        out.writeVarint(flags);
+        if (status.userId() != null) {
+            out.writeLong(status.userId());
+        }
+        if (status.username() != null) {
+            out.writeString(status.username());
+        }
+        if (status.status() != null) {
+            out.writeString(status.status());
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the frame is not a complete chat message
+     */
+    public static ChatMessageDTO decodeChatMessage(final byte[] frame) {
+        Reader in = new Reader(frame, CHAT_MESSAGE);
+        int flags = (int) in.readVarint();
+        ChatMessageDTO message = new ChatMessageDTO();
+        if (has(flags, 0)) {
+            message.setId(in.readLong());
+        }
+        if (has(flags, 1)) {
+            message.setChatRoomId(in.readLong());
+        }
+        if (has(flags, 2)) {
+            message.setSenderId(in.readLong());
+        }
+        if (has(flags, 3)) {
+            message.setSenderUsername(in.readString());
+        }
+        if (has(flags, 4)) {
+            message.setTimestamp(in.readTimestamp());
+        }
+        if (has(flags, 5)) {
+            message.setContent(in.readString());
+        }
+        if (has(flags, 6)) {
+            int ordinal = in.read();
+            if (ordinal >= MESSAGE_TYPES.length) {
+                throw new IllegalArgumentException("Unknown message type " + ordinal);
+            }
+            message.setType(MESSAGE_TYPES[ordinal]);
+        }
+        message.setEdited(has(flags, 7));
+        if (has(flags, 8)) {
+            message.setOracleMetadata(ChatMessageDTO.OracleMetadata.builder()
+                    .messagesAnalyzed((int) in.readLong())
+                    .uniqueTokens((int) in.readLong())
+                    .chainOrder((int) in.readLong())
+                    .modelBytes(in.readLong())
+                    .contextNodes((int) in.readLong())
+                    .backoffSteps((int) in.readLong())
+                    .build());
+        }
+        message.setReadByCount((int) in.readLong());
+        return message;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the frame is not a complete user status
+     */
+    public static UserStatusDTO decodeUserStatus(final byte[] frame) {
+        Reader in = new Reader(frame, USER_STATUS);
+        int flags = (int) in.readVarint();
+        Long userId = has(flags, 0) ? in.readLong() : null;
+        String username = has(flags, 1) ? in.readString() : null;
+        String status = has(flags, 2) ? in.readString() : null;
+        return new UserStatusDTO(userId, username, status);
+    }
+
+    private static int flag(final Object value, final int bit) {
+        return value != null ? 1 << bit : 0;
+    }
+
+    private static boolean has(final int flags, final int bit) {
+        return (flags & (1 << bit)) != 0;
+    }
+
+    private static int length(final String value) {
+        // Room for the common all-ASCII case; longer text grows the buffer
+        return value != null ? value.length() : 0;
+    }
+
+    private static final class Writer {
+        private byte[] buffer;
+        private int size;
+
+        Writer(final int capacity) {
+            this.buffer = new byte[capacity];
+        }
+
+        void write(final int b) {
+            ensureCapacity(1);
+            buffer[size++] = (byte) b;
+        }
+
+        void writeVarint(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        void writeLong(final long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        void writeString(final String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(utf8.length);
+            ensureCapacity(utf8.length);
+            System.arraycopy(utf8, 0, buffer, size, utf8.length);
+            size += utf8.length;
+        }
+
+        void writeTimestamp(final LocalDateTime timestamp) {
+            writeLong(timestamp.toEpochSecond(ZoneOffset.UTC));
+            writeVarint(timestamp.getNano());
+        }
+
+        byte[] toByteArray() {
+            return size == buffer.length ? buffer : Arrays.copyOf(buffer, size);
+        }
+
+        private void ensureCapacity(final int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] frame;
+        private int position;
+
+        Reader(final byte[] frame, final int kind) {
+            this.frame = frame;
+            int actual = read();
+            if (actual != kind) {
+                throw new IllegalArgumentException("Expected frame kind " + kind + " but got " + actual);
+            }
+        }
+
+        int read() {
+            if (position >= frame.length) {
+                throw new IllegalArgumentException("Truncated frame");
+            }
+            return frame[position++] & 0xFF;
+        }
+
+        long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = read();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        long readLong() {
+            long value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        String readString() {
+            long length = readVarint();
+            if (length > frame.length - position) {
+                throw new IllegalArgumentException("Truncated frame");
+            }
+            String value = new String(frame, position, (int) length, StandardCharsets.UTF_8);
+            position += (int) length;
+            return value;
+        }
+
+        LocalDateTime readTimestamp() {
+            long epochSecond = readLong();
+            int nano = (int) readVarint();
+            return LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC);
+        }
+    }
+}
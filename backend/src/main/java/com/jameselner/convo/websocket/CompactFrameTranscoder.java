@@ -0,0 +1,82 @@
+package com.jameselner.convo.websocket;
+
+import com.jameselner.convo.dto.ChatMessageDTO;
+import com.jameselner.convo.dto.EncodedFrame;
+import com.jameselner.convo.dto.UserStatusDTO;
+import lombok.RequiredArgsConstructor;
+import org.springframework.lang.NonNull;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Swaps the JSON payload of a frame for its {@link CompactFrameCodec}
+ * encoding on its way to a {@link WireFormat#COMPACT} session.
+ * <p>
+ * Broadcasts that can be sent compactly carry the DTO they were made from in
+ * {@link #SOURCE_HEADER}, which the broker copies onto every subscriber's
+ * frame. A chat message is encoded the first time a compact session needs
+ * it and cached on the DTO, so the JSON path pays nothing and compact
+ * sessions share one encoding. Frames without a source, e.g. typing sets or
+ * broadcasts relayed from other nodes, are sent as JSON to everyone.
+ */
+@Component
+@RequiredArgsConstructor
+public class CompactFrameTranscoder implements ChannelInterceptor {
+
+    static final String SOURCE_HEADER = "convoFrameSource";
+
+    private final WireFormatNegotiator negotiator;
+
+    /**
+     * Headers for a broadcast of {@code source} that compact sessions can take.
+     */
+    public static MessageHeaders sourceHeaders(final Object source) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create();
+        accessor.setHeader(SOURCE_HEADER, source);
+        // The template still has to set the destination
+        accessor.setLeaveMutable(true);
+        return accessor.getMessageHeaders();
+    }
+
+    @Override
+    public Message<?> preSend(@NonNull final Message<?> message, @NonNull final MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        Object source = headers.get(SOURCE_HEADER);
+        if (source == null
+                || SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE
+                || negotiator.formatOf(SimpMessageHeaderAccessor.getSessionId(headers)) != WireFormat.COMPACT) {
+            return message;
+        }
+
+        byte[] payload = encode(source);
+        if (payload == null) {
+            return message;
+        }
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        accessor.setContentType(WireFormat.COMPACT.contentType());
+        accessor.removeHeader(SOURCE_HEADER);
+        return MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+    }
+
+    private static byte[] encode(final Object source) {
+        return switch (source) {
+            case ChatMessageDTO chatMessage -> {
+                EncodedFrame frame = chatMessage.getCompactFrame();
+                if (frame == null) {
+                    // Racing sessions may both encode; they get identical bytes
+                    frame = new EncodedFrame(CompactFrameCodec.encode(chatMessage), WireFormat.COMPACT.contentType());
+                    chatMessage.setCompactFrame(frame);
+                }
+                yield frame.payload();
+            }
+            case UserStatusDTO status -> CompactFrameCodec.encode(status);
+            default -> null;
+        };
+    }
+}
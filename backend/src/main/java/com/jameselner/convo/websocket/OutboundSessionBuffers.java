@@ -0,0 +1,294 @@
+package com.jameselner.convo.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded send queue per WebSocket session, so a slow client can't hold up
+ * the threads that deliver broadcasts.
+ * <p>
+ * Frames for a session are only appended to its queue; a writer thread per
+ * busy session writes them to the socket in order. Writers are virtual threads
+ * when {@code spring.threads.virtual.enabled} is set, and pooled platform
+ * daemon threads otherwise. A session whose queue
+ * outgrows {@code buffer-size-limit} bytes is closed, or with the
+ * {@code drop} overflow strategy loses its oldest queued frames instead. A
+ * session stuck in one write for longer than {@code send-time-limit-ms} is
+ * closed either way. Closed sessions get {@link CloseStatus#SESSION_NOT_RELIABLE}.
+ * <p>
+ * Registered as a handler decorator, this sits underneath the STOMP handler's
+ * own session decorator, which never has to wait on the socket as a result.
+ */
+@Slf4j
+@Component
+public class OutboundSessionBuffers implements WebSocketHandlerDecoratorFactory, DisposableBean {
+
+    public enum OverflowStrategy {
+        TERMINATE, DROP
+    }
+
+    private final int bufferSizeLimit;
+    private final long sendTimeLimitNanos;
+    private final OverflowStrategy overflowStrategy;
+    private final Map<String, BufferedSession> sessions = new ConcurrentHashMap<>();
+    private final ExecutorService writers;
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final Counter evictedForBuffer;
+    private final Counter evictedForTime;
+    private final Counter dropped;
+
+    public OutboundSessionBuffers(
+            final MeterRegistry meterRegistry,
+            @Value("${convo.websocket.outbound.buffer-size-limit:524288}") final int bufferSizeLimit,
+            @Value("${convo.websocket.outbound.send-time-limit-ms:10000}") final long sendTimeLimitMs,
+            @Value("${convo.websocket.outbound.overflow:terminate}") final String overflowStrategy,
+            @Value("${spring.threads.virtual.enabled:false}") final boolean virtualThreads
+    ) {
+        this.writers = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ws-writer-", 0).factory())
+                : Executors.newCachedThreadPool(Thread.ofPlatform().name("ws-writer-", 0).daemon().factory());
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.sendTimeLimitNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeLimitMs);
+        this.overflowStrategy = OverflowStrategy.valueOf(overflowStrategy.toUpperCase(Locale.ROOT));
+        this.evictedForBuffer = Counter.builder("convo.websocket.slow-consumers")
+                .tag("reason", "buffer")
+                .description("Sessions closed for queueing too many bytes")
+                .register(meterRegistry);
+        this.evictedForTime = Counter.builder("convo.websocket.slow-consumers")
+                .tag("reason", "time")
+                .description("Sessions closed for a write that took too long")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("convo.websocket.outbound.dropped")
+                .description("Frames dropped from full send queues")
+                .register(meterRegistry);
+        Gauge.builder("convo.websocket.outbound.buffered", bufferedBytes, AtomicLong::get)
+                .baseUnit("bytes")
+                .description("Bytes queued for all sessions")
+                .register(meterRegistry);
+    }
+
+    @Override
+    @NonNull
+    public WebSocketHandler decorate(@NonNull final WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(@NonNull final WebSocketSession session) throws Exception {
+                BufferedSession buffered = new BufferedSession(session);
+                sessions.put(session.getId(), buffered);
+                super.afterConnectionEstablished(buffered);
+            }
+
+            @Override
+            public void handleMessage(@NonNull final WebSocketSession session,
+                                      @NonNull final WebSocketMessage<?> message) throws Exception {
+                super.handleMessage(buffered(session), message);
+            }
+
+            @Override
+            public void handleTransportError(@NonNull final WebSocketSession session,
+                                             @NonNull final Throwable exception) throws Exception {
+                super.handleTransportError(buffered(session), exception);
+            }
+
+            @Override
+            public void afterConnectionClosed(@NonNull final WebSocketSession session,
+                                              @NonNull final CloseStatus closeStatus) throws Exception {
+                BufferedSession buffered = sessions.remove(session.getId());
+                if (buffered != null) {
+                    buffered.discard();
+                }
+                super.afterConnectionClosed(buffered != null ? buffered : session, closeStatus);
+            }
+        };
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Give writers up to the send time limit to finish, then interrupt them.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        writers.shutdown();
+        if (!writers.awaitTermination(sendTimeLimitNanos, TimeUnit.NANOSECONDS)) {
+            writers.shutdownNow();
+        }
+    }
+
+    /**
+     * Close sessions whose current write has run past the send time limit.
+     */
+    @Scheduled(fixedDelayString = "${convo.websocket.outbound.sweep-interval-ms:1000}")
+    public void sweep() {
+        long now = System.nanoTime();
+        for (BufferedSession session : sessions.values()) {
+            long started = session.sendStartedAt;
+            if (started != 0 && now - started > sendTimeLimitNanos
+                    && session.evict("a write took longer than " + TimeUnit.NANOSECONDS.toMillis(sendTimeLimitNanos) + " ms")) {
+                evictedForTime.increment();
+            }
+        }
+    }
+
+    private WebSocketSession buffered(final WebSocketSession session) {
+        BufferedSession buffered = sessions.get(session.getId());
+        return buffered != null ? buffered : session;
+    }
+
+    /**
+     * A session whose sends are queued and written by one writer at a time.
+     */
+    private final class BufferedSession extends WebSocketSessionDecorator {
+        private final ArrayDeque<WebSocketMessage<?>> queue = new ArrayDeque<>();
+        private long queuedBytes;
+        private boolean writing;
+        private boolean closed;
+        private volatile long sendStartedAt;
+
+        BufferedSession(final WebSocketSession delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void sendMessage(@NonNull final WebSocketMessage<?> message) {
+            boolean overflow = false;
+            boolean startWriter = false;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                int size = message.getPayloadLength();
+                if (queuedBytes + size > bufferSizeLimit) {
+                    if (overflowStrategy == OverflowStrategy.TERMINATE) {
+                        overflow = true;
+                    } else {
+                        while (!queue.isEmpty() && queuedBytes + size > bufferSizeLimit) {
+                            dequeue();
+                            dropped.increment();
+                        }
+                    }
+                }
+                if (!overflow) {
+                    queue.add(message);
+                    queuedBytes += size;
+                    bufferedBytes.addAndGet(size);
+                    if (!writing) {
+                        writing = true;
+                        startWriter = true;
+                    }
+                }
+            }
+            if (overflow) {
+                if (evict("more than " + bufferSizeLimit + " bytes were queued")) {
+                    evictedForBuffer.increment();
+                }
+            } else if (startWriter && !write(this::drain)) {
+                // Shutting down, nothing will write the queue
+                discard();
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                WebSocketMessage<?> message;
+                synchronized (this) {
+                    if (closed || queue.isEmpty()) {
+                        writing = false;
+                        return;
+                    }
+                    message = dequeue();
+                }
+                sendStartedAt = System.nanoTime();
+                try {
+                    getDelegate().sendMessage(message);
+                } catch (IOException | RuntimeException e) {
+                    log.debug("Failed to send to session {}", getId(), e);
+                    discard();
+                    return;
+                } finally {
+                    sendStartedAt = 0;
+                }
+            }
+        }
+
+        private WebSocketMessage<?> dequeue() {
+            WebSocketMessage<?> message = queue.poll();
+            queuedBytes -= message.getPayloadLength();
+            bufferedBytes.addAndGet(-message.getPayloadLength());
+            return message;
+        }
+
+        /**
+         * @return false if the session was already closed
+         */
+        synchronized boolean discard() {
+            if (closed) {
+                return false;
+            }
+            closed = true;
+            bufferedBytes.addAndGet(-queuedBytes);
+            queuedBytes = 0;
+            queue.clear();
+            return true;
+        }
+
+        /**
+         * @return false if the session was already closed
+         */
+        boolean evict(final String reason) {
+            if (!discard()) {
+                return false;
+            }
+            log.warn("Closing slow WebSocket session {}: {}", getId(), reason);
+            // Closing can block behind the stuck write, so it gets a thread of its own
+            write(() -> {
+                try {
+                    getDelegate().close(CloseStatus.SESSION_NOT_RELIABLE);
+                } catch (IOException | RuntimeException e) {
+                    log.debug("Failed to close session {}", getId(), e);
+                }
+            });
+            return true;
+        }
+
+        /**
+         * @return false if the writers have been shut down
+         */
+        private boolean write(final Runnable task) {
+            try {
+                writers.execute(task);
+                return true;
+            } catch (RejectedExecutionException e) {
+                log.debug("Writers shut down, dropping work for session {}", getId());
+                return false;
+            }
+        }
+    }
+}
@@ -1,24 +1,22 @@
 package com.jameselner.convo.websocket;
 
-import com.jameselner.convo.service.UserService;
+import com.jameselner.convo.service.PresenceService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.messaging.SessionConnectedEvent;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class WebSocketEventListener {
 
-    private final UserService userService;
-    private final Map<String, String> sessionUserMap = new ConcurrentHashMap<>();
+    private final PresenceService presenceService;
 
     @EventListener
     public void handleWebSocketConnectListener(final SessionConnectedEvent event) {
@@ -28,21 +26,25 @@ public class WebSocketEventListener {
                 headerAccessor.getUser().getName() : null;
 
         if (username != null) {
-            sessionUserMap.put(sessionId, username);
-            userService.updateUserStatus(username, "ONLINE");
+            presenceService.sessionOpened(username, sessionId, clientHeartbeatMs(headerAccessor));
             log.info("User {} connected with session {}", username, sessionId);
         }
     }
 
     @EventListener
     public void handleWebSocketDisconnectListener(final SessionDisconnectEvent event) {
-        StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
-        String sessionId = headerAccessor.getSessionId();
-        String username = sessionUserMap.remove(sessionId);
+        presenceService.sessionClosed(event.getSessionId());
+        log.debug("Session {} disconnected", event.getSessionId());
+    }
 
-        if (username != null) {
-            userService.updateUserStatus(username, "OFFLINE");
-            log.info("User {} disconnected", username);
+    /**
+     * The outgoing heartbeat interval from the client's CONNECT frame.
+     */
+    private static long clientHeartbeatMs(final StompHeaderAccessor connectedAccessor) {
+        if (!(connectedAccessor.getHeader(SimpMessageHeaderAccessor.CONNECT_MESSAGE_HEADER) instanceof Message<?> connect)) {
+            return 0;
         }
+        long[] heartbeat = StompHeaderAccessor.wrap(connect).getHeartbeat();
+        return heartbeat[0];
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,42 @@
+package com.jameselner.convo.websocket;
+
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.Map;
+
+/**
+ * Encoding of the frames sent to a STOMP session, chosen by the
+ * {@code content-type} header of its CONNECT frame.
+ */
+public enum WireFormat {
+
+    JSON(MimeTypeUtils.APPLICATION_JSON),
+    /**
+     * {@link CompactFrameCodec}. Its content type is a kind of
+     * {@code application/octet-stream}, which Spring sends as binary WebSocket messages.
+     */
+    COMPACT(new MimeType("application", "octet-stream", Map.of("format", "convo-compact")));
+
+    private final MimeType contentType;
+
+    WireFormat(final MimeType contentType) {
+        this.contentType = contentType;
+    }
+
+    public MimeType contentType() {
+        return contentType;
+    }
+
+    /**
+     * The format a CONNECT frame asks for; anything but the compact content type means JSON.
+     */
+    public static WireFormat requestedBy(final MimeType contentType) {
+        if (contentType != null
+                && COMPACT.contentType.equalsTypeAndSubtype(contentType)
+                && "convo-compact".equals(contentType.getParameter("format"))) {
+            return COMPACT;
+        }
+        return JSON;
+    }
+}
@@ -0,0 +1,95 @@
+package com.jameselner.convo.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.lang.NonNull;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records the {@link WireFormat} each STOMP session asked for in its CONNECT
+ * frame's {@code content-type} header.
+ * <p>
+ * Only sessions on the plain WebSocket endpoint can carry binary frames, so
+ * that endpoint's handshake marks them and everyone else stays on JSON,
+ * SockJS sessions included. Only compact sessions are tracked.
+ */
+@Slf4j
+@Component
+public class WireFormatNegotiator implements ChannelInterceptor, HandshakeInterceptor {
+
+    static final String BINARY_TRANSPORT_ATTRIBUTE = "convoBinaryTransport";
+
+    private final boolean compactEnabled;
+    private final Set<String> compactSessions = ConcurrentHashMap.newKeySet();
+
+    public WireFormatNegotiator(@Value("${convo.websocket.compact.enabled:true}") final boolean compactEnabled) {
+        this.compactEnabled = compactEnabled;
+    }
+
+    public WireFormat formatOf(final String sessionId) {
+        return sessionId != null && compactSessions.contains(sessionId) ? WireFormat.COMPACT : WireFormat.JSON;
+    }
+
+    @Override
+    public Message<?> preSend(@NonNull final Message<?> message, @NonNull final MessageChannel channel) {
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.CONNECT) {
+            return message;
+        }
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        if (accessor.getSessionId() == null) {
+            return message;
+        }
+
+        WireFormat requested = WireFormat.requestedBy(accessor.getContentType());
+        if (requested == WireFormat.COMPACT) {
+            Map<String, Object> attributes = accessor.getSessionAttributes();
+            if (compactEnabled && attributes != null && attributes.containsKey(BINARY_TRANSPORT_ATTRIBUTE)) {
+                compactSessions.add(accessor.getSessionId());
+            } else {
+                log.debug("Session {} asked for compact frames without a binary transport, using JSON",
+                        accessor.getSessionId());
+            }
+        }
+        return message;
+    }
+
+    @EventListener
+    public void onDisconnect(final SessionDisconnectEvent event) {
+        compactSessions.remove(event.getSessionId());
+    }
+
+    @Override
+    public boolean beforeHandshake(
+            @NonNull final ServerHttpRequest request,
+            @NonNull final ServerHttpResponse response,
+            @NonNull final WebSocketHandler wsHandler,
+            @NonNull final Map<String, Object> attributes
+    ) {
+        attributes.put(BINARY_TRANSPORT_ATTRIBUTE, Boolean.TRUE);
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(
+            @NonNull final ServerHttpRequest request,
+            @NonNull final ServerHttpResponse response,
+            @NonNull final WebSocketHandler wsHandler,
+            final Exception exception
+    ) {
+    }
+}
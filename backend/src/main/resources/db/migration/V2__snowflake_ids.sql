@@ -0,0 +1,14 @@
+-- Primary keys for user, chat_room and message are now assigned by the
+-- application (Snowflake-style, see SnowflakeIdGenerator) instead of
+-- AUTO_INCREMENT, which lets Hibernate batch inserts.
+--
+-- Existing rows keep their IDs. Generated IDs start far above any value
+-- AUTO_INCREMENT could have issued, so ordering by id stays chronological.
+
+SET FOREIGN_KEY_CHECKS = 0;
+
+ALTER TABLE `user` MODIFY `id` BIGINT NOT NULL;
+ALTER TABLE `chat_room` MODIFY `id` BIGINT NOT NULL;
+ALTER TABLE `message` MODIFY `id` BIGINT NOT NULL;
+
+SET FOREIGN_KEY_CHECKS = 1;
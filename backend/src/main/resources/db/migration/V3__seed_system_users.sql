@@ -0,0 +1,13 @@
+-- Users the application posts as (see SystemIdentityRegistry).
+--
+-- System users take negative IDs, which neither AUTO_INCREMENT nor the
+-- Snowflake generator ever issue. The password is not a BCrypt hash, so no
+-- login can match it. Databases where the Oracle was already created on
+-- first use keep that row.
+
+INSERT INTO `user` (`id`, `username`, `password`, `email`, `status`)
+SELECT -1, 'Oracle', '!', 'oracle@convo.system', 'OFFLINE'
+FROM DUAL
+WHERE NOT EXISTS (
+    SELECT 1 FROM `user` WHERE `username` = 'Oracle' OR `email` = 'oracle@convo.system'
+);
@@ -0,0 +1,27 @@
+-- Read receipts become one watermark per user and room: the latest message
+-- the user has read there, which covers every earlier message too. This
+-- replaces message_reader, which held one row per message and reader.
+
+CREATE TABLE `read_receipt` (
+    `user_id` BIGINT NOT NULL,
+    `chat_room_id` BIGINT NOT NULL,
+    `last_read_message_id` BIGINT NOT NULL,
+    `updated_at` DATETIME(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+    PRIMARY KEY (`user_id`, `chat_room_id`),
+    KEY `idx_read_receipt_chat_room` (`chat_room_id`),
+    CONSTRAINT `fk_read_receipt_user`
+        FOREIGN KEY (`user_id`) REFERENCES `user` (`id`)
+        ON UPDATE CASCADE ON DELETE CASCADE,
+    CONSTRAINT `fk_read_receipt_chat_room`
+        FOREIGN KEY (`chat_room_id`) REFERENCES `chat_room` (`id`)
+        ON UPDATE CASCADE ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+
+-- A reader's latest read message in a room becomes their watermark
+INSERT INTO `read_receipt` (`user_id`, `chat_room_id`, `last_read_message_id`)
+SELECT mr.`user_id`, m.`chat_room_id`, MAX(mr.`message_id`)
+FROM `message_reader` mr
+JOIN `message` m ON m.`id` = mr.`message_id`
+GROUP BY mr.`user_id`, m.`chat_room_id`;
+
+DROP TABLE `message_reader`;
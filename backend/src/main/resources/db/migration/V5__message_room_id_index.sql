@@ -0,0 +1,4 @@
+-- Seek a room's messages by ID: unread counts after a read watermark, and
+-- the Oracle's history loads after a message ID.
+
+CREATE INDEX `idx_message_chat_room_id` ON `message` (`chat_room_id`, `id`);
@@ -0,0 +1,164 @@
+package com.jameselner.convo.benchmark;
+
+import com.jameselner.convo.jdbc.ConcurrencyLimitedDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to handle a burst of chat frames, one per sender, against a
+ * 10-connection pool. Each frame holds a connection for a 2 ms insert, then
+ * blocks for another 3 ms without one (broadcast, cluster publish):
+ * <ul>
+ *     <li>{@code platform} - the default inbound channel pool of two threads
+ *     per core with an unbounded queue, straight onto the pool</li>
+ *     <li>{@code virtual} - a virtual thread per frame, queued on the
+ *     {@link ConcurrencyLimitedDataSource} permits in front of the pool</li>
+ * </ul>
+ * The platform pool is bound by its threads, which sit idle in the
+ * connection-free part of each frame; virtual threads are only bound by the
+ * connections.
+ * <p>
+ * Run {@link #main} with the test classpath, as described on {@link OracleChainBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class InboundExecutionBenchmark {
+
+    private static final int POOL_SIZE = 10;
+    private static final long QUERY_MS = 2;
+    private static final long OTHER_IO_MS = 3;
+
+    @Param({"platform", "virtual"})
+    private String mode;
+
+    @Param({"1000", "10000"})
+    private int senders;
+
+    private ExecutorService executor;
+    private DataSource dataSource;
+
+    @Setup
+    public void setUp() {
+        DataSource pool = new FixedPool(POOL_SIZE);
+        if (mode.equals("platform")) {
+            int threads = Runtime.getRuntime().availableProcessors() * 2;
+            executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+            dataSource = pool;
+        } else {
+            executor = Executors.newVirtualThreadPerTaskExecutor();
+            dataSource = new ConcurrencyLimitedDataSource(pool, POOL_SIZE, 60_000);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public void burst() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(senders);
+        for (int i = 0; i < senders; i++) {
+            executor.execute(() -> {
+                try {
+                    try (Connection connection = dataSource.getConnection()) {
+                        Thread.sleep(QUERY_MS);
+                    }
+                    Thread.sleep(OTHER_IO_MS);
+                } catch (SQLException | InterruptedException e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+    }
+
+    /**
+     * Stands in for the connection pool: a fixed set of connections that
+     * callers block on, like Hikari's.
+     */
+    private static final class FixedPool extends AbstractDataSource {
+        private final BlockingQueue<Connection> idle;
+
+        FixedPool(final int size) {
+            idle = new ArrayBlockingQueue<>(size);
+            for (int i = 0; i < size; i++) {
+                idle.add(pooled());
+            }
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            try {
+                Connection connection = idle.poll(60, TimeUnit.SECONDS);
+                if (connection == null) {
+                    throw new SQLTransientConnectionException("Connection is not available");
+                }
+                return connection;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLTransientConnectionException(e);
+            }
+        }
+
+        @Override
+        public Connection getConnection(final String username, final String password) throws SQLException {
+            return getConnection();
+        }
+
+        private Connection pooled() {
+            Connection[] self = new Connection[1];
+            self[0] = (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[] {Connection.class},
+                    (proxy, method, args) -> {
+                        if (method.getName().equals("close")) {
+                            idle.add(self[0]);
+                        }
+                        return null;
+                    });
+            return self[0];
+        }
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(InboundExecutionBenchmark.class.getSimpleName())
+                .build()
+        ).run();
+    }
+}
@@ -0,0 +1,82 @@
+package com.jameselner.convo.benchmark;
+
+import com.jameselner.convo.security.JwtUtil;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.security.core.userdetails.User;
+
+import java.security.Key;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request cost of verifying a token: the previous JwtUtil, which built a
+ * key and parser on every call and parsed three times in validateToken,
+ * against the single cached-parser pass.
+ * <p>
+ * Run {@link #main} with the test classpath, e.g. after
+ * {@code mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt}:
+ * {@code java -cp target/test-classes:target/classes:$(cat cp.txt) com.jameselner.convo.benchmark.JwtUtilBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtUtilBenchmark {
+
+    private static final String SECRET = "mySecretKeyThatIsAtLeast256BitsLongForHS256Algorithm";
+
+    private JwtUtil jwtUtil;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwtUtil = new JwtUtil(SECRET, 86_400_000L, "default", "");
+        token = jwtUtil.generateToken(new User("alice", "pw", new ArrayList<>()));
+    }
+
+    @Benchmark
+    public boolean legacyValidateToken() {
+        String username = legacyClaims(token).getSubject();
+        Date expiration = legacyClaims(token).getExpiration();
+        return legacyClaims(token).getSubject().equals(username) && !expiration.before(new Date());
+    }
+
+    @Benchmark
+    public JwtUtil.VerifiedToken parse() {
+        return jwtUtil.parse(token);
+    }
+
+    private static Claims legacyClaims(final String token) {
+        Key key = Keys.hmacShaKeyFor(SECRET.getBytes());
+        return Jwts.parserBuilder()
+                .setSigningKey(key)
+                .build()
+                .parseClaimsJws(token)
+                .getBody();
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JwtUtilBenchmark.class.getSimpleName())
+                .build()
+        ).run();
+    }
+}
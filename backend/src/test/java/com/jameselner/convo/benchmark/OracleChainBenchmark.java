@@ -0,0 +1,158 @@
+package com.jameselner.convo.benchmark;
+
+import com.jameselner.convo.oracle.OracleTokenizer;
+import com.jameselner.convo.oracle.RoomChain;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one Oracle prophecy over a full 300-message window:
+ * <ul>
+ *     <li>{@code legacyRebuildAndWalk} - the original per-request path, which
+ *     tokenized the history and rebuilt a String-keyed transition map</li>
+ *     <li>{@code legacyWalk} - the original walk alone over a prebuilt map,
+ *     which joins a key String and copies the state list on every step</li>
+ *     <li>{@code roomChainWalk} - the walk over the shared context trie, interned IDs and alias tables</li>
+ * </ul>
+ * Add {@code -prof gc} to the options to compare allocation per operation.
+ * <p>
+ * Run {@link #main} with the test classpath, e.g. after
+ * {@code mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt}:
+ * {@code java -cp target/test-classes:target/classes:$(cat cp.txt) com.jameselner.convo.benchmark.OracleChainBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OracleChainBenchmark {
+
+    private static final int HISTORY = 300;
+    private static final int MAX_TOKENS = 40;
+    private static final String[] VOCABULARY = (
+            "the a to and of i you it is that in we for this on was with are have be " +
+            "deploy build coffee meeting lunch bug fix review merge release test server " +
+            "today tomorrow morning later now again really maybe just still , , . . ? !"
+    ).split(" ");
+
+    @Param({"1", "2", "3", "5"})
+    private int order;
+
+    private List<String> history;
+    private List<String> tokens;
+    private Map<String, List<String>> legacyTransitions;
+    private RoomChain chain;
+    private Random random;
+
+    @Setup
+    public void setUp() {
+        Random corpus = new Random(17);
+        history = new ArrayList<>();
+        for (int i = 0; i < HISTORY; i++) {
+            StringBuilder message = new StringBuilder();
+            int words = 4 + corpus.nextInt(16);
+            for (int w = 0; w < words; w++) {
+                // Skewed towards the front of the vocabulary, like real word frequencies
+                int index = (int) (VOCABULARY.length * Math.pow(corpus.nextDouble(), 2));
+                message.append(VOCABULARY[index]).append(' ');
+            }
+            history.add(message.toString());
+        }
+
+        tokens = legacyTokenize(history);
+        legacyTransitions = legacyBuildTransitions(tokens, order);
+
+        chain = new RoomChain(HISTORY, 5, Long.MAX_VALUE);
+        chain.loadTokenized(List.of());
+        for (int i = 0; i < history.size(); i++) {
+            chain.add((long) i, history.get(i));
+        }
+        random = new Random(5);
+    }
+
+    @Benchmark
+    public List<String> legacyRebuildAndWalk() {
+        List<String> freshTokens = legacyTokenize(history);
+        return legacyGenerate(freshTokens, legacyBuildTransitions(freshTokens, order), order);
+    }
+
+    @Benchmark
+    public List<String> legacyWalk() {
+        return legacyGenerate(tokens, legacyTransitions, order);
+    }
+
+    @Benchmark
+    public RoomChain.Walk roomChainWalk() {
+        return chain.generate(order, MAX_TOKENS, random);
+    }
+
+    private static List<String> legacyTokenize(final List<String> contents) {
+        List<String> tokens = new ArrayList<>();
+        for (String content : contents) {
+            tokens.addAll(OracleTokenizer.tokenize(content));
+        }
+        return tokens;
+    }
+
+    private static Map<String, List<String>> legacyBuildTransitions(final List<String> tokens, final int order) {
+        Map<String, List<String>> transitions = new HashMap<>();
+        for (int i = 0; i <= tokens.size() - order - 1; i++) {
+            String key = String.join("\u0000", tokens.subList(i, i + order));
+            transitions.computeIfAbsent(key, k -> new ArrayList<>()).add(tokens.get(i + order));
+        }
+        return transitions;
+    }
+
+    private List<String> legacyGenerate(final List<String> tokens,
+                                        final Map<String, List<String>> transitions, final int order) {
+        int startIndex = random.nextInt(tokens.size() - order + 1);
+        List<String> currentState = new ArrayList<>(tokens.subList(startIndex, startIndex + order));
+        List<String> generated = new ArrayList<>(currentState);
+
+        for (int i = 0; i < MAX_TOKENS - order; i++) {
+            List<String> nextTokens = transitions.getOrDefault(String.join("\u0000", currentState),
+                    Collections.emptyList());
+            if (nextTokens.isEmpty()) {
+                break;
+            }
+            String next = nextTokens.get(random.nextInt(nextTokens.size()));
+            generated.add(next);
+
+            currentState = new ArrayList<>(currentState.subList(1, currentState.size()));
+            currentState.add(next);
+
+            if (OracleTokenizer.isTerminal(next)) {
+                break;
+            }
+        }
+        return generated;
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(OracleChainBenchmark.class.getSimpleName())
+                .build()
+        ).run();
+    }
+}
@@ -0,0 +1,115 @@
+package com.jameselner.convo.benchmark;
+
+import com.jameselner.convo.oracle.RoomChain;
+import com.jameselner.convo.oracle.TokenizedChunk;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cost of loading a room's Oracle model from a long history:
+ * <ul>
+ *     <li>{@code legacyRegexTokenize} - the original tokenizer alone, one
+ *     {@code Matcher} per message collecting every token into one list</li>
+ *     <li>{@code scannerTokenize} - the hand-written scanner alone, on one thread</li>
+ *     <li>{@code sequentialLoad} - scanner tokenizing on one thread, then building the model</li>
+ *     <li>{@code parallelLoad} - runs tokenized on the fork/join pool, then merged into the model</li>
+ * </ul>
+ * Add {@code -prof gc} to the options to compare allocation per operation.
+ * <p>
+ * Run {@link #main} with the test classpath, as described on {@link OracleChainBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OracleLoadBenchmark {
+
+    private static final Pattern LEGACY_TOKEN_PATTERN = Pattern.compile("[\\w']+|[.,!?;:]");
+    private static final String[] VOCABULARY = (
+            "the a to and of i you it is that in we for this on was with are have be " +
+            "deploy build coffee meeting lunch bug fix review merge release test server " +
+            "today tomorrow morning later now again really maybe just still , , . . ? !"
+    ).split(" ");
+
+    @Param({"2000", "20000"})
+    private int messages;
+
+    private long[] ids;
+    private String[] contents;
+
+    @Setup
+    public void setUp() {
+        Random corpus = new Random(17);
+        ids = new long[messages];
+        contents = new String[messages];
+        for (int i = 0; i < messages; i++) {
+            StringBuilder message = new StringBuilder();
+            int words = 4 + corpus.nextInt(16);
+            for (int w = 0; w < words; w++) {
+                int index = (int) (VOCABULARY.length * Math.pow(corpus.nextDouble(), 2));
+                message.append(VOCABULARY[index]).append(' ');
+            }
+            ids[i] = i;
+            contents[i] = message.toString();
+        }
+    }
+
+    @Benchmark
+    public List<String> legacyRegexTokenize() {
+        List<String> tokens = new ArrayList<>();
+        for (String content : contents) {
+            Matcher matcher = LEGACY_TOKEN_PATTERN.matcher(content);
+            while (matcher.find()) {
+                tokens.add(matcher.group());
+            }
+        }
+        return tokens;
+    }
+
+    @Benchmark
+    public TokenizedChunk scannerTokenize() {
+        return TokenizedChunk.of(ids, contents, 0, messages);
+    }
+
+    @Benchmark
+    public RoomChain sequentialLoad() {
+        RoomChain chain = new RoomChain(messages, 3, Long.MAX_VALUE);
+        chain.loadTokenized(List.of(TokenizedChunk.of(ids, contents, 0, messages)));
+        return chain;
+    }
+
+    @Benchmark
+    public RoomChain parallelLoad() {
+        RoomChain chain = new RoomChain(messages, 3, Long.MAX_VALUE);
+        chain.loadTokenized(TokenizedChunk.fork(ids, contents, messages).join());
+        return chain;
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(OracleLoadBenchmark.class.getSimpleName())
+                .build()
+        ).run();
+    }
+}
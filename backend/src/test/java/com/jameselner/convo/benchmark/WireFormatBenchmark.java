@@ -0,0 +1,130 @@
+package com.jameselner.convo.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import com.jameselner.convo.dto.ChatMessageDTO;
+import com.jameselner.convo.dto.UserStatusDTO;
+import com.jameselner.convo.websocket.CompactFrameCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding a chat message and a user status as JSON, with an
+ * ObjectMapper set up like Boot's, against the compact wire format.
+ * {@link #main} prints the frame sizes of both before running.
+ * <p>
+ * Run {@link #main} with the test classpath, e.g. after
+ * {@code mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt}:
+ * {@code java -cp target/test-classes:target/classes:$(cat cp.txt) com.jameselner.convo.benchmark.WireFormatBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireFormatBenchmark {
+
+    private ObjectWriter messageWriter;
+    private ObjectReader messageReader;
+    private ObjectWriter statusWriter;
+    private ChatMessageDTO message;
+    private UserStatusDTO status;
+    private byte[] messageJson;
+    private byte[] messageCompact;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = objectMapper();
+        messageWriter = objectMapper.writerFor(ChatMessageDTO.class);
+        messageReader = objectMapper.readerFor(ChatMessageDTO.class);
+        statusWriter = objectMapper.writerFor(UserStatusDTO.class);
+        message = sampleMessage();
+        status = new UserStatusDTO(7_234_567_890_123_456_790L, "alice", "ONLINE");
+        messageJson = messageWriter.writeValueAsBytes(message);
+        messageCompact = CompactFrameCodec.encode(message);
+    }
+
+    @Benchmark
+    public byte[] jsonEncodeMessage() throws IOException {
+        return messageWriter.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public byte[] compactEncodeMessage() {
+        return CompactFrameCodec.encode(message);
+    }
+
+    @Benchmark
+    public ChatMessageDTO jsonDecodeMessage() throws IOException {
+        return messageReader.readValue(messageJson);
+    }
+
+    @Benchmark
+    public ChatMessageDTO compactDecodeMessage() {
+        return CompactFrameCodec.decodeChatMessage(messageCompact);
+    }
+
+    @Benchmark
+    public byte[] jsonEncodeStatus() throws IOException {
+        return statusWriter.writeValueAsBytes(status);
+    }
+
+    @Benchmark
+    public byte[] compactEncodeStatus() {
+        return CompactFrameCodec.encode(status);
+    }
+
+    private static ObjectMapper objectMapper() {
+        return Jackson2ObjectMapperBuilder.json()
+                .modulesToInstall(new BlackbirdModule())
+                .build();
+    }
+
+    private static ChatMessageDTO sampleMessage() {
+        return ChatMessageDTO.builder()
+                .id(7_234_567_890_123_456_789L)
+                .chatRoomId(7_234_567_890_100_000_000L)
+                .senderId(7_234_567_890_100_000_001L)
+                .senderUsername("alice")
+                .timestamp(LocalDateTime.of(2026, 3, 4, 5, 6, 7, 123_456_000))
+                .content("Are we still on for the release review this afternoon?")
+                .type(ChatMessageDTO.MessageType.CHAT)
+                .readByCount(4)
+                .build();
+    }
+
+    public static void main(final String[] args) throws RunnerException, IOException {
+        ObjectMapper objectMapper = objectMapper();
+        UserStatusDTO status = new UserStatusDTO(7_234_567_890_123_456_790L, "alice", "ONLINE");
+        System.out.printf("ChatMessageDTO: %d bytes JSON, %d bytes compact%n",
+                objectMapper.writeValueAsBytes(sampleMessage()).length,
+                CompactFrameCodec.encode(sampleMessage()).length);
+        System.out.printf("UserStatusDTO: %d bytes JSON, %d bytes compact%n",
+                objectMapper.writeValueAsBytes(status).length,
+                CompactFrameCodec.encode(status).length);
+
+        new Runner(new OptionsBuilder()
+                .include(WireFormatBenchmark.class.getSimpleName())
+                .build()
+        ).run();
+    }
+}
@@ -0,0 +1,154 @@
+package com.jameselner.convo.cluster;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two nodes wired over a shared loopback hub
+ */
+class ClusterBrokerTest {
+
+    private final LoopbackClusterTransport.Hub hub = new LoopbackClusterTransport.Hub();
+
+    private Node nodeA;
+    private Node nodeB;
+
+    @BeforeEach
+    void setUp() {
+        nodeA = new Node(1);
+        nodeB = new Node(2);
+    }
+
+    @Test
+    void broadcast_reachesSubscribersOnOtherNode() {
+        // Arrange
+        nodeB.subscriptions.add("session-b", "sub-0", "/topic/room/7");
+
+        // Act
+        nodeA.broadcast("/topic/room/7", "{\"content\":\"hi\"}");
+
+        // Assert
+        assertEquals(1, nodeB.delivered.size());
+        Message<?> delivered = nodeB.delivered.getFirst();
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(delivered);
+        assertEquals("/topic/room/7", accessor.getDestination());
+        assertEquals(MimeTypeUtils.APPLICATION_JSON, accessor.getContentType());
+        assertEquals(1, accessor.getHeader(ClusterBrokerInterceptor.ORIGIN_NODE_HEADER));
+        assertEquals("{\"content\":\"hi\"}", new String((byte[]) delivered.getPayload(), StandardCharsets.UTF_8));
+        assertTrue(nodeA.delivered.isEmpty(), "A node must not receive its own broadcast back");
+    }
+
+    @Test
+    void broadcast_isDroppedWhereNobodySubscribes() {
+        // Arrange
+        nodeB.subscriptions.add("session-b", "sub-0", "/topic/room/8");
+
+        // Act
+        nodeA.broadcast("/topic/room/7", "{}");
+
+        // Assert
+        assertTrue(nodeB.delivered.isEmpty());
+        assertEquals(1.0, nodeB.meters.get("convo.broker.cluster.frames").tag("direction", "dropped").counter().count());
+    }
+
+    @Test
+    void relayedFrames_areNotPublishedAgain() {
+        // Arrange
+        nodeB.subscriptions.add("session-b", "sub-0", "/topic/user-status");
+        nodeA.broadcast("/topic/user-status", "{}");
+
+        // Act
+        Message<?> relayed = nodeB.delivered.getFirst();
+        nodeB.interceptor.preSend(relayed, nodeB.brokerChannel);
+
+        // Assert
+        assertEquals(0.0, nodeB.meters.get("convo.broker.cluster.frames").tag("direction", "published").counter().count());
+    }
+
+    @Test
+    void nodeLocalFrames_stayLocalOnAClusteredDestination() {
+        // Arrange
+        nodeB.subscriptions.add("session-b", "sub-0", "/topic/user-status");
+
+        // Act
+        nodeA.broadcast("/topic/user-status", "{\"status\":\"OFFLINE\"}", true);
+
+        // Assert
+        assertTrue(nodeB.delivered.isEmpty(), "A user who left node A may still be connected to node B");
+        assertEquals(0.0, nodeA.meters.get("convo.broker.cluster.frames").tag("direction", "published").counter().count());
+    }
+
+    @Test
+    void unclusteredDestinations_stayLocal() {
+        // Arrange
+        nodeB.subscriptions.add("session-b", "sub-0", "/queue/errors");
+
+        // Act
+        nodeA.broadcast("/queue/errors", "{}");
+
+        // Assert
+        assertTrue(nodeB.delivered.isEmpty());
+        assertEquals(0.0, nodeA.meters.get("convo.broker.cluster.frames").tag("direction", "published").counter().count());
+    }
+
+    @Test
+    void registry_tracksSubscriptionsPerSession() {
+        // Arrange
+        ClusterSubscriptionRegistry registry = nodeB.subscriptions;
+
+        // Act
+        registry.add("s1", "sub-0", "/topic/room/7");
+        registry.add("s2", "sub-0", "/topic/room/7");
+        registry.add("s2", "sub-1", "/topic/room/*");
+        registry.remove("s1", "sub-0");
+
+        // Assert
+        assertEquals(2, registry.subscriberCount("/topic/room/7"));
+        assertEquals(1, registry.subscriberCount("/topic/room/9"), "Pattern subscriptions should count");
+        assertEquals(2.0, nodeB.meters.get("convo.broker.cluster.subscriptions").gauge().value());
+    }
+
+    private final class Node {
+        private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        private final List<Message<?>> delivered = new ArrayList<>();
+        private final MessageChannel brokerChannel = (message, timeout) -> delivered.add(message);
+        private final ClusterSubscriptionRegistry subscriptions = new ClusterSubscriptionRegistry(meters);
+        private final ClusterBrokerInterceptor interceptor;
+
+        Node(final int nodeId) {
+            LoopbackClusterTransport transport = new LoopbackClusterTransport(hub);
+            interceptor = new ClusterBrokerInterceptor(transport, subscriptions, meters, nodeId,
+                    List.of("/topic/room/", "/topic/typing/", "/topic/user-status"));
+            new ClusterFrameReceiver(transport, subscriptions, brokerChannel, meters, nodeId).start();
+        }
+
+        void broadcast(final String destination, final String json) {
+            broadcast(destination, json, false);
+        }
+
+        void broadcast(final String destination, final String json, final boolean nodeLocal) {
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            accessor.setDestination(destination);
+            accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+            if (nodeLocal) {
+                accessor.setHeader(ClusterBrokerInterceptor.NODE_LOCAL_HEADER, true);
+            }
+            Message<byte[]> message = MessageBuilder.createMessage(
+                    json.getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+            interceptor.preSend(message, brokerChannel);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.jameselner.convo.jdbc;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the permits in front of the connection pool
+ */
+@ExtendWith(MockitoExtension.class)
+class ConcurrencyLimitedDataSourceTest {
+
+    @Mock
+    private DataSource pool;
+
+    @Test
+    void getConnection_waitsForAPermit_untilAConnectionIsClosed() throws Exception {
+        // Arrange
+        when(pool.getConnection()).thenAnswer(invocation -> mock(Connection.class));
+        ConcurrencyLimitedDataSource dataSource = new ConcurrencyLimitedDataSource(pool, 1, 10_000);
+        Connection held = dataSource.getConnection();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            // Act
+            CompletableFuture<Connection> waiting = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return dataSource.getConnection();
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            }, executor);
+            while (dataSource.getWaitingCount() == 0) {
+                Thread.onSpinWait();
+            }
+            boolean doneWhileHeld = waiting.isDone();
+            held.close();
+            held.close();
+
+            // Assert
+            assertFalse(doneWhileHeld);
+            Connection second = waiting.get(5, TimeUnit.SECONDS);
+            assertNotNull(second);
+            verify(pool, times(2)).getConnection();
+            second.close();
+        }
+    }
+
+    @Test
+    void getConnection_timesOutWhenNoPermitFrees() throws Exception {
+        // Arrange
+        when(pool.getConnection()).thenAnswer(invocation -> mock(Connection.class));
+        ConcurrencyLimitedDataSource dataSource = new ConcurrencyLimitedDataSource(pool, 1, 20);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        dataSource.bindTo(meterRegistry);
+        dataSource.getConnection();
+
+        // Act & Assert
+        assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+        assertEquals(1, meterRegistry.get("convo.datasource.permits.active").gauge().value());
+        assertEquals(2, meterRegistry.get("convo.datasource.permit.wait").timer().count());
+        verify(pool, times(1)).getConnection();
+    }
+
+    @Test
+    void getConnection_returnsThePermitWhenThePoolFails() throws Exception {
+        // Arrange
+        Connection connection = mock(Connection.class);
+        when(pool.getConnection())
+                .thenThrow(new SQLTransientConnectionException("pool exhausted"))
+                .thenReturn(connection);
+        ConcurrencyLimitedDataSource dataSource = new ConcurrencyLimitedDataSource(pool, 1, 20);
+
+        // Act
+        assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+        Connection retried = dataSource.getConnection();
+        retried.setAutoCommit(false);
+
+        // Assert
+        verify(connection).setAutoCommit(false);
+    }
+}
@@ -0,0 +1,87 @@
+package com.jameselner.convo.model.id;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SnowflakeIdGenerator
+ */
+class SnowflakeIdGeneratorTest {
+
+    private static final long NOW = SnowflakeIdGenerator.EPOCH_MILLIS + 1_000_000L;
+
+    @Test
+    void nextId_encodesTimestampAndNode() {
+        // Arrange
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(7, () -> NOW);
+
+        // Act
+        long id = generator.nextId();
+
+        // Assert
+        assertEquals(NOW, SnowflakeIdGenerator.timestampOf(id), "Timestamp should round-trip");
+        assertEquals(7, SnowflakeIdGenerator.nodeOf(id), "Node should round-trip");
+    }
+
+    @Test
+    void nextId_isStrictlyIncreasingWithinTheSameMillisecond() {
+        // Arrange
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, () -> NOW);
+        Set<Long> seen = new HashSet<>();
+        long previous = 0;
+
+        // Act + Assert - more IDs than the sequence holds, so it must borrow ahead
+        for (int i = 0; i < 10_000; i++) {
+            long id = generator.nextId();
+            assertTrue(id > previous, "IDs should increase");
+            assertTrue(seen.add(id), "IDs should be unique");
+            previous = id;
+        }
+    }
+
+    @Test
+    void nextId_staysMonotonicWhenClockStepsBack() {
+        // Arrange
+        AtomicLong clock = new AtomicLong(NOW);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, clock::get);
+
+        // Act
+        long before = generator.nextId();
+        clock.set(NOW - 5_000);
+        long after = generator.nextId();
+
+        // Assert
+        assertTrue(after > before, "A clock step back must not produce smaller IDs");
+    }
+
+    @Test
+    void nextId_isAboveLegacyAutoIncrementRange() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(0);
+
+        assertTrue(generator.nextId() > Integer.MAX_VALUE, "Generated IDs should sort after legacy rows");
+    }
+
+    @Test
+    void nextId_fitsInJavaScriptSafeIntegerForDecades() {
+        // Arrange - roughly 60 years after the epoch, highest node
+        long farFuture = SnowflakeIdGenerator.EPOCH_MILLIS + 60L * 365 * 24 * 60 * 60 * 1000;
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_NODE_ID, () -> farFuture);
+
+        // Act
+        long id = generator.nextId();
+
+        // Assert
+        assertTrue(id <= (1L << 53) - 1, "IDs should stay within Number.MAX_SAFE_INTEGER");
+    }
+
+    @Test
+    void constructor_rejectsOutOfRangeNode() {
+        assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_NODE_ID + 1));
+        assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdGenerator(-1));
+    }
+}
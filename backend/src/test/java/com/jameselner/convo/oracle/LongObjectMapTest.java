@@ -0,0 +1,52 @@
+package com.jameselner.convo.oracle;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the open-addressing long-keyed map
+ */
+class LongObjectMapTest {
+
+    @Test
+    void randomOperations_matchHashMap() {
+        // Arrange
+        LongObjectMap<String> map = new LongObjectMap<>();
+        Map<Long, String> expected = new HashMap<>();
+        Random random = new Random(3);
+
+        // Act
+        for (int i = 0; i < 200_000; i++) {
+            // A small key range forces collisions, long probe runs and removals within them
+            long key = 1 + random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                map.remove(key);
+                expected.remove(key);
+            } else {
+                map.put(key, "v" + i);
+                expected.put(key, "v" + i);
+            }
+        }
+
+        // Assert
+        assertEquals(expected.size(), map.size());
+        for (long key = 1; key <= 5_000; key++) {
+            assertEquals(expected.get(key), map.get(key), "key " + key);
+        }
+    }
+
+    @Test
+    void put_rejectsTheReservedKey() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+
+        assertThrows(IllegalArgumentException.class, () -> map.put(0, "x"));
+        assertNull(map.get(42));
+        map.remove(42);
+        assertEquals(0, map.size());
+    }
+}
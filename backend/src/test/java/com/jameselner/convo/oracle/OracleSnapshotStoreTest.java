@@ -0,0 +1,82 @@
+package com.jameselner.convo.oracle;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for Oracle model snapshot files
+ */
+class OracleSnapshotStoreTest {
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void write_thenRestore_roundTripsTheModel() throws Exception {
+        // Arrange
+        OracleSnapshotStore store = new OracleSnapshotStore(directory.toString());
+        RoomChain chain = new RoomChain(50, 3, Long.MAX_VALUE);
+        chain.loadTokenized(List.of(TokenizedChunk.of(new long[]{7, 8},
+                new String[]{"the cat sat on the mat.", "the cat ran off."}, 0, 2)));
+        chain.add(9L, "a cat sat.");
+        RoomChain restored = new RoomChain(50, 3, Long.MAX_VALUE);
+
+        // Act
+        store.write(1L, chain);
+        chain.add(10L, "never snapshotted.");
+        boolean found = store.restore(1L, restored);
+
+        // Assert
+        assertTrue(found);
+        assertEquals(9L, restored.lastMessageId());
+        restored.loadTokenized(List.of());
+        RoomChain reference = new RoomChain(50, 3, Long.MAX_VALUE);
+        reference.loadTokenized(List.of(TokenizedChunk.of(new long[]{7, 8, 9},
+                new String[]{"the cat sat on the mat.", "the cat ran off.", "a cat sat."}, 0, 3)));
+        for (int seed = 0; seed < 10; seed++) {
+            assertEquals(reference.generate(3, 20, new Random(seed)).tokens(),
+                    restored.generate(3, 20, new Random(seed)).tokens());
+        }
+        try (var files = Files.list(directory)) {
+            assertEquals(List.of(directory.resolve("room-1.snapshot")), files.toList(), "Temporary files are cleaned up");
+        }
+    }
+
+    @Test
+    void restore_returnsFalseWithoutASnapshot_andAfterDelete() throws Exception {
+        // Arrange
+        OracleSnapshotStore store = new OracleSnapshotStore(directory.toString());
+        RoomChain chain = new RoomChain(50, 3, Long.MAX_VALUE);
+        chain.loadTokenized(List.of(TokenizedChunk.of(new long[]{1}, new String[]{"hello there."}, 0, 1)));
+        store.write(2L, chain);
+
+        // Act
+        store.delete(2L);
+
+        // Assert
+        assertFalse(store.restore(2L, new RoomChain(50, 3, Long.MAX_VALUE)));
+        assertFalse(store.restore(3L, new RoomChain(50, 3, Long.MAX_VALUE)));
+    }
+
+    @Test
+    void disabledStore_neverTouchesTheDisk() throws Exception {
+        // Arrange
+        OracleSnapshotStore store = new OracleSnapshotStore("");
+        RoomChain chain = new RoomChain(50, 3, Long.MAX_VALUE);
+        chain.loadTokenized(List.of());
+
+        // Act
+        store.write(1L, chain);
+
+        // Assert
+        assertFalse(store.isEnabled());
+        assertFalse(store.restore(1L, new RoomChain(50, 3, Long.MAX_VALUE)));
+    }
+}
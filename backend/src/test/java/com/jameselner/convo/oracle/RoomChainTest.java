@@ -0,0 +1,279 @@
+package com.jameselner.convo.oracle;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the incrementally maintained room model
+ */
+class RoomChainTest {
+
+    @Test
+    void generate_followsTheOnlyPossiblePath() {
+        // Arrange
+        RoomChain chain = new RoomChain(300, 3, Long.MAX_VALUE);
+        load(chain, "the cat sat on the mat.");
+
+        // Act
+        RoomChain.Walk walk = chain.generate(5, 40, new Random(7));
+
+        // Assert
+        assertEquals(3, walk.order(), "Order is capped at the model's maximum");
+        assertEquals(1, walk.messagesAnalyzed());
+        assertEquals(6, walk.uniqueTokens());
+        String text = String.join(" ", walk.tokens());
+        assertTrue("the cat sat on the mat .".contains(text), "A trigram chain over one sentence can only replay it");
+    }
+
+    @Test
+    void add_evictsOldestMessagesOutOfTheWindow() {
+        // Arrange
+        RoomChain chain = new RoomChain(2, 2, Long.MAX_VALUE);
+        chain.loadTokenized(List.of());
+
+        // Act
+        chain.add(1L, "alpha beta alpha beta.");
+        chain.add(2L, "gamma delta gamma delta.");
+        chain.add(3L, "epsilon zeta epsilon zeta.");
+
+        // Assert
+        Set<String> seen = new HashSet<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            RoomChain.Walk walk = chain.generate(1, 40, random);
+            seen.addAll(walk.tokens());
+            assertEquals(2, walk.messagesAnalyzed());
+            assertEquals(5, walk.uniqueTokens());
+        }
+        assertFalse(seen.contains("alpha") || seen.contains("beta"), "Evicted words must not be generated");
+        assertTrue(seen.containsAll(List.of("gamma", "delta", "epsilon", "zeta")));
+    }
+
+    @Test
+    void load_appliesMessagesThatArrivedMeanwhile_withoutDuplicates() {
+        // Arrange
+        RoomChain chain = new RoomChain(300, 2, Long.MAX_VALUE);
+        chain.add(2L, "second message");
+        chain.add(3L, "third message");
+
+        // Act
+        load(chain, "first message", "second message");
+
+        // Assert
+        RoomChain.Walk walk = chain.generate(1, 40, new Random(1));
+        assertTrue(chain.isLoaded());
+        assertEquals(3, walk.messagesAnalyzed(), "Message 2 arrived both ways but counts once");
+        assertEquals(4, walk.uniqueTokens());
+    }
+
+    @Test
+    void generate_returnsNullForAnEmptyRoom_andHandlesASingleToken() {
+        RoomChain chain = new RoomChain(300, 3, Long.MAX_VALUE);
+        load(chain, "   ");
+        assertNull(chain.generate(2, 40, new Random()));
+
+        chain.add(2L, "hello");
+        assertEquals(List.of("hello"), chain.generate(2, 40, new Random()).tokens());
+    }
+
+    @Test
+    void generate_backsOffToShorterContextInsteadOfStopping() {
+        // Arrange: "q c" is never followed by anything, but "c" is
+        RoomChain chain = new RoomChain(300, 2, Long.MAX_VALUE);
+        load(chain, "b c d.", "q c");
+
+        // Act
+        Random random = new Random(9);
+        int walksFromQ = 0;
+        for (int i = 0; i < 200; i++) {
+            RoomChain.Walk walk = chain.generate(2, 40, random);
+            if (walk.tokens().getFirst().equals("q")) {
+                walksFromQ++;
+                // Assert
+                assertEquals(List.of("q", "c", "d", "."), walk.tokens());
+                assertEquals(1, walk.backoffSteps());
+            }
+        }
+        assertTrue(walksFromQ > 0);
+    }
+
+    @Test
+    void evict_prunesContextsThatLeftTheWindow() {
+        // Arrange
+        RoomChain chain = new RoomChain(1, 2, Long.MAX_VALUE);
+        chain.loadTokenized(List.of());
+        chain.add(1L, "a b c");
+        long footprintOfOneMessage = chain.footprintBytes();
+
+        // Act
+        chain.add(2L, "x y z");
+
+        // Assert: contexts "x", "y" and "x y", nothing left from the first message
+        RoomChain.Walk walk = chain.generate(2, 40, new Random(1));
+        assertEquals(3, walk.contextNodes());
+        assertEquals(3, walk.uniqueTokens());
+        assertEquals(footprintOfOneMessage, chain.footprintBytes());
+    }
+
+    @Test
+    void add_keepsTheModelWithinItsMemoryBudget() {
+        // Arrange
+        long budget = 64 * 1024;
+        RoomChain chain = new RoomChain(300, 5, budget);
+        chain.loadTokenized(List.of());
+        Random words = new Random(4);
+
+        // Act
+        for (long id = 0; id < 300; id++) {
+            StringBuilder message = new StringBuilder();
+            for (int w = 0; w < 12; w++) {
+                message.append("w").append(words.nextInt(500)).append(' ');
+            }
+            chain.add(id, message.toString());
+        }
+
+        // Assert
+        RoomChain.Walk walk = chain.generate(5, 40, new Random(2));
+        assertTrue(walk.messagesAnalyzed() < 300, "Older messages were evicted to stay in budget");
+        assertTrue(walk.modelBytes() <= budget, "Footprint " + walk.modelBytes());
+    }
+
+    @Test
+    void tokenizer_keepsWordsApostrophesAndPunctuation() {
+        assertEquals(List.of("Don't", "panic", ",", "it's", "fine", "!"),
+                OracleTokenizer.tokenize("Don't panic, it's fine!"));
+        assertTrue(OracleTokenizer.tokenize(null).isEmpty());
+    }
+
+    @Test
+    void tokenizer_matchesThePatternItReplaced() {
+        // Arrange
+        Pattern original = Pattern.compile("[\\w']+|[.,!?;:]");
+        String alphabet = "abcXYZ019_' .,!?;:-\"()\t\néß日😀";
+        Random random = new Random(3);
+
+        for (int n = 0; n < 2000; n++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(30);
+            for (int i = 0; i < length; i++) {
+                text.appendCodePoint(alphabet.codePointAt(alphabet.offsetByCodePoints(0,
+                        random.nextInt(alphabet.codePointCount(0, alphabet.length())))));
+            }
+            List<String> expected = new ArrayList<>();
+            Matcher matcher = original.matcher(text);
+            while (matcher.find()) {
+                expected.add(matcher.group());
+            }
+
+            // Act & Assert
+            assertEquals(expected, OracleTokenizer.tokenize(text.toString()), text.toString());
+        }
+    }
+
+    @Test
+    void loadTokenized_buildsTheSameModelFromParallelChunksAsFromOne() {
+        // Arrange: enough messages for several parallel runs, with evictions during the load
+        long[] ids = new long[1500];
+        String[] contents = new String[1500];
+        Random words = new Random(11);
+        for (int i = 0; i < 1500; i++) {
+            StringBuilder message = new StringBuilder();
+            for (int w = 0; w < 1 + words.nextInt(10); w++) {
+                message.append("w").append(words.nextInt(300)).append(words.nextInt(8) == 0 ? ". " : " ");
+            }
+            ids[i] = i;
+            contents[i] = message.toString();
+        }
+        RoomChain sequential = new RoomChain(1000, 3, 256 * 1024);
+        RoomChain parallel = new RoomChain(1000, 3, 256 * 1024);
+
+        // Act
+        sequential.loadTokenized(List.of(TokenizedChunk.of(ids, contents, 0, ids.length)));
+        parallel.loadTokenized(TokenizedChunk.fork(ids, contents, ids.length).join());
+
+        // Assert
+        assertEquals(sequential.footprintBytes(), parallel.footprintBytes());
+        for (int seed = 0; seed < 20; seed++) {
+            assertEquals(sequential.generate(3, 40, new Random(seed)), parallel.generate(3, 40, new Random(seed)));
+        }
+    }
+
+    @Test
+    void restoreSnapshot_thenCatchingUp_matchesAModelThatNeverStopped() {
+        // Arrange: a snapshot taken after evictions have freed token IDs
+        long[] ids = new long[1500];
+        String[] contents = new String[1500];
+        Random words = new Random(5);
+        for (int i = 0; i < 1500; i++) {
+            StringBuilder message = new StringBuilder();
+            for (int w = 0; w < 1 + words.nextInt(10); w++) {
+                message.append("w").append(words.nextInt(i < 700 ? 200 : 400)).append(words.nextInt(8) == 0 ? ". " : " ");
+            }
+            ids[i] = i;
+            contents[i] = message.toString();
+        }
+        RoomChain uninterrupted = new RoomChain(500, 3, Long.MAX_VALUE);
+        uninterrupted.loadTokenized(List.of(TokenizedChunk.of(ids, contents, 0, ids.length)));
+        RoomChain before = new RoomChain(500, 3, Long.MAX_VALUE);
+        before.loadTokenized(List.of(TokenizedChunk.of(ids, contents, 0, 1200)));
+        ByteBuffer snapshot = before.writeSnapshot(ByteBuffer::allocate);
+        RoomChain restored = new RoomChain(500, 3, Long.MAX_VALUE);
+
+        // Act: a message already in the snapshot arrives while catching up
+        restored.restoreSnapshot(snapshot);
+        restored.add(1199L, contents[1199]);
+        restored.loadTokenized(List.of(TokenizedChunk.of(ids, contents, 1200, ids.length)));
+
+        // Assert
+        assertEquals(1499L, restored.lastMessageId());
+        // Restored arrays are sized to fit rather than to the largest they've been
+        assertTrue(restored.footprintBytes() <= uninterrupted.footprintBytes());
+        for (int seed = 0; seed < 20; seed++) {
+            RoomChain.Walk expected = uninterrupted.generate(3, 40, new Random(seed));
+            RoomChain.Walk actual = restored.generate(3, 40, new Random(seed));
+            assertEquals(expected.tokens(), actual.tokens());
+            assertEquals(expected.messagesAnalyzed(), actual.messagesAnalyzed());
+            assertEquals(expected.contextNodes(), actual.contextNodes());
+        }
+    }
+
+    @Test
+    void restoreSnapshot_rejectsCorruptSnapshotsAndOtherOrders() {
+        // Arrange
+        RoomChain chain = new RoomChain(50, 3, Long.MAX_VALUE);
+        load(chain, "the cat sat on the mat.", "the dog sat too.");
+        ByteBuffer snapshot = chain.writeSnapshot(ByteBuffer::allocate);
+        ByteBuffer corrupt = ByteBuffer.allocate(snapshot.capacity()).put(snapshot.duplicate());
+        corrupt.put(30, (byte) (corrupt.get(30) ^ 1));
+
+        // Act & Assert
+        assertFalse(chain.hasChangesSinceSnapshot());
+        assertThrows(IllegalArgumentException.class,
+                () -> new RoomChain(50, 3, Long.MAX_VALUE).restoreSnapshot(corrupt));
+        assertThrows(IllegalArgumentException.class,
+                () -> new RoomChain(50, 2, Long.MAX_VALUE).restoreSnapshot(snapshot));
+        chain.add(3L, "the end.");
+        assertTrue(chain.hasChangesSinceSnapshot());
+    }
+
+    /**
+     * Load messages with IDs 1, 2, ... as the history loader would.
+     */
+    private static void load(final RoomChain chain, final String... contents) {
+        long[] ids = new long[contents.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i + 1;
+        }
+        chain.loadTokenized(List.of(TokenizedChunk.of(ids, contents, 0, contents.length)));
+    }
+}
@@ -0,0 +1,61 @@
+package com.jameselner.convo.oracle;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for alias sampling of next-token frequencies
+ */
+class SuccessorsTest {
+
+    @Test
+    void sample_followsCounts_andTracksDecrements() {
+        // Arrange
+        Successors successors = new Successors();
+        int[] counts = {1, 7, 2, 10};
+        for (int token = 0; token < counts.length; token++) {
+            for (int i = 0; i < counts[token]; i++) {
+                successors.increment(token);
+            }
+        }
+        Random random = new Random(11);
+
+        // Act
+        int[] before = histogram(successors, random, 200_000);
+        for (int i = 0; i < 10; i++) {
+            successors.decrement(3);
+        }
+        int[] after = histogram(successors, random, 200_000);
+
+        // Assert
+        assertEquals(0.05, before[0] / 200_000.0, 0.005);
+        assertEquals(0.35, before[1] / 200_000.0, 0.005);
+        assertEquals(0.10, before[2] / 200_000.0, 0.005);
+        assertEquals(0.50, before[3] / 200_000.0, 0.005);
+        assertEquals(0, after[3], "A token whose count reached zero is never drawn");
+        assertEquals(0.70, after[1] / 200_000.0, 0.005);
+    }
+
+    @Test
+    void decrement_reportsWhenEmpty() {
+        Successors successors = new Successors();
+        successors.increment(5);
+        successors.increment(5);
+
+        assertFalse(successors.decrement(5));
+        assertFalse(successors.decrement(9), "Unknown tokens are ignored");
+        assertTrue(successors.decrement(5));
+    }
+
+    private static int[] histogram(final Successors successors, final Random random, final int draws) {
+        Successors.Scratch scratch = new Successors.Scratch();
+        int[] histogram = new int[4];
+        for (int i = 0; i < draws; i++) {
+            histogram[successors.sample(random, scratch)]++;
+        }
+        return histogram;
+    }
+}
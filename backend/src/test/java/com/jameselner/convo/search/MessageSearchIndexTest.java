@@ -0,0 +1,116 @@
+package com.jameselner.convo.search;
+
+import com.jameselner.convo.event.ChatRoomDeletedEvent;
+import com.jameselner.convo.event.MessagePersistedEvent;
+import com.jameselner.convo.model.Message;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for keeping the search index in step with the message table
+ */
+@ExtendWith(MockitoExtension.class)
+class MessageSearchIndexTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void rebuild_readsTableInChunksAndBecomesReady() throws Exception {
+        // Arrange
+        List<Object[]> rows = List.of(
+                new Object[] {1L, 7L, "hello world"},
+                new Object[] {2L, 7L, "goodbye world"},
+                new Object[] {3L, 8L, "hello again"}
+        );
+        doAnswer(inv -> {
+            long afterId = inv.getArgument(2);
+            int limit = inv.getArgument(3);
+            RowCallbackHandler handler = inv.getArgument(1);
+            int emitted = 0;
+            for (Object[] row : rows) {
+                if ((long) row[0] > afterId && emitted < limit) {
+                    ResultSet rs = mock(ResultSet.class);
+                    when(rs.getLong(1)).thenReturn((Long) row[0]);
+                    when(rs.getLong(2)).thenReturn((Long) row[1]);
+                    when(rs.getString(3)).thenReturn((String) row[2]);
+                    handler.processRow(rs);
+                    emitted++;
+                }
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), anyLong(), anyInt());
+
+        MessageSearchIndex index = new MessageSearchIndex(jdbcTemplate, new SimpleMeterRegistry(), true, 2, 100);
+        assertFalse(index.isReady());
+
+        // Act
+        index.rebuild();
+
+        // Assert
+        assertTrue(index.isReady());
+        assertEquals(2, index.search(7L, SearchQuery.parse("world"), 0, 10).totalHits());
+        assertEquals(1, index.search(8L, SearchQuery.parse("hello"), 0, 10).totalHits());
+        verify(jdbcTemplate, times(2)).query(anyString(), any(RowCallbackHandler.class), anyLong(), anyInt());
+    }
+
+    @Test
+    void rebuild_failureLeavesIndexNotReady() {
+        doThrow(new IllegalStateException("database unavailable"))
+                .when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), anyLong(), anyInt());
+        MessageSearchIndex index = new MessageSearchIndex(jdbcTemplate, new SimpleMeterRegistry(), true, 100, 100);
+
+        index.rebuild();
+
+        assertFalse(index.isReady());
+    }
+
+    @Test
+    void persistedMessages_areSearchableUntilTheirRoomIsDeleted() {
+        // Arrange
+        MessageSearchIndex index = new MessageSearchIndex(jdbcTemplate, new SimpleMeterRegistry(), true, 100, 100);
+
+        // Act
+        index.onMessagePersisted(event(1L, 7L, "standup in five"));
+        index.onMessagePersisted(event(2L, 9L, "standup moved"));
+        index.onChatRoomDeleted(new ChatRoomDeletedEvent(7L));
+
+        // Assert
+        assertEquals(0, index.search(7L, SearchQuery.parse("standup"), 0, 10).totalHits());
+        assertEquals(1, index.search(9L, SearchQuery.parse("standup"), 0, 10).totalHits());
+    }
+
+    @Test
+    void rooms_dropTheirOldestMessagesPastTheCap() {
+        // Arrange
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MessageSearchIndex index = new MessageSearchIndex(jdbcTemplate, meterRegistry, true, 100, 4);
+
+        // Act
+        for (long id = 1; id <= 5; id++) {
+            index.onMessagePersisted(event(id, 7L, "standup " + id));
+        }
+
+        // Assert
+        assertEquals(3, index.search(7L, SearchQuery.parse("standup"), 0, 10).totalHits());
+        assertEquals(0, index.search(7L, SearchQuery.parse("1"), 0, 10).totalHits());
+        assertEquals(2, meterRegistry.get("convo.search.index.evicted").counter().count());
+    }
+
+    private MessagePersistedEvent event(final Long id, final Long roomId, final String content) {
+        return new MessagePersistedEvent(id, roomId, 1L, "alice", content, Message.MessageType.TEXT, LocalDateTime.now());
+    }
+}
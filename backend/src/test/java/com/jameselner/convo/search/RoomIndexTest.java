@@ -0,0 +1,150 @@
+package com.jameselner.convo.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the per-room inverted index
+ */
+class RoomIndexTest {
+
+    private RoomIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new RoomIndex();
+        index.add(1L, "Good morning everyone");
+        index.add(2L, "morning! Is anyone up for coffee?");
+        index.add(3L, "I don't drink coffee in the morning, good or not");
+        index.add(4L, "Deploying the new build now");
+        index.add(5L, "The build is broken again");
+    }
+
+    @Test
+    void search_matchesAllTermsCaseInsensitively() {
+        SearchPage page = index.search(SearchQuery.parse("MORNING coffee"), 0, 10);
+
+        assertEquals(2, page.totalHits());
+        assertEquals(List.of(2L, 3L), ids(page).stream().sorted().toList());
+    }
+
+    @Test
+    void search_phraseRequiresConsecutiveTerms() {
+        SearchPage page = index.search(SearchQuery.parse("\"good morning\""), 0, 10);
+
+        assertEquals(List.of(1L), ids(page), "Message 3 has both terms, but not adjacent");
+    }
+
+    @Test
+    void search_expandsPrefixes() {
+        SearchPage page = index.search(SearchQuery.parse("buil*"), 0, 10);
+
+        assertEquals(List.of(4L, 5L), ids(page).stream().sorted().toList());
+    }
+
+    @Test
+    void search_keepsInnerApostrophes() {
+        assertEquals(List.of(3L), ids(index.search(SearchQuery.parse("don't"), 0, 10)));
+        assertEquals(0, index.search(SearchQuery.parse("don"), 0, 10).totalHits());
+    }
+
+    @Test
+    void search_ranksShorterMessagesHigherAndNewerOnTies() {
+        // Arrange
+        RoomIndex room = new RoomIndex();
+        room.add(10L, "release today, please review the release notes before lunch");
+        room.add(11L, "release");
+        room.add(12L, "release");
+
+        // Act
+        SearchPage page = room.search(SearchQuery.parse("release"), 0, 10);
+
+        // Assert
+        assertEquals(List.of(12L, 11L, 10L), ids(page));
+        assertTrue(page.hits().get(0).score() >= page.hits().get(1).score());
+    }
+
+    @Test
+    void search_pagesThroughRankedHits() {
+        // Arrange
+        RoomIndex room = new RoomIndex();
+        for (long id = 1; id <= 25; id++) {
+            room.add(id, "ping " + id);
+        }
+
+        // Act
+        SearchPage first = room.search(SearchQuery.parse("ping"), 0, 10);
+        SearchPage last = room.search(SearchQuery.parse("ping"), 20, 10);
+        SearchPage beyond = room.search(SearchQuery.parse("ping"), 30, 10);
+
+        // Assert
+        assertEquals(25, first.totalHits());
+        assertEquals(25L, first.hits().getFirst().messageId(), "Equal scores should list newest first");
+        assertEquals(List.of(5L, 4L, 3L, 2L, 1L), ids(last));
+        assertTrue(beyond.hits().isEmpty());
+        assertEquals(25, beyond.totalHits());
+        SearchPage farOut = room.search(SearchQuery.parse("ping"), Integer.MAX_VALUE - 5, 10);
+        assertTrue(farOut.hits().isEmpty());
+        assertEquals(25, farOut.totalHits());
+    }
+
+    @Test
+    void search_ranksNewerMessagesFirstEvenWhenIndexedOutOfOrder() {
+        // Arrange
+        RoomIndex room = new RoomIndex();
+        room.add(30L, "deploy");
+        room.add(10L, "deploy");
+        room.add(20L, "deploy");
+
+        // Act
+        SearchPage page = room.search(SearchQuery.parse("deploy"), 0, 10);
+
+        // Assert
+        assertEquals(List.of(30L, 20L, 10L), ids(page));
+    }
+
+    @Test
+    void add_dropsTheOldestMessagesPastTheCap() {
+        // Arrange
+        List<Integer> evicted = new ArrayList<>();
+        RoomIndex room = new RoomIndex(8, evicted::add);
+        for (long id = 9; id >= 2; id--) {
+            room.add(id, "lunch " + (id % 2 == 0 ? "pizza" : "sushi"));
+        }
+
+        // Act
+        room.add(10L, "lunch pizza");
+
+        // Assert
+        assertEquals(List.of(3), evicted);
+        assertEquals(6, room.size());
+        assertEquals(List.of(10L, 9L, 8L, 7L, 6L, 5L), ids(room.search(SearchQuery.parse("lunch"), 0, 10)));
+        assertEquals(List.of(10L, 8L, 6L), ids(room.search(SearchQuery.parse("\"lunch pizza\""), 0, 10)));
+        assertFalse(room.add(3L, "lunch sushi"), "Messages older than the dropped ones aren't taken back");
+    }
+
+    @Test
+    void add_ignoresMessagesAlreadyIndexed() {
+        assertFalse(index.add(1L, "Good morning everyone"));
+        assertEquals(5, index.size());
+        assertEquals(1, index.search(SearchQuery.parse("everyone"), 0, 10).totalHits());
+    }
+
+    @Test
+    void highlight_reportsMatchedRanges() {
+        List<int[]> ranges = SearchQuery.parse("morn* coffee").highlight("Morning, coffee?");
+
+        assertEquals(2, ranges.size());
+        assertArrayEquals(new int[] {0, 7}, ranges.get(0));
+        assertArrayEquals(new int[] {9, 15}, ranges.get(1));
+    }
+
+    private List<Long> ids(final SearchPage page) {
+        return page.hits().stream().map(SearchPage.Hit::messageId).toList();
+    }
+}
@@ -0,0 +1,143 @@
+package com.jameselner.convo.security;
+
+import com.jameselner.convo.model.User;
+import com.jameselner.convo.repository.UserRepository;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for cached bearer token authentication
+ */
+@ExtendWith(MockitoExtension.class)
+class JwtTokenAuthenticatorTest {
+
+    private static final String SECRET = "testSecretKeyThatIsAtLeast256BitsLongForHS256Signing";
+
+    @Mock
+    private UserRepository userRepository;
+
+    private JwtUtil jwtUtil;
+    private UserDetailsCache userDetailsCache;
+    private JwtTokenAuthenticator authenticator;
+
+    @BeforeEach
+    void setUp() {
+        jwtUtil = spy(new JwtUtil(SECRET, 60_000L, "k1", ""));
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        userDetailsCache = new UserDetailsCache(meterRegistry, 100, 600);
+        CustomUserDetailsService userDetailsService = new CustomUserDetailsService(userRepository, userDetailsCache);
+        authenticator = new JwtTokenAuthenticator(jwtUtil, userDetailsService, meterRegistry, 100, 3600);
+    }
+
+    @Test
+    void authenticate_verifiesAndLoadsUserOnlyOnce() {
+        // Arrange
+        givenUser(1L, "alice");
+        String token = jwtUtil.generateToken(details("alice"));
+
+        // Act
+        UsernamePasswordAuthenticationToken first = authenticator.authenticate(token);
+        UsernamePasswordAuthenticationToken second = authenticator.authenticate(token);
+
+        // Assert
+        assertNotNull(first);
+        assertNotNull(second);
+        assertEquals("alice", second.getName());
+        verify(jwtUtil, times(1)).parse(token);
+        verify(userRepository, times(1)).findByUsername("alice");
+    }
+
+    @Test
+    void authenticate_rejectsAlteredPayloadReusingACachedSignature() {
+        // Arrange
+        givenUser(1L, "alice");
+        String token = jwtUtil.generateToken(details("alice"));
+        assertNotNull(authenticator.authenticate(token));
+
+        String[] parts = token.split("\\.");
+        String forgedPayload = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                ("{\"sub\":\"mallory\",\"exp\":" + (System.currentTimeMillis() / 1000 + 600) + "}")
+                        .getBytes(StandardCharsets.UTF_8));
+        String forged = parts[0] + "." + forgedPayload + "." + parts[2];
+
+        // Act + Assert
+        assertNull(authenticator.authenticate(forged));
+    }
+
+    @Test
+    void authenticate_rejectsExpiredAndMalformedTokens() {
+        String expired = Jwts.builder()
+                .setSubject("alice")
+                .setExpiration(new Date(System.currentTimeMillis() - 1_000))
+                .signWith(Keys.hmacShaKeyFor(SECRET.getBytes()), SignatureAlgorithm.HS256)
+                .compact();
+
+        assertNull(authenticator.authenticate(expired));
+        assertNull(authenticator.authenticate("not-a-token"));
+        assertNull(authenticator.authenticate("a.b."));
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void authenticate_rejectsTokenOfDeletedUserOnceEvicted() {
+        // Arrange
+        User alice = givenUser(1L, "alice");
+        String token = jwtUtil.generateToken(details("alice"));
+        assertNotNull(authenticator.authenticate(token));
+
+        // Act
+        when(userRepository.findByUsername("alice")).thenReturn(Optional.empty());
+        new UserCacheEvictionListener(userDetailsCache).evict(alice);
+
+        // Assert
+        assertNull(authenticator.authenticate(token));
+    }
+
+    @Test
+    void userDetailsCache_handsOutFreshCredentialsAndEvictsRenamedUsers() {
+        // Arrange
+        givenUser(1L, "alice");
+        CustomUserDetailsService service = new CustomUserDetailsService(userRepository, userDetailsCache);
+        UserDetails first = service.loadUserByUsername("alice");
+        ((org.springframework.security.core.userdetails.User) first).eraseCredentials();
+
+        // Act
+        UserDetails second = service.loadUserByUsername("alice");
+        User renamed = User.builder().id(1L).username("alice2").password("{enc}pw").build();
+        new UserCacheEvictionListener(userDetailsCache).evict(renamed);
+        service.loadUserByUsername("alice");
+
+        // Assert
+        assertEquals("{enc}pw", second.getPassword(), "Erasing one copy must not affect the cache");
+        verify(userRepository, times(2)).findByUsername("alice");
+    }
+
+    private User givenUser(final Long id, final String username) {
+        User user = User.builder().id(id).username(username).password("{enc}pw").build();
+        when(userRepository.findByUsername(username)).thenReturn(Optional.of(user));
+        return user;
+    }
+
+    private UserDetails details(final String username) {
+        return new org.springframework.security.core.userdetails.User(username, "pw", new ArrayList<>());
+    }
+}
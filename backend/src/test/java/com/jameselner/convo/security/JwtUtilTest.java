@@ -0,0 +1,86 @@
+package com.jameselner.convo.security;
+
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.User;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for token issuing, verification and key rotation
+ */
+class JwtUtilTest {
+
+    private static final String OLD_SECRET = "previousSecretKeyThatIsAtLeast256BitsLongForHS256";
+    private static final String NEW_SECRET = "currentSecretKeyThatIsAtLeast256BitsLongForHS256!!";
+
+    @Test
+    void parse_returnsVerifiedClaimsOfIssuedToken() {
+        JwtUtil jwtUtil = new JwtUtil(NEW_SECRET, 60_000L, "2025-06", "");
+
+        JwtUtil.VerifiedToken token = jwtUtil.parse(jwtUtil.generateToken(user("alice")));
+
+        assertEquals("alice", token.username());
+        assertEquals("2025-06", token.keyId());
+        assertNotNull(token.issuedAt());
+        assertTrue(token.expiresAt().isAfter(token.issuedAt()));
+    }
+
+    @Test
+    void parse_acceptsTokensSignedWithRetiredKey() {
+        // Arrange
+        JwtUtil before = new JwtUtil(OLD_SECRET, 60_000L, "2025-01", "");
+        JwtUtil after = new JwtUtil(NEW_SECRET, 60_000L, "2025-06", "2025-01:" + OLD_SECRET);
+        String issuedBeforeRotation = before.generateToken(user("alice"));
+
+        // Act
+        JwtUtil.VerifiedToken token = after.parse(issuedBeforeRotation);
+
+        // Assert
+        assertEquals("alice", token.username());
+        assertEquals("2025-01", token.keyId());
+    }
+
+    @Test
+    void parse_rejectsUnknownOrDroppedKeys() {
+        JwtUtil before = new JwtUtil(OLD_SECRET, 60_000L, "2025-01", "");
+        JwtUtil after = new JwtUtil(NEW_SECRET, 60_000L, "2025-06", "");
+
+        assertThrows(JwtException.class, () -> after.parse(before.generateToken(user("alice"))));
+    }
+
+    @Test
+    void parse_checksTokensWithoutKeyIdAgainstCurrentKey() {
+        JwtUtil jwtUtil = new JwtUtil(NEW_SECRET, 60_000L, "2025-06", "");
+
+        assertEquals("alice", jwtUtil.parse(legacyToken(NEW_SECRET, 60_000)).username());
+        assertThrows(JwtException.class, () -> jwtUtil.parse(legacyToken(OLD_SECRET, 60_000)));
+        assertThrows(ExpiredJwtException.class, () -> jwtUtil.parse(legacyToken(NEW_SECRET, -1_000)));
+    }
+
+    @Test
+    void constructor_rejectsMalformedRetiredKeys() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new JwtUtil(NEW_SECRET, 60_000L, "2025-06", "no-separator"));
+    }
+
+    private String legacyToken(final String secret, final long validForMillis) {
+        return Jwts.builder()
+                .setSubject("alice")
+                .setExpiration(new Date(System.currentTimeMillis() + validForMillis))
+                .signWith(Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8)), SignatureAlgorithm.HS256)
+                .compact();
+    }
+
+    private User user(final String username) {
+        return new User(username, "pw", new ArrayList<>());
+    }
+}
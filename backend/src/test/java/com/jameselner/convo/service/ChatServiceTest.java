@@ -1,18 +1,32 @@
 package com.jameselner.convo.service;
 
 import com.jameselner.convo.dto.ChatMessageDTO;
+import com.jameselner.convo.dto.MessageHistoryDTO;
+import com.jameselner.convo.dto.SearchHitDTO;
+import com.jameselner.convo.dto.SearchResultDTO;
+import com.jameselner.convo.event.ChatRoomDeletedEvent;
+import com.jameselner.convo.event.MessagePersistedEvent;
+import com.jameselner.convo.exception.InvalidCursorException;
+import com.jameselner.convo.exception.ResourceNotFoundException;
 import com.jameselner.convo.model.ChatRoom;
 import com.jameselner.convo.model.Message;
 import com.jameselner.convo.model.User;
+import com.jameselner.convo.model.id.SnowflakeIdGenerator;
 import com.jameselner.convo.repository.ChatRoomRepository;
 import com.jameselner.convo.repository.MessageRepository;
+import com.jameselner.convo.repository.MessageView;
 import com.jameselner.convo.repository.UserRepository;
+import com.jameselner.convo.search.MessageSearchIndex;
+import com.jameselner.convo.search.SearchPage;
+import com.jameselner.convo.search.SearchQuery;
+import com.jameselner.convo.security.CustomUserDetailsService;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.*;
 
 import java.time.LocalDateTime;
@@ -35,6 +49,24 @@ class ChatServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private MessageWriteBehindQueue writeBehindQueue;
+
+    @Mock
+    private SnowflakeIdGenerator idGenerator;
+
+    @Mock
+    private MessageSearchIndex searchIndex;
+
+    @Mock
+    private ReadReceiptService readReceiptService;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private CustomUserDetailsService userDetailsService;
+
     @InjectMocks
     private ChatService service;
 
@@ -77,6 +109,51 @@ class ChatServiceTest {
         ArgumentCaptor<Message> captor = ArgumentCaptor.forClass(Message.class);
         verify(messageRepository, times(1)).save(captor.capture());
         assertEquals(content, captor.getValue().getContent());
+        verify(eventPublisher, times(1)).publishEvent(any(MessagePersistedEvent.class));
+    }
+
+    @Test
+    void saveMessage_enqueuesWithAllocatedId_whenWriteBehindEnabled() {
+        // Arrange
+        String username = "alice";
+        Long roomId = 42L;
+
+        ChatRoom room = new ChatRoom();
+        room.setId(roomId);
+
+        when(userDetailsService.userIdOf(username)).thenReturn(7L);
+        when(chatRoomRepository.existsById(roomId)).thenReturn(true);
+        when(chatRoomRepository.getReferenceById(roomId)).thenReturn(room);
+        when(writeBehindQueue.isEnabled()).thenReturn(true);
+        when(idGenerator.nextId()).thenReturn(1001L, 1002L);
+
+        // Act
+        Message saved = service.saveMessage(username, roomId, "queued");
+        service.saveMessage(username, roomId, "queued again");
+
+        // Assert
+        assertEquals(1001L, saved.getId(), "Message should carry the pre-allocated ID");
+        assertEquals(7L, saved.getSender().getId());
+        assertEquals(username, saved.getSender().getUsername());
+        assertEquals(room, saved.getChatRoom());
+        verify(writeBehindQueue, times(1)).enqueue(saved);
+        verify(chatRoomRepository, times(1)).existsById(roomId);
+        verify(chatRoomRepository, never()).findById(anyLong());
+        verifyNoInteractions(userRepository);
+        verify(messageRepository, never()).save(any());
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    void saveMessage_rejectsUnknownRooms_whenWriteBehindEnabled() {
+        // Arrange
+        when(writeBehindQueue.isEnabled()).thenReturn(true);
+        when(userDetailsService.userIdOf("alice")).thenReturn(7L);
+        when(chatRoomRepository.existsById(99L)).thenReturn(false);
+
+        // Act + Assert
+        assertThrows(ResourceNotFoundException.class, () -> service.saveMessage("alice", 99L, "hi"));
+        verify(writeBehindQueue, never()).enqueue(any());
     }
 
     @Test
@@ -113,74 +190,207 @@ class ChatServiceTest {
     }
 
     @Test
-    void getChatRoomMessages_usesPagingAndSort_andMapsToDTOs() {
+    void getChatRoomMessages_returnsLatestSliceWithContinuationCursor() {
         // Arrange
         Long roomId = 7L;
-        int page = 1;
-        int size = 3;
+        LocalDateTime now = LocalDateTime.now();
 
-        User u = new User();
-        u.setUsername("bob");
+        MessageView m1 = view(101L, roomId, "A", now);
+        MessageView m2 = view(100L, roomId, "B", now.minusMinutes(1));
 
-        ChatRoom room = new ChatRoom();
-        room.setId(roomId);
+        Slice<MessageView> repoSlice = new SliceImpl<>(List.of(m1, m2), PageRequest.of(0, 2), true);
+        when(messageRepository.findLatestInChatRoom(eq(roomId), any(Pageable.class))).thenReturn(repoSlice);
 
-        Message m1 = Message.builder()
-                .sender(u).chatRoom(room).content("A")
-                .timestamp(LocalDateTime.now()).type(Message.MessageType.TEXT).build();
-        Message m2 = Message.builder()
-                .sender(u).chatRoom(room).content("B")
-                .timestamp(LocalDateTime.now().minusMinutes(1)).type(Message.MessageType.TEXT).build();
+        // Act
+        MessageHistoryDTO result = service.getChatRoomMessages(roomId, null, null, null, 2);
 
-        Page<Message> repoPage = new PageImpl<>(List.of(m1, m2));
-        when(messageRepository.findByChatRoomIdOrderByTimestampDesc(eq(roomId), any(Pageable.class)))
-                .thenReturn(repoPage);
+        // Assert
+        assertEquals(2, result.messages().size(), "Should map all messages to DTOs");
+        assertTrue(result.hasMore(), "Should report more history");
+        MessageCursor next = MessageCursor.decode(result.nextCursor());
+        assertEquals(MessageCursor.Direction.BEFORE, next.direction());
+        assertEquals(100L, next.id(), "Cursor should continue after the oldest message");
+        assertEquals(m2.getTimestamp(), next.timestamp());
+
+        ArgumentCaptor<Pageable> pageableCaptor = ArgumentCaptor.forClass(Pageable.class);
+        verify(messageRepository).findLatestInChatRoom(eq(roomId), pageableCaptor.capture());
+        assertEquals(0, pageableCaptor.getValue().getPageNumber(), "Keyset reads never skip rows");
+        assertEquals(2, pageableCaptor.getValue().getPageSize(), "Page size should match");
+    }
+
+    @Test
+    void getChatRoomMessages_seeksFromCursor_andOmitsCursorOnLastSlice() {
+        // Arrange
+        Long roomId = 7L;
+        LocalDateTime anchor = LocalDateTime.of(2026, 1, 2, 3, 4, 5, 6_000_000);
+        String cursor = new MessageCursor(MessageCursor.Direction.BEFORE, anchor, 100L).encode();
+
+        Slice<MessageView> repoSlice = new SliceImpl<>(
+                List.of(view(99L, roomId, "older", anchor.minusSeconds(1))), PageRequest.of(0, 50), false
+        );
+        when(messageRepository.findBeforeInChatRoom(eq(roomId), eq(anchor), eq(100L), any(Pageable.class)))
+                .thenReturn(repoSlice);
 
         // Act
-        Page<ChatMessageDTO> result = service.getChatRoomMessages(roomId, page, size);
+        MessageHistoryDTO result = service.getChatRoomMessages(roomId, null, null, cursor, 50);
 
         // Assert
-        assertNotNull(result);
-        assertEquals(2, result.getContent().size(), "Should map all messages to DTOs");
+        assertEquals(1, result.messages().size());
+        assertFalse(result.hasMore());
+        assertNull(result.nextCursor(), "No cursor once history is exhausted");
+        verify(messageRepository, never()).findTimestampInChatRoom(anyLong(), anyLong());
+    }
 
-        ArgumentCaptor<Pageable> pageableCaptor = ArgumentCaptor.forClass(Pageable.class);
-        verify(messageRepository, times(1))
-                .findByChatRoomIdOrderByTimestampDesc(eq(roomId), pageableCaptor.capture());
+    @Test
+    void getChatRoomMessages_resolvesAfterMessageIdToAscendingSeek() {
+        // Arrange
+        Long roomId = 7L;
+        LocalDateTime anchor = LocalDateTime.now().minusHours(1);
+        when(messageRepository.findTimestampInChatRoom(55L, roomId)).thenReturn(Optional.of(anchor));
+        when(messageRepository.findAfterInChatRoom(eq(roomId), eq(anchor), eq(55L), any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(List.of(view(56L, roomId, "newer", anchor)), PageRequest.of(0, 1), true));
+
+        // Act
+        MessageHistoryDTO result = service.getChatRoomMessages(roomId, null, 55L, null, 1);
 
-        Pageable used = pageableCaptor.getValue();
-        assertEquals(page, used.getPageNumber(), "Page index should match");
-        assertEquals(size, used.getPageSize(), "Page size should match");
-        assertNotNull(used.getSort().getOrderFor("timestamp"), "Should sort by timestamp");
-        assertTrue(used.getSort().getOrderFor("timestamp").isDescending(), "Sort should be DESC");
+        // Assert
+        MessageCursor next = MessageCursor.decode(result.nextCursor());
+        assertEquals(MessageCursor.Direction.AFTER, next.direction(), "Cursor should keep reading forward");
+        assertEquals(56L, next.id());
     }
 
     @Test
-    void searchMessages_mapsEntitiesToDTOs() {
+    void getChatRoomMessages_throwsForMessageOutsideRoom() {
+        when(messageRepository.findTimestampInChatRoom(55L, 7L)).thenReturn(Optional.empty());
+
+        assertThrows(ResourceNotFoundException.class,
+                () -> service.getChatRoomMessages(7L, 55L, null, null, 50));
+    }
+
+    @Test
+    void getChatRoomMessages_rejectsMalformedCursor() {
+        assertThrows(InvalidCursorException.class,
+                () -> service.getChatRoomMessages(7L, null, null, "not-a-cursor", 50));
+        verifyNoInteractions(messageRepository);
+    }
+
+    @Test
+    void searchMessages_resolvesIndexHitsInRankOrderWithHighlights() {
+        // Arrange
+        Long roomId = 5L;
+        when(searchIndex.isReady()).thenReturn(true);
+        when(searchIndex.search(eq(roomId), any(SearchQuery.class), eq(20), eq(10))).thenReturn(new SearchPage(
+                23,
+                List.of(new SearchPage.Hit(1L, 2.5), new SearchPage.Hit(2L, 1.0), new SearchPage.Hit(3L, 0.5))
+        ));
+        // Returned in arbitrary order, message 3 has been deleted since
+        when(messageRepository.findViewsByIdIn(List.of(1L, 2L, 3L))).thenReturn(List.of(
+                view(2L, roomId, "hello there", LocalDateTime.now()),
+                view(1L, roomId, "well, Hello again", LocalDateTime.now())
+        ));
+
+        // Act
+        SearchResultDTO result = service.searchMessages(roomId, "hello", 2, 10);
+
+        // Assert
+        assertEquals(23, result.totalHits());
+        assertEquals(2, result.page());
+        assertEquals(10, result.size());
+        assertEquals(List.of(1L, 2L), result.hits().stream().map(hit -> hit.message().getId()).toList(),
+                "Hits should keep the index ranking and skip deleted messages");
+        assertEquals(2.5, result.hits().getFirst().score());
+        assertEquals(List.of(new SearchHitDTO.Highlight(6, 11)), result.hits().getFirst().highlights());
+        assertEquals("carol", result.hits().getFirst().message().getSenderUsername());
+        verify(messageRepository, never()).searchInChatRoom(anyLong(), anyString(), any());
+    }
+
+    @Test
+    void searchMessages_clampsAnOverflowingPageToThePastTheEndOffset() {
+        // Arrange
+        Long roomId = 5L;
+        when(searchIndex.isReady()).thenReturn(true);
+        when(searchIndex.search(eq(roomId), any(SearchQuery.class), eq(Integer.MAX_VALUE), eq(100)))
+                .thenReturn(new SearchPage(23, List.of()));
+
+        // Act
+        SearchResultDTO result = service.searchMessages(roomId, "hello", Integer.MAX_VALUE / 10, 100);
+
+        // Assert
+        assertEquals(23, result.totalHits());
+        assertTrue(result.hits().isEmpty());
+        verify(messageRepository, never()).findViewsByIdIn(any());
+    }
+
+    @Test
+    void searchMessages_fallsBackToDatabaseUntilIndexIsReady() {
         // Arrange
         Long roomId = 5L;
         String keyword = "hello";
+        when(searchIndex.isReady()).thenReturn(false);
+        when(messageRepository.searchInChatRoom(eq(roomId), eq(keyword), any(Pageable.class)))
+                .thenReturn(new PageImpl<>(List.of(view(2L, roomId, "hello there", LocalDateTime.now())),
+                        PageRequest.of(0, 100), 1));
+        when(readReceiptService.readByCount(roomId, 2L, 1L)).thenReturn(3);
+
+        // Act
+        SearchResultDTO result = service.searchMessages(roomId, keyword, 0, 500);
 
-        User u = new User();
-        u.setUsername("carol");
+        // Assert
+        assertEquals(1, result.totalHits());
+        assertEquals(100, result.size(), "Page size should be capped");
+        assertEquals(3, result.hits().getFirst().message().getReadByCount(), "Read count should come from the watermarks");
+        assertEquals(List.of(new SearchHitDTO.Highlight(0, 5)), result.hits().getFirst().highlights());
+        verify(searchIndex, never()).search(any(), any(), anyInt(), anyInt());
+    }
 
+    @Test
+    void deleteChatRoom_publishesDeletion() {
+        // Arrange
         ChatRoom room = new ChatRoom();
-        room.setId(roomId);
+        room.setId(8L);
+        when(chatRoomRepository.findById(8L)).thenReturn(Optional.of(room));
 
-        List<Message> messages = List.of(
-                Message.builder().sender(u).chatRoom(room).content("hello there")
-                        .timestamp(LocalDateTime.now()).type(Message.MessageType.TEXT).build(),
-                Message.builder().sender(u).chatRoom(room).content("well, hello again")
-                        .timestamp(LocalDateTime.now()).type(Message.MessageType.TEXT).build()
-        );
+        // Act
+        service.deleteChatRoom(8L);
+
+        // Assert
+        verify(chatRoomRepository, times(1)).delete(room);
+        verify(eventPublisher, times(1)).publishEvent(new ChatRoomDeletedEvent(8L));
+    }
+
+    @Test
+    void convertToDTO_forNewMessage_doesNotTouchReaders() {
+        // Arrange
+        User sender = new User();
+        sender.setId(3L);
+        sender.setUsername("Oracle");
+
+        ChatRoom room = new ChatRoom();
+        room.setId(9L);
 
-        when(messageRepository.searchInChatRoom(roomId, keyword)).thenReturn(messages);
+        Message message = Message.builder()
+                .id(77L).sender(sender).chatRoom(room).content("prophecy")
+                .timestamp(LocalDateTime.now()).type(Message.MessageType.ORACLE).build();
 
         // Act
-        var result = service.searchMessages(roomId, keyword);
+        ChatMessageDTO dto = service.convertToDTO(message);
 
         // Assert
-        assertNotNull(result);
-        assertEquals(2, result.size(), "Should map all search results to DTOs");
-        verify(messageRepository, times(1)).searchInChatRoom(roomId, keyword);
+        assertEquals(ChatMessageDTO.MessageType.ORACLE, dto.getType());
+        assertEquals(0, dto.getReadByCount());
+        assertEquals(9L, dto.getChatRoomId());
+    }
+
+    private MessageView view(final Long id, final Long roomId, final String content, final LocalDateTime timestamp) {
+        return new MessageView() {
+            public Long getId() { return id; }
+            public Long getChatRoomId() { return roomId; }
+            public Long getSenderId() { return 1L; }
+            public String getSenderUsername() { return "carol"; }
+            public String getContent() { return content; }
+            public Message.MessageType getType() { return Message.MessageType.TEXT; }
+            public LocalDateTime getTimestamp() { return timestamp; }
+            public boolean isEdited() { return false; }
+        };
     }
 }
@@ -0,0 +1,173 @@
+package com.jameselner.convo.service;
+
+import com.jameselner.convo.event.MessagePersistedEvent;
+import com.jameselner.convo.exception.MessageBacklogFullException;
+import com.jameselner.convo.model.ChatRoom;
+import com.jameselner.convo.model.Message;
+import com.jameselner.convo.model.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the write-behind message buffer
+ */
+@ExtendWith(MockitoExtension.class)
+class MessageWriteBehindQueueTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Test
+    void stop_flushesEveryQueuedMessageInBatches() {
+        // Arrange
+        List<Long> written = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(inv -> {
+            List<Object[]> rows = inv.getArgument(1);
+            batchSizes.add(rows.size());
+            rows.forEach(row -> written.add((Long) row[0]));
+            return new int[rows.size()];
+        });
+
+        MessageWriteBehindQueue queue = newQueue(3, 10);
+        queue.start();
+
+        // Act
+        for (long id = 1; id <= 7; id++) {
+            queue.enqueue(message(id));
+        }
+        queue.stop();
+
+        // Assert
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L, 7L), written, "All messages should be written in order");
+        assertTrue(batchSizes.stream().allMatch(size -> size <= 3), "Batches should respect the size bound");
+        assertEquals(0, queue.getPendingCount());
+    }
+
+    @Test
+    void transientFailure_isRetriedUntilTheBatchLands() {
+        // Arrange
+        List<Long> written = Collections.synchronizedList(new ArrayList<>());
+        when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+                .thenThrow(new TransientDataAccessResourceException("connection reset"))
+                .thenAnswer(inv -> {
+                    List<Object[]> rows = inv.getArgument(1);
+                    rows.forEach(row -> written.add((Long) row[0]));
+                    return new int[rows.size()];
+                });
+
+        MessageWriteBehindQueue queue = newQueue(10, 5);
+        queue.start();
+
+        // Act
+        queue.enqueue(message(1L));
+        queue.stop();
+
+        // Assert
+        assertEquals(List.of(1L), written, "Message should be written after the retry");
+    }
+
+    @Test
+    void integrityViolation_fallsBackToRowByRowAndSkipsBadRows() {
+        // Arrange
+        when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+                .thenThrow(new DataIntegrityViolationException("fk_message_chat_room"));
+        when(jdbcTemplate.update(anyString(), any(Object[].class))).thenAnswer(inv -> {
+            Object[] row = (Object[]) inv.getRawArguments()[1];
+            if (Long.valueOf(2L).equals(row[0])) {
+                throw new DataIntegrityViolationException("fk_message_chat_room");
+            }
+            return 1;
+        });
+
+        MessageWriteBehindQueue queue = newQueue(10, 50);
+        queue.start();
+
+        // Act
+        queue.enqueue(message(1L));
+        queue.enqueue(message(2L));
+        queue.enqueue(message(3L));
+        queue.stop();
+
+        // Assert
+        verify(jdbcTemplate, times(3)).update(anyString(), any(Object[].class));
+        ArgumentCaptor<MessagePersistedEvent> events = ArgumentCaptor.forClass(MessagePersistedEvent.class);
+        verify(eventPublisher, times(2)).publishEvent(events.capture());
+        assertEquals(List.of(1L, 3L), events.getAllValues().stream().map(MessagePersistedEvent::messageId).toList(),
+                "Only stored messages should be announced");
+    }
+
+    @Test
+    void enqueue_rejectsWhenBufferStaysFull() throws InterruptedException {
+        // Arrange
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch writing = new CountDownLatch(1);
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(inv -> {
+            writing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return new int[0];
+        });
+
+        MessageWriteBehindQueue queue = new MessageWriteBehindQueue(jdbcTemplate, eventPublisher, true, 1, 1, 1, 10, 5_000);
+        queue.start();
+        queue.enqueue(message(1L));
+        assertTrue(writing.await(5, TimeUnit.SECONDS), "Flusher should pick up the first message");
+        queue.enqueue(message(2L));
+
+        // Act + Assert
+        assertThrows(MessageBacklogFullException.class, () -> queue.enqueue(message(3L)));
+
+        release.countDown();
+        queue.stop();
+    }
+
+    @Test
+    void enqueue_rejectsWhenNotRunning() {
+        MessageWriteBehindQueue queue = newQueue(10, 10);
+
+        assertThrows(MessageBacklogFullException.class, () -> queue.enqueue(message(1L)));
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    private MessageWriteBehindQueue newQueue(final int batchSize, final long flushIntervalMs) {
+        return new MessageWriteBehindQueue(jdbcTemplate, eventPublisher, true, batchSize, flushIntervalMs, 100, 100, 5_000);
+    }
+
+    private Message message(final long id) {
+        User sender = new User();
+        sender.setId(10L);
+
+        ChatRoom room = new ChatRoom();
+        room.setId(20L);
+
+        return Message.builder()
+                .id(id)
+                .sender(sender)
+                .chatRoom(room)
+                .content("message " + id)
+                .type(Message.MessageType.TEXT)
+                .timestamp(LocalDateTime.now())
+                .build();
+    }
+}
@@ -0,0 +1,181 @@
+package com.jameselner.convo.service;
+
+import com.jameselner.convo.dto.ChatMessageDTO;
+import com.jameselner.convo.dto.OracleRequestDTO;
+import com.jameselner.convo.exception.RateLimitedException;
+import com.jameselner.convo.exception.ResourceNotFoundException;
+import com.jameselner.convo.model.Message;
+import com.jameselner.convo.repository.ChatRoomRepository;
+import com.jameselner.convo.websocket.ChatFrameEncoder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for asynchronous Oracle dispatch
+ */
+@ExtendWith(MockitoExtension.class)
+class OracleDispatcherTest {
+
+    @Mock
+    private OracleService oracleService;
+
+    @Mock
+    private ChatService chatService;
+
+    @Mock
+    private ChatRoomRepository chatRoomRepository;
+
+    @Mock
+    private ChatFrameEncoder chatFrameEncoder;
+
+    private OracleDispatcher dispatcher;
+
+    @AfterEach
+    void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.stop();
+        }
+    }
+
+    @Test
+    void submit_coalescesRequestsForTheSameRoomAndOrder() {
+        // Arrange
+        CountDownLatch release = new CountDownLatch(1);
+        stubGeneration(release);
+        when(chatRoomRepository.existsById(1L)).thenReturn(true);
+        dispatcher = newDispatcher(5, 20);
+
+        // Act
+        OracleRequestDTO first = dispatcher.submit(1L, 2);
+        OracleRequestDTO second = dispatcher.submit(1L, 2);
+        OracleRequestDTO third = dispatcher.submit(1L, 2);
+        release.countDown();
+
+        // Assert
+        assertFalse(first.coalesced());
+        assertTrue(second.coalesced());
+        assertTrue(third.coalesced());
+        verify(chatFrameEncoder, timeout(2000)).broadcast(eq("/topic/room/1"), any(ChatMessageDTO.class));
+        verify(oracleService, times(1)).askOracle(1L, 2);
+    }
+
+    @Test
+    void submit_startsANewGenerationOnceThePreviousOneIsBroadcast() {
+        // Arrange
+        stubGeneration(new CountDownLatch(0));
+        when(chatRoomRepository.existsById(1L)).thenReturn(true);
+        dispatcher = newDispatcher(5, 20);
+        dispatcher.submit(1L, 2);
+        verify(chatFrameEncoder, timeout(2000)).broadcast(eq("/topic/room/1"), any(ChatMessageDTO.class));
+
+        // Act
+        OracleRequestDTO next = awaitNotCoalesced(1L, 2);
+
+        // Assert
+        assertFalse(next.coalesced());
+        verify(chatFrameEncoder, timeout(2000).times(2)).broadcast(eq("/topic/room/1"), any(ChatMessageDTO.class));
+    }
+
+    @Test
+    void submit_rejectsARoomThatIsOutOfTokens() {
+        // Arrange
+        CountDownLatch release = new CountDownLatch(1);
+        stubGeneration(release);
+        when(chatRoomRepository.existsById(anyLong())).thenReturn(true);
+        dispatcher = newDispatcher(2, 0);
+        dispatcher.submit(1L, 1);
+        dispatcher.submit(1L, 2);
+
+        // Act & Assert
+        RateLimitedException ex = assertThrows(RateLimitedException.class, () -> dispatcher.submit(1L, 3));
+        assertTrue(ex.getRetryAfterMs() > 0);
+        assertTrue(dispatcher.submit(1L, 1).coalesced(), "Joining a pending generation costs no token");
+        assertFalse(dispatcher.submit(2L, 1).coalesced(), "Other rooms have their own bucket");
+        release.countDown();
+    }
+
+    @Test
+    void submit_throwsWhenChatRoomNotFound() {
+        // Arrange
+        when(chatRoomRepository.existsById(9L)).thenReturn(false);
+        dispatcher = newDispatcher(5, 20);
+
+        // Act & Assert
+        assertThrows(ResourceNotFoundException.class, () -> dispatcher.submit(9L, 2));
+        verifyNoInteractions(oracleService);
+    }
+
+    @Test
+    void submit_releasesTheGenerationWhenItFails() {
+        // Arrange
+        when(chatRoomRepository.existsById(1L)).thenReturn(true);
+        when(oracleService.askOracle(1L, 2)).thenThrow(new IllegalStateException("boom"));
+        dispatcher = newDispatcher(5, 20);
+        dispatcher.submit(1L, 2);
+        verify(oracleService, timeout(2000)).askOracle(1L, 2);
+
+        // Act
+        OracleRequestDTO retry = awaitNotCoalesced(1L, 2);
+
+        // Assert
+        assertFalse(retry.coalesced());
+        verify(chatFrameEncoder, never()).broadcast(anyString(), any());
+    }
+
+    @Test
+    void askNow_broadcastsAndReturnsTheProphecy() {
+        // Arrange
+        stubGeneration(new CountDownLatch(0));
+        dispatcher = newDispatcher(1, 0);
+
+        // Act
+        ChatMessageDTO result = dispatcher.askNow(1L, 2);
+
+        // Assert
+        assertEquals("It is written.", result.getContent());
+        assertNotNull(result.getOracleMetadata());
+        verify(chatFrameEncoder).broadcast("/topic/room/1", result);
+        assertThrows(RateLimitedException.class, () -> dispatcher.askNow(1L, 2));
+    }
+
+    private OracleDispatcher newDispatcher(final int burst, final int perMinute) {
+        OracleDispatcher created = new OracleDispatcher(oracleService, chatService, chatRoomRepository,
+                chatFrameEncoder, new SimpleMeterRegistry(), 5, 2, 8, burst, perMinute);
+        created.start();
+        return created;
+    }
+
+    private void stubGeneration(final CountDownLatch release) {
+        Message message = Message.builder().id(100L).content("It is written.").build();
+        when(oracleService.askOracle(anyLong(), anyInt())).thenAnswer(inv -> {
+            release.await(2, TimeUnit.SECONDS);
+            return new OracleService.OracleResult(message, ChatMessageDTO.OracleMetadata.builder().build());
+        });
+        lenient().when(chatService.convertToDTO(message))
+                .thenAnswer(inv -> ChatMessageDTO.builder().id(100L).content("It is written.").build());
+    }
+
+    /**
+     * The finished generation is released just after its broadcast.
+     */
+    private OracleRequestDTO awaitNotCoalesced(final Long roomId, final int order) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        OracleRequestDTO request = dispatcher.submit(roomId, order);
+        while (request.coalesced() && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+            request = dispatcher.submit(roomId, order);
+        }
+        return request;
+    }
+}
@@ -0,0 +1,282 @@
+package com.jameselner.convo.service;
+
+import com.jameselner.convo.dto.UserDTO;
+import com.jameselner.convo.event.PresenceChangedEvent;
+import com.jameselner.convo.exception.ResourceNotFoundException;
+import com.jameselner.convo.model.User;
+import com.jameselner.convo.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.Optional;
+
+import static com.jameselner.convo.model.User.UserStatus.AWAY;
+import static com.jameselner.convo.model.User.UserStatus.OFFLINE;
+import static com.jameselner.convo.model.User.UserStatus.ONLINE;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for session-based presence, its delayed OFFLINE and batched flush
+ */
+@ExtendWith(MockitoExtension.class)
+class PresenceServiceTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Test
+    void closingOneOfSeveralSessions_keepsUserOnline() {
+        // Arrange
+        PresenceService presenceService = presenceService(0, 10_000);
+        givenUser(1L, "alice");
+        presenceService.sessionOpened("alice", "s1", 0);
+        presenceService.sessionOpened("alice", "s2", 0);
+
+        // Act
+        presenceService.sessionClosed("s1");
+        presenceService.sweep();
+
+        // Assert
+        assertEquals(Optional.of(ONLINE), presenceService.statusOf("alice"), "One tab is still open");
+        verify(eventPublisher, times(1)).publishEvent(new PresenceChangedEvent(1L, "alice", ONLINE));
+        verify(userRepository, times(1)).findByUsername("alice");
+    }
+
+    @Test
+    void reconnectWithinGracePeriod_publishesNoChange() {
+        // Arrange
+        PresenceService presenceService = presenceService(60_000, 10_000);
+        givenUser(1L, "alice");
+        presenceService.sessionOpened("alice", "s1", 0);
+
+        // Act
+        presenceService.sessionClosed("s1");
+        presenceService.sweep();
+        presenceService.sessionOpened("alice", "s2", 0);
+        presenceService.sweep();
+
+        // Assert
+        assertEquals(Optional.of(ONLINE), presenceService.statusOf("alice"));
+        verify(eventPublisher, times(1)).publishEvent(any(PresenceChangedEvent.class));
+    }
+
+    @Test
+    void lastSessionClosed_goesOfflineOnceGracePeriodEnds() {
+        // Arrange
+        PresenceService presenceService = presenceService(0, 10_000);
+        givenUser(1L, "alice");
+        presenceService.sessionOpened("alice", "s1", 0);
+
+        // Act
+        presenceService.sessionClosed("s1");
+        User.UserStatus beforeSweep = presenceService.statusOf("alice").orElseThrow();
+        presenceService.sweep();
+
+        // Assert
+        assertEquals(ONLINE, beforeSweep, "OFFLINE waits for the sweep");
+        assertEquals(Optional.of(OFFLINE), presenceService.statusOf("alice"));
+        verify(eventPublisher).publishEvent(new PresenceChangedEvent(1L, "alice", OFFLINE));
+    }
+
+    @Test
+    void silentHeartbeatSession_isExpired_butSessionsWithoutHeartbeatsAreKept() throws InterruptedException {
+        // Arrange
+        PresenceService presenceService = presenceService(0, 1);
+        givenUser(1L, "alice");
+        givenUser(2L, "bob");
+        presenceService.sessionOpened("alice", "s1", 1);
+        presenceService.sessionOpened("bob", "s2", 0);
+
+        // Act
+        Thread.sleep(10);
+        presenceService.sweep();
+
+        // Assert
+        assertEquals(Optional.of(OFFLINE), presenceService.statusOf("alice"));
+        assertEquals(Optional.of(ONLINE), presenceService.statusOf("bob"));
+    }
+
+    @Test
+    void expiredSessionThatSpeaksAgain_isBackOnline_untilItCloses() throws InterruptedException {
+        // Arrange
+        PresenceService presenceService = presenceService(0, 1);
+        givenUser(1L, "alice");
+        presenceService.sessionOpened("alice", "s1", 1);
+        Thread.sleep(10);
+        presenceService.sweep();
+        assertEquals(Optional.of(OFFLINE), presenceService.statusOf("alice"));
+
+        // Act
+        presenceService.touch("s1");
+
+        // Assert
+        assertEquals(Optional.of(ONLINE), presenceService.statusOf("alice"));
+        presenceService.sessionClosed("s1");
+        presenceService.sweep();
+        presenceService.touch("s1");
+        assertEquals(Optional.of(OFFLINE), presenceService.statusOf("alice"));
+    }
+
+    @Test
+    void touchedSession_isNotExpired() {
+        // Arrange
+        PresenceService presenceService = presenceService(0, 60_000);
+        givenUser(1L, "alice");
+        presenceService.sessionOpened("alice", "s1", 60_000);
+
+        // Act
+        presenceService.touch("s1");
+        presenceService.sweep();
+
+        // Assert
+        assertEquals(Optional.of(ONLINE), presenceService.statusOf("alice"));
+    }
+
+    @Test
+    void sessionOpened_keepsExplicitAwayStatus() {
+        // Arrange
+        PresenceService presenceService = presenceService(0, 10_000);
+        givenUser(1L, "alice");
+        presenceService.sessionOpened("alice", "s1", 0);
+        presenceService.setStatus("alice", AWAY);
+
+        // Act
+        presenceService.sessionOpened("alice", "s2", 0);
+
+        // Assert
+        assertEquals(Optional.of(AWAY), presenceService.statusOf("alice"));
+        assertTrue(presenceService.getOnlineUsers().isEmpty());
+    }
+
+    @Test
+    void flush_writesLatestStateOfEachUserInOneBatch() {
+        // Arrange
+        PresenceService presenceService = presenceService(0, 10_000);
+        givenUser(1L, "alice");
+        givenUser(2L, "bob");
+        for (int i = 0; i < 10; i++) {
+            presenceService.sessionOpened("alice", "a" + i, 0);
+            presenceService.sessionClosed("a" + i);
+            presenceService.sweep();
+        }
+        presenceService.sessionOpened("bob", "b", 0);
+
+        // Act
+        presenceService.flush();
+        presenceService.flush();
+
+        // Assert
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), rows.capture());
+        assertEquals(2, rows.getValue().size(), "One row per user, not per event");
+        Object[] aliceRow = rows.getValue().stream().filter(row -> row[2].equals(1L)).findFirst().orElseThrow();
+        assertEquals("OFFLINE", aliceRow[0]);
+        assertEquals(0, presenceService.getPendingCount());
+    }
+
+    @Test
+    void flush_keepsUsersDirtyWhenTheBatchFails() {
+        // Arrange
+        PresenceService presenceService = presenceService(0, 10_000);
+        givenUser(1L, "alice");
+        presenceService.sessionOpened("alice", "s1", 0);
+        when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+                .thenThrow(new DataAccessResourceFailureException("down"))
+                .thenReturn(new int[] {1});
+
+        // Act
+        presenceService.flush();
+        int pendingAfterFailure = presenceService.getPendingCount();
+        presenceService.flush();
+
+        // Assert
+        assertEquals(1, pendingAfterFailure);
+        assertEquals(0, presenceService.getPendingCount());
+        verify(jdbcTemplate, times(2)).batchUpdate(eq("UPDATE user SET status = ?, last_seen = ? WHERE id = ?"), anyList());
+    }
+
+    @Test
+    void stop_writesEveryoneStillOnlineAsOffline() {
+        // Arrange
+        PresenceService presenceService = presenceService(60_000, 10_000);
+        givenUser(1L, "alice");
+        givenUser(2L, "bob");
+        presenceService.sessionOpened("alice", "a", 0);
+        presenceService.sessionOpened("bob", "b", 0);
+        presenceService.sessionClosed("b");
+        presenceService.flush();
+        clearInvocations(jdbcTemplate, eventPublisher);
+
+        // Act
+        presenceService.stop();
+
+        // Assert
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(anyString(), rows.capture());
+        assertEquals(List.of("OFFLINE", "OFFLINE"), rows.getValue().stream().map(row -> row[0]).toList(),
+                "Both the connected user and the one in their grace period");
+        assertEquals(Optional.of(OFFLINE), presenceService.statusOf("alice"));
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    void getOnlineUsers_listsOnlyOnlineUsersSortedByName() {
+        // Arrange
+        PresenceService presenceService = presenceService(0, 10_000);
+        givenUser(1L, "carol");
+        givenUser(2L, "alice");
+        givenUser(3L, "bob");
+        presenceService.sessionOpened("carol", "c", 0);
+        presenceService.sessionOpened("alice", "a", 0);
+        presenceService.sessionOpened("bob", "b", 0);
+        presenceService.sessionClosed("b");
+        presenceService.sweep();
+
+        // Act
+        List<UserDTO> online = presenceService.getOnlineUsers();
+
+        // Assert
+        assertEquals(List.of("alice", "carol"), online.stream().map(UserDTO::getUsername).toList());
+    }
+
+    @Test
+    void unknownUsers_areRejected_andUnknownDisconnectsIgnored() {
+        PresenceService presenceService = presenceService(0, 10_000);
+        when(userRepository.findByUsername("ghost")).thenReturn(Optional.empty());
+
+        assertThrows(ResourceNotFoundException.class, () -> presenceService.setStatus("ghost", ONLINE));
+        presenceService.sessionClosed("nobody");
+        presenceService.touch("nobody");
+        assertEquals(0, presenceService.getPendingCount());
+        verifyNoInteractions(eventPublisher);
+    }
+
+    private PresenceService presenceService(final long offlineGraceMs, final long heartbeatMs) {
+        return new PresenceService(userRepository, jdbcTemplate, eventPublisher, offlineGraceMs, heartbeatMs);
+    }
+
+    private void givenUser(final Long id, final String username) {
+        User user = User.builder().id(id).username(username).email(username + "@example.com").build();
+        when(userRepository.findByUsername(username)).thenReturn(Optional.of(user));
+    }
+}
@@ -0,0 +1,152 @@
+package com.jameselner.convo.service;
+
+import com.jameselner.convo.event.ChatRoomDeletedEvent;
+import com.jameselner.convo.event.MessagesReadEvent;
+import com.jameselner.convo.exception.ResourceNotFoundException;
+import com.jameselner.convo.model.id.SnowflakeIdGenerator;
+import com.jameselner.convo.repository.ChatRoomRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for watermark read receipts and their batched flush
+ */
+@ExtendWith(MockitoExtension.class)
+class ReadReceiptServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private ChatRoomRepository chatRoomRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Test
+    void markRead_coalescesIntoOneRowPerUserAndRoom() {
+        // Arrange
+        ReadReceiptService service = readReceiptService();
+        when(chatRoomRepository.existsById(1L)).thenReturn(true);
+
+        // Act
+        boolean first = service.markRead(10L, 1L, 100L);
+        boolean further = service.markRead(10L, 1L, 200L);
+        boolean backwards = service.markRead(10L, 1L, 150L);
+        service.markRead(20L, 1L, 120L);
+        service.flush();
+
+        // Assert
+        assertTrue(first);
+        assertTrue(further);
+        assertFalse(backwards, "Watermarks only move forward");
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), rows.capture());
+        assertEquals(2, rows.getValue().size(), "One row per user and room, not per message");
+        Object[] row = rows.getValue().stream().filter(r -> r[0].equals(10L)).findFirst().orElseThrow();
+        assertEquals(1L, row[1]);
+        assertEquals(200L, row[2]);
+        assertEquals(0, service.getPendingCount());
+        verify(chatRoomRepository, times(1)).existsById(1L);
+        verify(eventPublisher).publishEvent(new MessagesReadEvent(10L, 1L, 200L));
+        verify(eventPublisher, never()).publishEvent(new MessagesReadEvent(10L, 1L, 150L));
+    }
+
+    @Test
+    void readByCount_countsStoredAndNewWatermarksButNotTheSender() throws Exception {
+        // Arrange
+        ReadReceiptService service = readReceiptService();
+        givenStoredWatermark(1L, 70L, 500L);
+        when(chatRoomRepository.existsById(1L)).thenReturn(true);
+        service.markRead(10L, 1L, 200L);
+        service.markRead(20L, 1L, 300L);
+
+        // Act & Assert
+        assertEquals(2, service.readByCount(1L, 200L, 10L), "The sender's own watermark doesn't count");
+        assertEquals(3, service.readByCount(1L, 200L, 99L));
+        assertEquals(1, service.readByCount(1L, 400L, 99L));
+        assertEquals(0, service.readByCount(1L, 600L, 99L));
+    }
+
+    @Test
+    void markRead_rejectsUnknownRoomsAndMessagesFromTheFuture() {
+        // Arrange
+        ReadReceiptService service = readReceiptService();
+        when(chatRoomRepository.existsById(9L)).thenReturn(false);
+        long fromTheFuture = new SnowflakeIdGenerator(0).nextId() << 1;
+
+        // Act & Assert
+        assertThrows(ResourceNotFoundException.class, () -> service.markRead(10L, 9L, 100L));
+        assertFalse(service.markRead(10L, 1L, fromTheFuture));
+        assertEquals(0, service.getPendingCount());
+    }
+
+    @Test
+    void flush_keepsWatermarksDirtyWhenTheBatchFails() {
+        // Arrange
+        ReadReceiptService service = readReceiptService();
+        when(chatRoomRepository.existsById(1L)).thenReturn(true);
+        service.markRead(10L, 1L, 100L);
+        when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+                .thenThrow(new DataAccessResourceFailureException("down"))
+                .thenReturn(new int[] {1});
+
+        // Act
+        service.flush();
+        int pendingAfterFailure = service.getPendingCount();
+        service.flush();
+
+        // Assert
+        assertEquals(1, pendingAfterFailure);
+        assertEquals(0, service.getPendingCount());
+    }
+
+    @Test
+    void onChatRoomDeleted_dropsUnflushedWatermarks() {
+        // Arrange
+        ReadReceiptService service = readReceiptService();
+        when(chatRoomRepository.existsById(1L)).thenReturn(true);
+        service.markRead(10L, 1L, 100L);
+
+        // Act
+        service.onChatRoomDeleted(new ChatRoomDeletedEvent(1L));
+        service.flush();
+
+        // Assert
+        assertEquals(0, service.getPendingCount());
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+    }
+
+    private ReadReceiptService readReceiptService() {
+        return new ReadReceiptService(jdbcTemplate, chatRoomRepository, eventPublisher, new SimpleMeterRegistry(), 100, 30);
+    }
+
+    private void givenStoredWatermark(final Long roomId, final long userId, final long messageId) throws Exception {
+        ResultSet row = mock(ResultSet.class);
+        when(row.getLong(1)).thenReturn(userId);
+        when(row.getLong(2)).thenReturn(messageId);
+        doAnswer(invocation -> {
+            invocation.<RowCallbackHandler>getArgument(1).processRow(row);
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), eq(roomId));
+    }
+}
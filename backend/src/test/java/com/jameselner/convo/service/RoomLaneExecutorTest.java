@@ -0,0 +1,156 @@
+package com.jameselner.convo.service;
+
+import com.jameselner.convo.exception.MessageBacklogFullException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for per-room ordered lanes
+ */
+class RoomLaneExecutorTest {
+
+    @Test
+    void execute_runsEachRoomsTasksInSubmissionOrder() {
+        // Arrange
+        RoomLaneExecutor executor = new RoomLaneExecutor(new SimpleMeterRegistry(), 4, 1000, 1000, 10_000, false);
+        Map<Long, List<Integer>> runs = new ConcurrentHashMap<>();
+        executor.start();
+
+        // Act
+        for (int i = 0; i < 200; i++) {
+            for (long room = 1; room <= 10; room++) {
+                int sequence = i;
+                long roomId = room;
+                executor.execute(roomId, () -> runs
+                        .computeIfAbsent(roomId, id -> Collections.synchronizedList(new ArrayList<>()))
+                        .add(sequence));
+            }
+        }
+        executor.stop();
+
+        // Assert
+        assertEquals(10, runs.size());
+        for (List<Integer> sequence : runs.values()) {
+            assertEquals(200, sequence.size());
+            for (int i = 0; i < sequence.size(); i++) {
+                assertEquals(i, sequence.get(i));
+            }
+        }
+        assertEquals(0, executor.getPendingCount());
+    }
+
+    @Test
+    void execute_keepsOtherLanesRunningWhileOneIsBlocked() throws Exception {
+        // Arrange
+        RoomLaneExecutor executor = new RoomLaneExecutor(new SimpleMeterRegistry(), 2, 10, 1000, 10_000, false);
+        executor.start();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch otherRan = new CountDownLatch(1);
+        long blockedRoom = 1;
+        long otherRoom = roomOnAnotherLane(executor, blockedRoom);
+
+        // Act
+        executor.execute(blockedRoom, () -> awaitQuietly(release));
+        executor.execute(otherRoom, otherRan::countDown);
+
+        // Assert
+        assertTrue(otherRan.await(5, TimeUnit.SECONDS), "A blocked room must not hold up other lanes");
+        release.countDown();
+        executor.stop();
+    }
+
+    @Test
+    void execute_rejectsWhenTheLaneStaysFull_andWhenStopped() {
+        // Arrange
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        RoomLaneExecutor executor = new RoomLaneExecutor(meterRegistry, 1, 1, 10, 10_000, false);
+        executor.start();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(1L, () -> {
+            started.countDown();
+            awaitQuietly(release);
+        });
+        awaitQuietly(started);
+        executor.execute(1L, () -> { });
+
+        // Act & Assert
+        assertThrows(MessageBacklogFullException.class, () -> executor.execute(1L, () -> { }));
+        assertEquals(1, meterRegistry.get("convo.chat.lane.depth").tag("lane", "0").gauge().value());
+        assertEquals(1, meterRegistry.get("convo.chat.lane.rejected").counter().count());
+        release.countDown();
+        executor.stop();
+        assertThrows(MessageBacklogFullException.class, () -> executor.execute(1L, () -> { }));
+    }
+
+    @Test
+    void execute_countsFailedTasksAndHandsThemToTheirHandler() throws Exception {
+        // Arrange
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        RoomLaneExecutor executor = new RoomLaneExecutor(meterRegistry, 1, 10, 1000, 10_000, false);
+        executor.start();
+        CompletableFuture<RuntimeException> handled = new CompletableFuture<>();
+        IllegalStateException failure = new IllegalStateException("boom");
+
+        // Act
+        executor.execute(1L, () -> {
+            throw failure;
+        }, handled::complete);
+        executor.execute(1L, () -> {
+            throw new IllegalStateException("unhandled");
+        });
+
+        // Assert
+        assertSame(failure, handled.get(5, TimeUnit.SECONDS));
+        executor.stop();
+        assertEquals(2, meterRegistry.get("convo.chat.lane.failed").counter().count());
+    }
+
+    @Test
+    void start_usesVirtualThreadsOnlyWhenEnabled() throws Exception {
+        // Arrange
+        RoomLaneExecutor platform = new RoomLaneExecutor(new SimpleMeterRegistry(), 1, 10, 1000, 10_000, false);
+        RoomLaneExecutor virtual = new RoomLaneExecutor(new SimpleMeterRegistry(), 1, 10, 1000, 10_000, true);
+        CompletableFuture<Boolean> onPlatform = new CompletableFuture<>();
+        CompletableFuture<Boolean> onVirtual = new CompletableFuture<>();
+        platform.start();
+        virtual.start();
+
+        // Act
+        platform.execute(1L, () -> onPlatform.complete(Thread.currentThread().isVirtual()));
+        virtual.execute(1L, () -> onVirtual.complete(Thread.currentThread().isVirtual()));
+
+        // Assert
+        assertFalse(onPlatform.get(5, TimeUnit.SECONDS));
+        assertTrue(onVirtual.get(5, TimeUnit.SECONDS));
+        platform.stop();
+        virtual.stop();
+    }
+
+    private static long roomOnAnotherLane(final RoomLaneExecutor executor, final long roomId) {
+        long candidate = roomId + 1;
+        while (executor.laneIndexOf(candidate) == executor.laneIndexOf(roomId)) {
+            candidate++;
+        }
+        return candidate;
+    }
+
+    private static void awaitQuietly(final CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.jameselner.convo.service;
+
+import com.jameselner.convo.model.User;
+import com.jameselner.convo.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for system user provisioning
+ */
+@ExtendWith(MockitoExtension.class)
+class SystemIdentityRegistryTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @InjectMocks
+    private SystemIdentityRegistry registry;
+
+    @Test
+    void provision_loadsSeededUserOnce() {
+        // Arrange
+        User oracle = User.builder().id(-1L).username("Oracle").build();
+        when(userRepository.findByUsername("Oracle")).thenReturn(Optional.of(oracle));
+
+        // Act
+        registry.provision();
+        User first = registry.get(SystemIdentityRegistry.SystemIdentity.ORACLE);
+        User second = registry.get(SystemIdentityRegistry.SystemIdentity.ORACLE);
+
+        // Assert
+        assertSame(oracle, first);
+        assertSame(oracle, second);
+        verify(userRepository, times(1)).findByUsername("Oracle");
+        verify(userRepository, never()).save(any());
+    }
+
+    @Test
+    void provision_createsMissingUserWithUnusablePassword() {
+        // Arrange
+        when(userRepository.findByUsername("Oracle")).thenReturn(Optional.empty());
+        when(userRepository.save(any(User.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        // Act
+        registry.provision();
+
+        // Assert
+        ArgumentCaptor<User> saved = ArgumentCaptor.forClass(User.class);
+        verify(userRepository).save(saved.capture());
+        assertEquals("Oracle", saved.getValue().getUsername());
+        assertEquals("oracle@convo.system", saved.getValue().getEmail());
+        assertEquals(SystemIdentityRegistry.UNUSABLE_PASSWORD, saved.getValue().getPassword());
+        assertSame(saved.getValue(), registry.get(SystemIdentityRegistry.SystemIdentity.ORACLE));
+    }
+
+    @Test
+    void provision_usesTheUserAnotherInstanceCreatedFirst() {
+        // Arrange
+        User oracle = User.builder().id(-1L).username("Oracle").build();
+        when(userRepository.findByUsername("Oracle"))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(oracle));
+        when(userRepository.save(any(User.class))).thenThrow(new DataIntegrityViolationException("duplicate"));
+
+        // Act
+        registry.provision();
+
+        // Assert
+        assertSame(oracle, registry.get(SystemIdentityRegistry.SystemIdentity.ORACLE));
+    }
+}
@@ -0,0 +1,112 @@
+package com.jameselner.convo.service;
+
+import com.jameselner.convo.dto.TypingDTO;
+import com.jameselner.convo.event.ChatRoomDeletedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for per-room typing sets and their throttled broadcast
+ */
+@ExtendWith(MockitoExtension.class)
+class TypingAggregatorTest {
+
+    @Mock
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Test
+    void broadcastChanges_sendsOneSetPerRoomHoweverManyFrames() {
+        // Arrange
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        TypingAggregator aggregator = new TypingAggregator(messagingTemplate, meterRegistry, 3, 60_000);
+        for (int keystroke = 0; keystroke < 20; keystroke++) {
+            aggregator.typing(1L, "bob");
+            aggregator.typing(1L, "alice");
+        }
+        aggregator.typing(2L, "carol");
+
+        // Act
+        aggregator.broadcastChanges();
+
+        // Assert
+        verify(messagingTemplate).convertAndSend("/topic/typing/1", new TypingDTO(1L, 3, List.of("alice", "bob")));
+        verify(messagingTemplate).convertAndSend("/topic/typing/2", new TypingDTO(2L, 3, List.of("carol")));
+        verifyNoMoreInteractions(messagingTemplate);
+        assertEquals(41, meterRegistry.get("convo.typing.frames").tag("direction", "received").counter().count());
+        assertEquals(2, meterRegistry.get("convo.typing.frames").tag("direction", "broadcast").counter().count());
+    }
+
+    @Test
+    void broadcastChanges_staysQuietWhileTheSetIsUnchanged() {
+        // Arrange
+        TypingAggregator aggregator = new TypingAggregator(messagingTemplate, new SimpleMeterRegistry(), 0, 60_000);
+        aggregator.typing(1L, "alice");
+        aggregator.broadcastChanges();
+
+        // Act
+        aggregator.typing(1L, "alice");
+        aggregator.broadcastChanges();
+
+        // Assert
+        verify(messagingTemplate, times(1)).convertAndSend(anyString(), any(Object.class));
+    }
+
+    @Test
+    void expiredTypists_areBroadcastAsAnEmptySetOnce() {
+        // Arrange
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        TypingAggregator aggregator = new TypingAggregator(messagingTemplate, meterRegistry, 0, 0);
+        aggregator.typing(1L, "alice");
+
+        // Act
+        aggregator.broadcastChanges();
+        aggregator.broadcastChanges();
+
+        // Assert
+        verify(messagingTemplate, times(1)).convertAndSend("/topic/typing/1", new TypingDTO(1L, 0, List.of()));
+        verifyNoMoreInteractions(messagingTemplate);
+        assertEquals(0, meterRegistry.get("convo.typing.rooms").gauge().value());
+    }
+
+    @Test
+    void stopTyping_removesTheUserBeforeTheirExpiry() {
+        // Arrange
+        TypingAggregator aggregator = new TypingAggregator(messagingTemplate, new SimpleMeterRegistry(), 0, 60_000);
+        aggregator.typing(1L, "alice");
+        aggregator.typing(1L, "bob");
+        aggregator.broadcastChanges();
+
+        // Act
+        aggregator.stopTyping(1L, "bob");
+        aggregator.stopTyping(1L, "nobody");
+        aggregator.broadcastChanges();
+
+        // Assert
+        verify(messagingTemplate).convertAndSend("/topic/typing/1", new TypingDTO(1L, 0, List.of("alice")));
+    }
+
+    @Test
+    void onChatRoomDeleted_dropsTheRoomSilently() {
+        // Arrange
+        TypingAggregator aggregator = new TypingAggregator(messagingTemplate, new SimpleMeterRegistry(), 0, 60_000);
+        aggregator.typing(1L, "alice");
+
+        // Act
+        aggregator.onChatRoomDeleted(new ChatRoomDeletedEvent(1L));
+        aggregator.broadcastChanges();
+
+        // Assert
+        verifyNoInteractions(messagingTemplate);
+    }
+}
@@ -0,0 +1,186 @@
+package com.jameselner.convo.service;
+
+import com.jameselner.convo.dto.UnreadCountsDTO;
+import com.jameselner.convo.event.ChatRoomDeletedEvent;
+import com.jameselner.convo.event.MessagePersistedEvent;
+import com.jameselner.convo.event.MessagesReadEvent;
+import com.jameselner.convo.model.Message;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.sql.ResultSet;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for in-memory unread counters and their pushed updates
+ */
+@ExtendWith(MockitoExtension.class)
+class UnreadCounterServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private ReadReceiptService readReceiptService;
+
+    @Mock
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Test
+    void countsFor_loadsStoredCountsOnce() throws Exception {
+        // Arrange
+        UnreadCounterService service = unreadCounterService();
+        givenStoredCount(10L, 1L, 100L, 4L);
+
+        // Act
+        UnreadCountsDTO first = service.countsFor(10L, "alice");
+        UnreadCountsDTO second = service.countsFor(10L, "alice");
+
+        // Assert
+        assertEquals(Map.of(1L, 4L), first.rooms());
+        assertEquals(first, second);
+        verify(jdbcTemplate, times(1)).query(anyString(), any(RowCallbackHandler.class), eq(10L));
+    }
+
+    @Test
+    void onMessagePersisted_countsOnlyOthersMessagesPastTheWatermark() throws Exception {
+        // Arrange
+        UnreadCounterService service = unreadCounterService();
+        givenStoredCount(10L, 1L, 100L, 0L);
+        service.countsFor(10L, "alice");
+
+        // Act
+        service.onMessagePersisted(messageIn(1L, 101L, 20L));
+        service.onMessagePersisted(messageIn(1L, 102L, 20L));
+        service.onMessagePersisted(messageIn(1L, 103L, 10L));
+        service.onMessagePersisted(messageIn(1L, 90L, 20L));
+        service.onMessagePersisted(messageIn(2L, 104L, 20L));
+
+        // Assert
+        assertEquals(Map.of(1L, 2L), service.countsFor(10L, "alice").rooms());
+    }
+
+    @Test
+    void onMessagesRead_resetsWhenCaughtUp_andRecountsOtherwise() throws Exception {
+        // Arrange
+        UnreadCounterService service = unreadCounterService();
+        givenStoredCount(10L, 1L, 100L, 0L);
+        service.countsFor(10L, "alice");
+        service.onMessagePersisted(messageIn(1L, 101L, 20L));
+        service.onMessagePersisted(messageIn(1L, 102L, 20L));
+        givenRecount(1L, 101L, 10L, 1L, 102L);
+
+        // Act
+        service.onMessagesRead(new MessagesReadEvent(10L, 1L, 101L));
+        Map<Long, Long> partlyRead = service.countsFor(10L, "alice").rooms();
+        service.onMessagesRead(new MessagesReadEvent(10L, 1L, 102L));
+        Map<Long, Long> caughtUp = service.countsFor(10L, "alice").rooms();
+
+        // Assert
+        assertEquals(Map.of(1L, 1L), partlyRead);
+        assertEquals(Map.of(1L, 0L), caughtUp);
+        verify(jdbcTemplate, times(1)).query(anyString(), any(RowCallbackHandler.class), any(), any(), any());
+    }
+
+    @Test
+    void onMessagePersisted_skipsMessagesTheRecountAlreadySaw() throws Exception {
+        // Arrange
+        UnreadCounterService service = unreadCounterService();
+        givenStoredCount(10L, 1L, 100L, 0L);
+        service.countsFor(10L, "alice");
+        service.onMessagePersisted(messageIn(1L, 102L, 20L));
+        givenRecount(1L, 101L, 10L, 2L, 103L);
+        service.onMessagesRead(new MessagesReadEvent(10L, 1L, 101L));
+
+        // Act
+        service.onMessagePersisted(messageIn(1L, 103L, 20L));
+        Map<Long, Long> whileStale = service.countsFor(10L, "alice").rooms();
+        service.onMessagePersisted(messageIn(1L, 103L, 20L));
+        service.onMessagePersisted(messageIn(1L, 104L, 20L));
+
+        // Assert
+        assertEquals(Map.of(1L, 2L), whileStale, "103 is stored, so the recount has it");
+        assertEquals(Map.of(1L, 3L), service.countsFor(10L, "alice").rooms(), "Only 104 is new to the recount");
+    }
+
+    @Test
+    void pushChanges_sendsOnlyChangedRoomsOncePerInterval() throws Exception {
+        // Arrange
+        UnreadCounterService service = unreadCounterService();
+        givenStoredCount(10L, 1L, 100L, 0L);
+        service.countsFor(10L, "alice");
+        service.onMessagePersisted(messageIn(1L, 101L, 20L));
+        service.onMessagePersisted(messageIn(1L, 102L, 20L));
+
+        // Act
+        service.pushChanges();
+        service.pushChanges();
+
+        // Assert
+        verify(messagingTemplate, times(1))
+                .convertAndSendToUser("alice", "/queue/unread", new UnreadCountsDTO(Map.of(1L, 2L)));
+    }
+
+    @Test
+    void onChatRoomDeleted_forgetsTheRoom() throws Exception {
+        // Arrange
+        UnreadCounterService service = unreadCounterService();
+        givenStoredCount(10L, 1L, 100L, 3L);
+        service.countsFor(10L, "alice");
+
+        // Act
+        service.onChatRoomDeleted(new ChatRoomDeletedEvent(1L));
+        service.onMessagePersisted(messageIn(1L, 101L, 20L));
+
+        // Assert
+        assertTrue(service.countsFor(10L, "alice").rooms().isEmpty());
+        service.pushChanges();
+        verifyNoInteractions(messagingTemplate);
+    }
+
+    private UnreadCounterService unreadCounterService() {
+        return new UnreadCounterService(jdbcTemplate, readReceiptService, messagingTemplate,
+                new SimpleMeterRegistry(), 100, 30);
+    }
+
+    private void givenStoredCount(final Long userId, final long roomId, final long watermark, final long count)
+            throws Exception {
+        ResultSet row = mock(ResultSet.class);
+        when(row.getLong(1)).thenReturn(roomId);
+        when(row.getLong(2)).thenReturn(watermark);
+        when(row.getLong(3)).thenReturn(count);
+        doAnswer(invocation -> {
+            invocation.<RowCallbackHandler>getArgument(1).processRow(row);
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), eq(userId));
+    }
+
+    private void givenRecount(final long roomId, final long watermark, final Long userId, final long count,
+                              final long countedThrough) throws Exception {
+        ResultSet row = mock(ResultSet.class);
+        when(row.getLong(1)).thenReturn(count);
+        when(row.getLong(2)).thenReturn(countedThrough);
+        doAnswer(invocation -> {
+            invocation.<RowCallbackHandler>getArgument(1).processRow(row);
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), eq(roomId), eq(watermark), eq(userId));
+    }
+
+    private static MessagePersistedEvent messageIn(final Long roomId, final Long messageId, final Long senderId) {
+        return new MessagePersistedEvent(messageId, roomId, senderId, "user" + senderId, "hi",
+                Message.MessageType.TEXT, LocalDateTime.now());
+    }
+}
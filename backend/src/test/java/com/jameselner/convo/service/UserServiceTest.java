@@ -1,6 +1,7 @@
 package com.jameselner.convo.service;
 
 import com.jameselner.convo.dto.UserDTO;
+import com.jameselner.convo.exception.ResourceNotFoundException;
 import com.jameselner.convo.model.User;
 import com.jameselner.convo.repository.UserRepository;
 import org.junit.jupiter.api.Test;
@@ -9,10 +10,10 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
-import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
+import static com.jameselner.convo.model.User.UserStatus.AWAY;
 import static com.jameselner.convo.model.User.UserStatus.OFFLINE;
 import static com.jameselner.convo.model.User.UserStatus.ONLINE;
 import static org.junit.jupiter.api.Assertions.*;
@@ -28,40 +29,28 @@ class UserServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private PresenceService presenceService;
+
     @InjectMocks
     private UserService service;
 
     @Test
-    void updateUserStatus_setsStatusAndLastSeen_andSaves() {
-        // Arrange
-        String username = "test-user";
-        User user = new User();
-        user.setUsername(username);
-        user.setStatus(OFFLINE);
-
-        when(userRepository.findByUsername(username)).thenReturn(Optional.of(user));
-        when(userRepository.save(any(User.class))).thenAnswer(inv -> inv.getArgument(0));
-
-        LocalDateTime before = LocalDateTime.now();
-
+    void updateUserStatus_delegatesToPresenceWithoutWritingTheRow() {
         // Act
-        service.updateUserStatus(username, "ONLINE");
-
-        LocalDateTime after = LocalDateTime.now();
+        service.updateUserStatus("test-user", "AWAY");
 
         // Assert
-        assertEquals(ONLINE, user.getStatus(), "Status should be updated to ONLINE");
-        assertNotNull(user.getLastSeen(), "Last seen should be set");
-        assertFalse(user.getLastSeen().isBefore(before), "Last seen should not be before the call");
-        assertFalse(user.getLastSeen().isAfter(after), "Last seen should not be after the call");
-        verify(userRepository, times(1)).save(user);
+        verify(presenceService, times(1)).setStatus("test-user", AWAY);
+        verifyNoInteractions(userRepository);
     }
 
     @Test
     void updateUserStatus_throwsWhenUserNotFound() {
         // Arrange
         String username = "missing";
-        when(userRepository.findByUsername(username)).thenReturn(Optional.empty());
+        doThrow(new ResourceNotFoundException("User", username))
+                .when(presenceService).setStatus(username, ONLINE);
 
         // Act + Assert
         RuntimeException ex = assertThrows(RuntimeException.class,
@@ -97,25 +86,34 @@ class UserServiceTest {
     }
 
     @Test
-    void getOnlineUsers_mapsEntitiesToDTOs() {
+    void getUserByUsername_prefersInMemoryStatus() {
         // Arrange
-        User u1 = new User();
-        u1.setUsername("u1");
-        u1.setStatus(ONLINE);
+        User user = new User();
+        user.setUsername("alice");
+        user.setStatus(OFFLINE);
+        when(userRepository.findByUsername("alice")).thenReturn(Optional.of(user));
+        when(presenceService.statusOf("alice")).thenReturn(Optional.of(ONLINE));
 
-        User u2 = new User();
-        u2.setUsername("u2");
-        u2.setStatus(ONLINE);
+        // Act
+        UserDTO dto = service.getUserByUsername("alice");
 
-        when(userRepository.findByStatus(ONLINE)).thenReturn(List.of(u1, u2));
+        // Assert
+        assertEquals("ONLINE", dto.getStatus(), "Unflushed status should win over the row");
+    }
+
+    @Test
+    void getOnlineUsers_servedFromPresence() {
+        // Arrange
+        UserDTO u1 = new UserDTO();
+        u1.setUsername("u1");
+        when(presenceService.getOnlineUsers()).thenReturn(List.of(u1));
 
         // Act
         List<UserDTO> result = service.getOnlineUsers();
 
         // Assert
-        assertNotNull(result);
-        assertEquals(2, result.size(), "Should return two DTOs");
-        verify(userRepository, times(1)).findByStatus(ONLINE);
+        assertEquals(List.of(u1), result);
+        verify(userRepository, never()).findByStatus(any());
     }
 
     @Test
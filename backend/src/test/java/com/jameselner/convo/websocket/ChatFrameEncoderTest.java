@@ -0,0 +1,105 @@
+package com.jameselner.convo.websocket;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jameselner.convo.dto.ChatMessageDTO;
+import com.jameselner.convo.dto.EncodedFrame;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.util.MimeTypeUtils;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for serialize-once chat frames
+ */
+@ExtendWith(MockitoExtension.class)
+class ChatFrameEncoderTest {
+
+    @Mock
+    private SimpMessagingTemplate messagingTemplate;
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private ChatFrameEncoder encoder;
+
+    @BeforeEach
+    void setUp() {
+        encoder = new ChatFrameEncoder(objectMapper, messagingTemplate);
+    }
+
+    @Test
+    void encode_serializesTheMessageOnce() throws Exception {
+        // Arrange
+        ChatMessageDTO message = message();
+
+        // Act
+        EncodedFrame first = encoder.encode(message);
+        EncodedFrame second = encoder.encode(message);
+
+        // Assert
+        assertSame(first, second);
+        assertSame(first, message.getEncodedFrame());
+        assertEquals(MimeTypeUtils.APPLICATION_JSON, first.contentType());
+        JsonNode json = objectMapper.readTree(first.payload());
+        assertEquals(42L, json.get("id").asLong());
+        assertEquals("alice", json.get("senderUsername").asText());
+        assertEquals("2026-01-02T03:04:05", json.get("timestamp").asText());
+        assertFalse(json.has("encodedFrame"));
+    }
+
+    @Test
+    void encode_matchesTheMessageConverterOutput() throws Exception {
+        // Arrange
+        ChatMessageDTO message = message();
+        JsonNode expected = objectMapper.valueToTree(message);
+
+        // Act
+        EncodedFrame frame = encoder.encode(message);
+
+        // Assert
+        assertEquals(expected, objectMapper.readTree(frame.payload()));
+    }
+
+    @Test
+    void broadcast_sendsTheCachedBytesAsJsonWithTheirSource() {
+        // Arrange
+        ChatMessageDTO message = message();
+        EncodedFrame frame = encoder.encode(message);
+
+        // Act
+        encoder.broadcast("/topic/room/7", message);
+
+        // Assert
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Message<byte[]>> sent = ArgumentCaptor.forClass(Message.class);
+        verify(messagingTemplate).send(eq("/topic/room/7"), sent.capture());
+        assertSame(frame.payload(), sent.getValue().getPayload());
+        assertEquals(MimeTypeUtils.APPLICATION_JSON, SimpMessageHeaderAccessor.wrap(sent.getValue()).getContentType());
+        assertSame(message, sent.getValue().getHeaders().get(CompactFrameTranscoder.SOURCE_HEADER));
+    }
+
+    private static ChatMessageDTO message() {
+        return ChatMessageDTO.builder()
+                .id(42L)
+                .chatRoomId(7L)
+                .senderId(3L)
+                .senderUsername("alice")
+                .timestamp(LocalDateTime.of(2026, 1, 2, 3, 4, 5))
+                .content("hello")
+                .type(ChatMessageDTO.MessageType.CHAT)
+                .build();
+    }
+}
@@ -0,0 +1,90 @@
+package com.jameselner.convo.websocket;
+
+import com.jameselner.convo.cluster.ClusterBrokerInterceptor;
+import com.jameselner.convo.dto.ChatErrorDTO;
+import com.jameselner.convo.dto.ChatMessageDTO;
+import com.jameselner.convo.dto.UserStatusDTO;
+import com.jameselner.convo.event.PresenceChangedEvent;
+import com.jameselner.convo.exception.MessageBacklogFullException;
+import com.jameselner.convo.model.User;
+import com.jameselner.convo.security.CustomUserDetailsService;
+import com.jameselner.convo.service.ChatService;
+import com.jameselner.convo.service.ReadReceiptService;
+import com.jameselner.convo.service.RoomLaneExecutor;
+import com.jameselner.convo.service.TypingAggregator;
+import com.jameselner.convo.service.UserService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.security.Principal;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for lane rejections and presence deltas in the STOMP controller
+ */
+@ExtendWith(MockitoExtension.class)
+class ChatWebSocketControllerTest {
+
+    @Mock
+    private ChatService chatService;
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private ReadReceiptService readReceiptService;
+
+    @Mock
+    private TypingAggregator typingAggregator;
+
+    @Mock
+    private RoomLaneExecutor roomLaneExecutor;
+
+    @Mock
+    private CustomUserDetailsService userDetailsService;
+
+    @Mock
+    private ChatFrameEncoder chatFrameEncoder;
+
+    @Mock
+    private SimpMessagingTemplate messagingTemplate;
+
+    @InjectMocks
+    private ChatWebSocketController controller;
+
+    @Test
+    void sendMessage_tellsTheSenderWhenTheLaneIsFull() {
+        // Arrange
+        doThrow(new MessageBacklogFullException(1000))
+                .when(roomLaneExecutor).execute(eq(7L), any(Runnable.class), any());
+        Principal alice = () -> "alice";
+
+        // Act
+        controller.sendMessage(7L, ChatMessageDTO.builder().content("hello").build(), alice);
+
+        // Assert
+        verify(messagingTemplate).convertAndSendToUser(eq("alice"), eq("/queue/errors"),
+                argThat((ChatErrorDTO error) -> error.chatRoomId().equals(7L)
+                        && error.errorCode().equals("MESSAGE_BACKLOG_FULL")));
+        verifyNoInteractions(chatService, chatFrameEncoder);
+    }
+
+    @Test
+    void onPresenceChanged_keepsTheDeltaOnThisNode() {
+        // Act
+        controller.onPresenceChanged(new PresenceChangedEvent(1L, "alice", User.UserStatus.OFFLINE));
+
+        // Assert
+        verify(messagingTemplate).convertAndSend(eq("/topic/user-status"),
+                eq(new UserStatusDTO(1L, "alice", "OFFLINE")),
+                argThat((Map<String, Object> headers) ->
+                        Boolean.TRUE.equals(headers.get(ClusterBrokerInterceptor.NODE_LOCAL_HEADER))));
+    }
+}
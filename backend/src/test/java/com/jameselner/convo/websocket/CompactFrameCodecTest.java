@@ -0,0 +1,114 @@
+package com.jameselner.convo.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jameselner.convo.dto.ChatMessageDTO;
+import com.jameselner.convo.dto.UserStatusDTO;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the compact binary wire format
+ */
+class CompactFrameCodecTest {
+
+    @Test
+    void chatMessage_roundTripsEveryField() {
+        // Arrange
+        ChatMessageDTO message = ChatMessageDTO.builder()
+                .id(7_234_567_890_123_456_789L)
+                .chatRoomId(12L)
+                .senderId(-1L)
+                .senderUsername("Zoë")
+                .timestamp(LocalDateTime.of(2026, 3, 4, 5, 6, 7, 123_456_789))
+                .content("Ahoj 👋, how's it going?")
+                .type(ChatMessageDTO.MessageType.ORACLE)
+                .edited(true)
+                .readByCount(3)
+                .oracleMetadata(ChatMessageDTO.OracleMetadata.builder()
+                        .messagesAnalyzed(300)
+                        .uniqueTokens(1200)
+                        .chainOrder(2)
+                        .modelBytes(5_000_000_000L)
+                        .contextNodes(4000)
+                        .backoffSteps(1)
+                        .build())
+                .build();
+
+        // Act
+        ChatMessageDTO decoded = CompactFrameCodec.decodeChatMessage(CompactFrameCodec.encode(message));
+
+        // Assert
+        assertEquals(message, decoded);
+    }
+
+    @Test
+    void chatMessage_leavesAbsentFieldsOut() {
+        // Arrange
+        ChatMessageDTO join = ChatMessageDTO.builder()
+                .chatRoomId(5L)
+                .senderUsername("bob")
+                .type(ChatMessageDTO.MessageType.JOIN)
+                .build();
+
+        // Act
+        byte[] frame = CompactFrameCodec.encode(join);
+        ChatMessageDTO decoded = CompactFrameCodec.decodeChatMessage(frame);
+
+        // Assert
+        assertEquals(join, decoded);
+        assertNull(decoded.getId());
+        assertNull(decoded.getTimestamp());
+        // kind, flags, room, username (1 + 3), type, readByCount
+        assertEquals(9, frame.length);
+    }
+
+    @Test
+    void chatMessage_isSmallerThanItsJson() throws Exception {
+        // Arrange
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        ChatMessageDTO message = ChatMessageDTO.builder()
+                .id(7_234_567_890_123_456_789L)
+                .chatRoomId(12L)
+                .senderId(42L)
+                .senderUsername("alice")
+                .timestamp(LocalDateTime.of(2026, 3, 4, 5, 6, 7, 123_000_000))
+                .content("See you at the standup")
+                .type(ChatMessageDTO.MessageType.CHAT)
+                .build();
+
+        // Act
+        byte[] compact = CompactFrameCodec.encode(message);
+        byte[] json = objectMapper.writeValueAsBytes(message);
+
+        // Assert
+        assertTrue(compact.length * 2 < json.length, compact.length + " vs " + json.length + " bytes");
+    }
+
+    @Test
+    void userStatus_roundTrips() {
+        // Arrange
+        UserStatusDTO status = new UserStatusDTO(99L, "carol", "ONLINE");
+        UserStatusDTO sparse = new UserStatusDTO(null, "dave", null);
+
+        // Act & Assert
+        assertEquals(status, CompactFrameCodec.decodeUserStatus(CompactFrameCodec.encode(status)));
+        assertEquals(sparse, CompactFrameCodec.decodeUserStatus(CompactFrameCodec.encode(sparse)));
+    }
+
+    @Test
+    void decode_rejectsTheWrongKindAndTruncatedFrames() {
+        // Arrange
+        byte[] status = CompactFrameCodec.encode(new UserStatusDTO(1L, "erin", "AWAY"));
+        byte[] message = CompactFrameCodec.encode(ChatMessageDTO.builder().content("hello").build());
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> CompactFrameCodec.decodeChatMessage(status));
+        assertThrows(IllegalArgumentException.class,
+                () -> CompactFrameCodec.decodeChatMessage(Arrays.copyOf(message, message.length - 3)));
+    }
+}
@@ -0,0 +1,152 @@
+package com.jameselner.convo.websocket;
+
+import com.jameselner.convo.dto.ChatMessageDTO;
+import com.jameselner.convo.dto.UserStatusDTO;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Unit tests for wire format negotiation and compact outbound frames
+ */
+class CompactFrameTranscoderTest {
+
+    private final MessageChannel channel = mock(MessageChannel.class);
+    private final WireFormatNegotiator negotiator = new WireFormatNegotiator(true);
+    private final CompactFrameTranscoder transcoder = new CompactFrameTranscoder(negotiator);
+
+    @Test
+    void connect_choosesCompactOnlyOnABinaryTransport() {
+        // Arrange
+        Map<String, Object> nativeAttributes = new HashMap<>(Map.of(WireFormatNegotiator.BINARY_TRANSPORT_ATTRIBUTE, true));
+
+        // Act
+        negotiator.preSend(connect("s1", WireFormat.COMPACT.contentType(), nativeAttributes), channel);
+        negotiator.preSend(connect("s2", WireFormat.COMPACT.contentType(), new HashMap<>()), channel);
+        negotiator.preSend(connect("s3", MimeTypeUtils.APPLICATION_JSON, nativeAttributes), channel);
+        negotiator.preSend(connect("s4", null, nativeAttributes), channel);
+
+        // Assert
+        assertEquals(WireFormat.COMPACT, negotiator.formatOf("s1"));
+        assertEquals(WireFormat.JSON, negotiator.formatOf("s2"), "SockJS sessions can't take binary frames");
+        assertEquals(WireFormat.JSON, negotiator.formatOf("s3"));
+        assertEquals(WireFormat.JSON, negotiator.formatOf("s4"));
+    }
+
+    @Test
+    void connect_staysOnJsonWhenCompactIsDisabled() {
+        // Arrange
+        WireFormatNegotiator disabled = new WireFormatNegotiator(false);
+
+        // Act
+        disabled.preSend(connect("s1", WireFormat.COMPACT.contentType(),
+                new HashMap<>(Map.of(WireFormatNegotiator.BINARY_TRANSPORT_ATTRIBUTE, true))), channel);
+
+        // Assert
+        assertEquals(WireFormat.JSON, disabled.formatOf("s1"));
+    }
+
+    @Test
+    void preSend_encodesChatMessagesOnceForCompactSessions() {
+        // Arrange
+        negotiateCompact("compact-1");
+        negotiateCompact("compact-2");
+        ChatMessageDTO message = ChatMessageDTO.builder().id(1L).content("hi").build();
+
+        // Act
+        Message<?> first = transcoder.preSend(outbound("compact-1", message), channel);
+        Message<?> second = transcoder.preSend(outbound("compact-2", message), channel);
+
+        // Assert
+        byte[] payload = (byte[]) first.getPayload();
+        assertEquals(message, CompactFrameCodec.decodeChatMessage(payload));
+        assertSame(payload, second.getPayload());
+        assertEquals(WireFormat.COMPACT.contentType(), SimpMessageHeaderAccessor.wrap(first).getContentType());
+        assertNull(first.getHeaders().get(CompactFrameTranscoder.SOURCE_HEADER));
+    }
+
+    @Test
+    void preSend_encodesUserStatusForCompactSessions() {
+        // Arrange
+        negotiateCompact("compact");
+        UserStatusDTO status = new UserStatusDTO(3L, "alice", "ONLINE");
+
+        // Act
+        Message<?> sent = transcoder.preSend(outbound("compact", status), channel);
+
+        // Assert
+        assertEquals(status, CompactFrameCodec.decodeUserStatus((byte[]) sent.getPayload()));
+    }
+
+    @Test
+    void preSend_leavesJsonSessionsAndUnknownSourcesAlone() {
+        // Arrange
+        negotiateCompact("compact");
+        Message<byte[]> toJsonSession = outbound("json", ChatMessageDTO.builder().id(1L).build());
+        Message<byte[]> withoutSource = outbound("compact", null);
+
+        // Act & Assert
+        assertSame(toJsonSession, transcoder.preSend(toJsonSession, channel));
+        assertSame(withoutSource, transcoder.preSend(withoutSource, channel));
+    }
+
+    @Test
+    void disconnect_forgetsTheSession() {
+        // Arrange
+        negotiateCompact("compact");
+
+        // Act
+        Message<byte[]> disconnect = MessageBuilder.createMessage(new byte[0],
+                StompHeaderAccessor.create(StompCommand.DISCONNECT).getMessageHeaders());
+        negotiator.onDisconnect(new SessionDisconnectEvent(this, disconnect, "compact", CloseStatus.NORMAL));
+
+        // Assert
+        assertEquals(WireFormat.JSON, negotiator.formatOf("compact"));
+    }
+
+    private void negotiateCompact(final String sessionId) {
+        negotiator.preSend(connect(sessionId, WireFormat.COMPACT.contentType(),
+                new HashMap<>(Map.of(WireFormatNegotiator.BINARY_TRANSPORT_ATTRIBUTE, true))), channel);
+    }
+
+    private static Message<byte[]> connect(
+            final String sessionId,
+            final MimeType contentType,
+            final Map<String, Object> sessionAttributes
+    ) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.setSessionId(sessionId);
+        accessor.setSessionAttributes(sessionAttributes);
+        if (contentType != null) {
+            accessor.setContentType(contentType);
+        }
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> outbound(final String sessionId, final Object source) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setDestination("/topic/room/1");
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        if (source != null) {
+            accessor.setHeader(CompactFrameTranscoder.SOURCE_HEADER, source);
+        }
+        return MessageBuilder.createMessage("{}".getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+    }
+}
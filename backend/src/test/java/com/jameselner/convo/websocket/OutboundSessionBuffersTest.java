@@ -0,0 +1,175 @@
+package com.jameselner.convo.websocket;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for per-session send queues and slow-consumer eviction
+ */
+@ExtendWith(MockitoExtension.class)
+class OutboundSessionBuffersTest {
+
+    @Mock
+    private WebSocketHandler handler;
+
+    @Mock
+    private WebSocketSession socket;
+
+    @Test
+    void sendMessage_writesFramesInOrderWithoutBlockingTheSender() throws Exception {
+        // Arrange
+        OutboundSessionBuffers buffers = new OutboundSessionBuffers(new SimpleMeterRegistry(), 1024, 10_000, "terminate", false);
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            written.add(invocation.<TextMessage>getArgument(0).getPayload());
+            return null;
+        }).when(socket).sendMessage(any());
+        WebSocketSession session = connect(buffers);
+
+        // Act
+        for (int i = 0; i < 5; i++) {
+            session.sendMessage(new TextMessage("frame-" + i));
+        }
+        release.countDown();
+
+        // Assert
+        verify(socket, timeout(5_000).times(5)).sendMessage(any());
+        assertEquals(List.of("frame-0", "frame-1", "frame-2", "frame-3", "frame-4"), written);
+    }
+
+    @Test
+    void sendMessage_closesTheSessionWhenItsQueueOverflows() throws Exception {
+        // Arrange
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        OutboundSessionBuffers buffers = new OutboundSessionBuffers(meterRegistry, 10, 10_000, "terminate", false);
+        CountDownLatch release = new CountDownLatch(1);
+        blockWrites(release);
+        WebSocketSession session = connect(buffers);
+        session.sendMessage(new TextMessage("stuck"));
+        verify(socket, timeout(5_000)).sendMessage(any());
+
+        // Act
+        session.sendMessage(new TextMessage("12345"));
+        session.sendMessage(new TextMessage("123456"));
+        session.sendMessage(new TextMessage("ignored"));
+
+        // Assert
+        verify(socket, timeout(5_000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertEquals(1, meterRegistry.get("convo.websocket.slow-consumers").tag("reason", "buffer").counter().count());
+        assertEquals(0, meterRegistry.get("convo.websocket.outbound.buffered").gauge().value());
+        release.countDown();
+    }
+
+    @Test
+    void dropStrategy_discardsTheOldestQueuedFrames() throws Exception {
+        // Arrange
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        OutboundSessionBuffers buffers = new OutboundSessionBuffers(meterRegistry, 10, 10_000, "drop", false);
+        CountDownLatch release = new CountDownLatch(1);
+        blockWrites(release);
+        WebSocketSession session = connect(buffers);
+        session.sendMessage(new TextMessage("stuck"));
+        verify(socket, timeout(5_000)).sendMessage(any());
+
+        // Act
+        session.sendMessage(new TextMessage("old01"));
+        session.sendMessage(new TextMessage("old02"));
+        session.sendMessage(new TextMessage("new03"));
+        release.countDown();
+
+        // Assert
+        ArgumentCaptor<WebSocketMessage<?>> frames = ArgumentCaptor.forClass(WebSocketMessage.class);
+        verify(socket, timeout(5_000).times(3)).sendMessage(frames.capture());
+        assertEquals(List.of("stuck", "old02", "new03"), frames.getAllValues().stream().map(WebSocketMessage::getPayload).toList());
+        assertEquals(1, meterRegistry.get("convo.websocket.outbound.dropped").counter().count());
+        verify(socket, never()).close(any());
+    }
+
+    @Test
+    void sweep_closesSessionsStuckInAWrite() throws Exception {
+        // Arrange
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        OutboundSessionBuffers buffers = new OutboundSessionBuffers(meterRegistry, 1024, 1, "terminate", false);
+        CountDownLatch release = new CountDownLatch(1);
+        blockWrites(release);
+        WebSocketSession session = connect(buffers);
+        session.sendMessage(new TextMessage("stuck"));
+        verify(socket, timeout(5_000)).sendMessage(any());
+        Thread.sleep(10);
+
+        // Act
+        buffers.sweep();
+        buffers.sweep();
+
+        // Assert
+        verify(socket, timeout(5_000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertEquals(1, meterRegistry.get("convo.websocket.slow-consumers").tag("reason", "time").counter().count());
+        release.countDown();
+    }
+
+    @Test
+    void afterConnectionClosed_forgetsTheSession() throws Exception {
+        // Arrange
+        OutboundSessionBuffers buffers = new OutboundSessionBuffers(new SimpleMeterRegistry(), 1024, 10_000, "terminate", false);
+        WebSocketHandler decorated = buffers.decorate(handler);
+        when(socket.getId()).thenReturn("s1");
+        decorated.afterConnectionEstablished(socket);
+
+        // Act
+        decorated.afterConnectionClosed(socket, CloseStatus.NORMAL);
+
+        // Assert
+        assertEquals(0, buffers.getSessionCount());
+        verify(handler).afterConnectionClosed(argThat(session -> session != socket), eq(CloseStatus.NORMAL));
+    }
+
+    @Test
+    void destroy_stopsTheWritersAndLaterFramesAreDiscarded() throws Exception {
+        // Arrange
+        OutboundSessionBuffers buffers = new OutboundSessionBuffers(new SimpleMeterRegistry(), 1024, 10_000, "terminate", false);
+        WebSocketSession session = connect(buffers);
+
+        // Act
+        buffers.destroy();
+        session.sendMessage(new TextMessage("too late"));
+
+        // Assert
+        verify(socket, never()).sendMessage(any());
+    }
+
+    private WebSocketSession connect(final OutboundSessionBuffers buffers) throws Exception {
+        lenient().when(socket.getId()).thenReturn("s1");
+        ArgumentCaptor<WebSocketSession> session = ArgumentCaptor.forClass(WebSocketSession.class);
+        buffers.decorate(handler).afterConnectionEstablished(socket);
+        verify(handler).afterConnectionEstablished(session.capture());
+        return session.getValue();
+    }
+
+    private void blockWrites(final CountDownLatch release) throws Exception {
+        doAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(socket).sendMessage(any());
+    }
+}
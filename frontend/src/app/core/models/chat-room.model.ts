@@ -10,4 +10,11 @@ export interface ChatRoom {
     createdAt: Date;
     memberCount: number;
     lastMessage?: ChatMessage;
-}
\ No newline at end of file
+}
+
+/**
+ * Unread message counts by room ID; pushed updates only carry the rooms that changed.
+ */
+export interface UnreadCounts {
+    rooms: { [roomId: string]: number };
+}
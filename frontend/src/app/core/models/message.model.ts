@@ -2,6 +2,15 @@ export interface OracleMetadata {
     messagesAnalyzed: number;
     uniqueTokens: number;
     chainOrder: number;
+    modelBytes?: number;
+    contextNodes?: number;
+    backoffSteps?: number;
+}
+
+export interface OracleRequest {
+    roomId: number;
+    order: number;
+    coalesced: boolean;
 }
 
 export interface ChatMessage {
@@ -18,6 +27,15 @@ export interface ChatMessage {
     oracleMetadata?: OracleMetadata;
 }
 
+/**
+ * Everyone typing in a room on one backend node; replaces that node's previous set.
+ */
+export interface TypingUpdate {
+    chatRoomId: number;
+    node: number;
+    usernames: string[];
+}
+
 export enum MessageType {
     CHAT = 'CHAT',
     JOIN = 'JOIN',
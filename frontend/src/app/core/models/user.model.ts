@@ -5,10 +5,16 @@ export interface User {
     firstName?: string;
     lastName?: string;
     avatarUrl?: string;
-    status: 'ONLINE' | 'OFFLINE' | 'AWAY';
+    status: 'ONLINE' | 'OFFLINE' | 'AWAY' | 'BUSY';
     lastSeen?: Date;
 }
 
+export interface UserStatusChange {
+    userId: number;
+    username: string;
+    status: 'ONLINE' | 'OFFLINE' | 'AWAY' | 'BUSY';
+}
+
 export interface AuthenticationRequest {
     username: string;
     password: string;
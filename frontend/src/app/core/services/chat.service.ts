@@ -2,16 +2,27 @@ import { Injectable } from '@angular/core';
 import { HttpClient, HttpParams } from '@angular/common/http';
 import { Observable, BehaviorSubject } from 'rxjs';
 import { tap } from 'rxjs/operators';
-import { ChatRoom } from '../models/chat-room.model';
-import { ChatMessage } from '../models/message.model';
+import { ChatRoom, UnreadCounts } from '../models/chat-room.model';
+import { ChatMessage, OracleRequest } from '../models/message.model';
 import { environment } from '../../../environments/environment';
 
-export interface PagedMessages {
-    content: ChatMessage[];
-    totalElements: number;
-    totalPages: number;
+export interface MessageHistory {
+    messages: ChatMessage[];
+    hasMore: boolean;
+    nextCursor: string | null;
+}
+
+export interface SearchHit {
+    message: ChatMessage;
+    score: number;
+    highlights: { start: number; end: number }[];
+}
+
+export interface SearchResult {
+    hits: SearchHit[];
+    totalHits: number;
+    page: number;
     size: number;
-    number: number;
 }
 
 @Injectable({
@@ -45,22 +56,23 @@ export class ChatService {
             );
     }
 
-    loadMessages(roomId: number, page: number = 0, size: number = 50): Observable<PagedMessages> {
-        const params = new HttpParams()
-            .set('page', page.toString())
-            .set('size', size.toString());
+    loadMessages(roomId: number, cursor: string | null = null, size: number = 50): Observable<MessageHistory> {
+        let params = new HttpParams().set('size', size.toString());
+        if (cursor) {
+            params = params.set('cursor', cursor);
+        }
 
-        return this.http.get<PagedMessages>(`${this.API_URL}/room/${roomId}/messages`, { params })
+        return this.http.get<MessageHistory>(`${this.API_URL}/room/${roomId}/messages`, { params })
             .pipe(
-                tap(pagedMessages => {
+                tap(history => {
                     // Convert timestamp strings to Date objects
-                    const messages = pagedMessages.content.map(msg => ({
+                    const messages = history.messages.map(msg => ({
                         ...msg,
                         timestamp: new Date(msg.timestamp)
                     }));
 
-                    // For pagination, prepend older messages
-                    if (page === 0) {
+                    // Older slices are prepended to what is already loaded
+                    if (!cursor) {
                         this.messagesSubject.next(messages.reverse());
                     } else {
                         const currentMessages = this.messagesSubject.value;
@@ -70,9 +82,12 @@ export class ChatService {
             );
     }
 
-    searchMessages(roomId: number, keyword: string): Observable<ChatMessage[]> {
-        const params = new HttpParams().set('keyword', keyword);
-        return this.http.get<ChatMessage[]>(`${this.API_URL}/room/${roomId}/search`, { params });
+    searchMessages(roomId: number, keyword: string, page: number = 0, size: number = 20): Observable<SearchResult> {
+        const params = new HttpParams()
+            .set('keyword', keyword)
+            .set('page', page.toString())
+            .set('size', size.toString());
+        return this.http.get<SearchResult>(`${this.API_URL}/room/${roomId}/search`, { params });
     }
 
     createChatRoom(name: string, description: string): Observable<ChatRoom> {
@@ -118,9 +133,16 @@ export class ChatService {
         return this.http.post<void>(`${this.API_URL}/messages/${messageId}/read`, {});
     }
 
-    askOracle(roomId: number, order: number = 2): Observable<ChatMessage> {
-        const params = new HttpParams().set('order', order.toString());
-        return this.http.post<ChatMessage>(`${this.API_URL}/room/${roomId}/oracle/ask`, {}, { params });
+    getUnreadCounts(): Observable<UnreadCounts> {
+        return this.http.get<UnreadCounts>(`${this.API_URL}/unread`);
+    }
+
+    /**
+     * Accepted with 202; the prophecy arrives on the room topic like any other message.
+     */
+    askOracle(roomId: number, order: number = 2): Observable<OracleRequest> {
+        const params = new HttpParams().set('order', order.toString()).set('async', 'true');
+        return this.http.post<OracleRequest>(`${this.API_URL}/room/${roomId}/oracle/ask`, {}, { params });
     }
 
     addMessage(message: ChatMessage): void {
@@ -2,7 +2,7 @@ import { Injectable } from '@angular/core';
 import { HttpClient } from '@angular/common/http';
 import { Observable, BehaviorSubject } from 'rxjs';
 import { tap } from 'rxjs/operators';
-import { User } from '../models/user.model';
+import { User, UserStatusChange } from '../models/user.model';
 import { environment } from '../../../environments/environment';
 
 @Injectable({
@@ -27,11 +27,23 @@ export class UserService {
             );
     }
 
+    applyStatusChange(change: UserStatusChange): void {
+        const others = this.onlineUsersSubject.value.filter(user => user.id !== change.userId);
+        if (change.status !== 'ONLINE') {
+            this.onlineUsersSubject.next(others);
+            return;
+        }
+        const existing = this.onlineUsersSubject.value.find(user => user.id === change.userId);
+        const user = existing ?? { id: change.userId, username: change.username, email: '', status: 'ONLINE' };
+        this.onlineUsersSubject.next([...others, { ...user, status: 'ONLINE' }]
+            .sort((a, b) => a.username.localeCompare(b.username)));
+    }
+
     updateProfile(user: Partial<User>): Observable<User> {
         return this.http.put<User>(`${this.API_URL}/me`, user);
     }
 
-    updateStatus(status: 'ONLINE' | 'OFFLINE' | 'AWAY'): Observable<void> {
+    updateStatus(status: 'ONLINE' | 'OFFLINE' | 'AWAY' | 'BUSY'): Observable<void> {
         return this.http.put<void>(`${this.API_URL}/status`, { status });
     }
 }
\ No newline at end of file
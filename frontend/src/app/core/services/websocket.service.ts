@@ -1,9 +1,11 @@
 import { Injectable } from '@angular/core';
-import { BehaviorSubject, Observable, filter } from 'rxjs';
+import { BehaviorSubject, Observable, Subject, filter } from 'rxjs';
 import { Client, StompSubscription, IMessage } from '@stomp/stompjs';
 import SockJS from 'sockjs-client';
 import { AuthService } from './auth.service';
-import { ChatMessage } from '../models/message.model';
+import { ChatMessage, TypingUpdate } from '../models/message.model';
+import { UserStatusChange } from '../models/user.model';
+import { UnreadCounts } from '../models/chat-room.model';
 import { environment } from '../../../environments/environment';
 
 @Injectable({
@@ -12,7 +14,9 @@ import { environment } from '../../../environments/environment';
 export class WebSocketService {
     private stompClient: Client | null = null;
     private messageSubject = new BehaviorSubject<ChatMessage | null>(null);
-    private typingSubject = new BehaviorSubject<ChatMessage | null>(null);
+    private typingSubject = new BehaviorSubject<TypingUpdate | null>(null);
+    private userStatusSubject = new Subject<UserStatusChange>();
+    private unreadSubject = new Subject<UnreadCounts>();
     private connectionSubject = new BehaviorSubject<boolean>(false);
     private currentRoomId: number | null = null;
 
@@ -21,8 +25,12 @@ export class WebSocketService {
     ) as Observable<ChatMessage>;
 
     public typing$ = this.typingSubject.asObservable().pipe(
-        filter(msg => msg !== null)
-    ) as Observable<ChatMessage>;
+        filter(update => update !== null)
+    ) as Observable<TypingUpdate>;
+
+    public userStatus$ = this.userStatusSubject.asObservable();
+
+    public unread$ = this.unreadSubject.asObservable();
 
     public connected$ = this.connectionSubject.asObservable();
 
@@ -55,6 +63,8 @@ export class WebSocketService {
         });
 
         this.stompClient.onConnect = () => {
+            this.subscribeToUserStatus();
+            this.subscribeToUnread();
             this.connectionSubject.next(true);
         };
 
@@ -113,8 +123,7 @@ export class WebSocketService {
         const typingSub = this.stompClient.subscribe(
             typingDestination,
             (message: IMessage) => {
-                const chatMessage: ChatMessage = JSON.parse(message.body);
-                this.typingSubject.next(chatMessage);
+                this.typingSubject.next(JSON.parse(message.body));
             }
         );
         this.subscriptions.set(`typing-${roomId}`, typingSub);
@@ -170,7 +179,11 @@ export class WebSocketService {
         });
     }
 
-    sendTypingIndicator(roomId: number): void {
+    /**
+     * The server keeps us in the room's typing set for a few seconds after each
+     * indicator, so repeating it about once a second is enough.
+     */
+    sendTypingIndicator(roomId: number, stopped = false): void {
         if (!this.stompClient?.connected) {
             return;
         }
@@ -178,7 +191,7 @@ export class WebSocketService {
         const message: Partial<ChatMessage> = {
             chatRoomId: roomId,
             senderUsername: this.authService.getCurrentUsername() || '',
-            type: 'TYPING' as any
+            type: (stopped ? 'STOP_TYPING' : 'TYPING') as any
         };
 
         this.stompClient.publish({
@@ -187,6 +200,54 @@ export class WebSocketService {
         });
     }
 
+    /**
+     * Everything up to this message has been read; the server keeps only the latest.
+     */
+    markRead(roomId: number, messageId: number): void {
+        if (!this.stompClient?.connected) {
+            return;
+        }
+
+        this.stompClient.publish({
+            destination: `/app/read/${roomId}`,
+            body: JSON.stringify({ messageId })
+        });
+    }
+
+    /**
+     * Status changes arrive as deltas; the full online list is only fetched once.
+     */
+    private subscribeToUserStatus(): void {
+        if (!this.stompClient?.connected) {
+            return;
+        }
+
+        const statusSub = this.stompClient.subscribe(
+            '/topic/user-status',
+            (message: IMessage) => {
+                this.userStatusSubject.next(JSON.parse(message.body));
+            }
+        );
+        this.subscriptions.set('user-status', statusSub);
+    }
+
+    /**
+     * Unread counts of rooms that changed, sent to this user only.
+     */
+    private subscribeToUnread(): void {
+        if (!this.stompClient?.connected) {
+            return;
+        }
+
+        const unreadSub = this.stompClient.subscribe(
+            '/user/queue/unread',
+            (message: IMessage) => {
+                this.unreadSubject.next(JSON.parse(message.body));
+            }
+        );
+        this.subscriptions.set('unread', unreadSub);
+    }
+
     private sendJoinMessage(roomId: number): void {
         if (!this.stompClient?.connected) {
             return;
@@ -42,27 +42,28 @@ export class ChatContainerComponent implements OnInit, OnDestroy {
     }
 
     ngOnInit(): void {
-        // Update user status to online
-        this.userService.updateStatus('ONLINE').subscribe();
-
-        // Connect to WebSocket
+        // Connect to WebSocket; the open session marks this user online
         this.webSocketService.connect();
 
         // Monitor connection status
         this.webSocketService.connected$
             .pipe(takeUntil(this.destroy$))
             .subscribe(connected => {
-                if (!connected) {
+                if (connected) {
+                    this.userService.getOnlineUsers().subscribe();
+                } else {
                     console.log('WebSocket disconnected, attempting to reconnect...');
                 }
             });
+
+        // Keep the online list current from status deltas
+        this.webSocketService.userStatus$
+            .pipe(takeUntil(this.destroy$))
+            .subscribe(change => this.userService.applyStatusChange(change));
     }
 
     ngOnDestroy(): void {
-        // Update user status to offline
-        this.userService.updateStatus('OFFLINE').subscribe();
-
-        // Disconnect WebSocket
+        // Disconnect WebSocket; the server takes this user offline once no tab is left
         this.webSocketService.disconnect();
 
         this.destroy$.next();
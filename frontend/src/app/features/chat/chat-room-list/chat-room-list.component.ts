@@ -1,4 +1,4 @@
-import { Component, OnInit, Output, EventEmitter } from '@angular/core';
+import { Component, OnInit, OnDestroy, Output, EventEmitter } from '@angular/core';
 import { CommonModule } from '@angular/common';
 import { MatListModule } from '@angular/material/list';
 import { MatIconModule } from '@angular/material/icon';
@@ -6,10 +6,11 @@ import { MatButtonModule } from '@angular/material/button';
 import { MatDialog, MatDialogModule } from '@angular/material/dialog';
 import { MatSnackBar, MatSnackBarModule } from '@angular/material/snack-bar';
 import { ChatService } from '../../../core/services/chat.service';
+import { WebSocketService } from '../../../core/services/websocket.service';
 import { ChatRoom } from '../../../core/models/chat-room.model';
 import { RoomDialogComponent, RoomDialogData } from '../room-dialog/room-dialog.component';
 import { ConfirmDialogComponent } from '../confirm-dialog/confirm-dialog.component';
-import { Observable } from 'rxjs';
+import { Observable, Subject, filter, takeUntil } from 'rxjs';
 
 @Component({
     selector: 'app-chat-room-list',
@@ -25,14 +26,18 @@ import { Observable } from 'rxjs';
     templateUrl: './chat-room-list.component.html',
     styleUrls: ['./chat-room-list.component.scss']
 })
-export class ChatRoomListComponent implements OnInit {
+export class ChatRoomListComponent implements OnInit, OnDestroy {
     @Output() roomSelected = new EventEmitter<ChatRoom | null>();
 
     chatRooms$: Observable<ChatRoom[]>;
     selectedRoom: ChatRoom | null = null;
+    unread: { [roomId: string]: number } = {};
+
+    private destroy$ = new Subject<void>();
 
     constructor(
         private chatService: ChatService,
+        private webSocketService: WebSocketService,
         private dialog: MatDialog,
         private snackBar: MatSnackBar
     ) {
@@ -41,6 +46,22 @@ export class ChatRoomListComponent implements OnInit {
 
     ngOnInit(): void {
         this.chatService.loadChatRooms().subscribe();
+
+        // The summary is fetched on every (re)connect, then kept current by pushes
+        this.webSocketService.connected$
+            .pipe(filter(connected => connected), takeUntil(this.destroy$))
+            .subscribe(() => {
+                this.chatService.getUnreadCounts().subscribe(counts => this.unread = { ...counts.rooms });
+            });
+
+        this.webSocketService.unread$
+            .pipe(takeUntil(this.destroy$))
+            .subscribe(counts => this.unread = { ...this.unread, ...counts.rooms });
+    }
+
+    ngOnDestroy(): void {
+        this.destroy$.next();
+        this.destroy$.complete();
     }
 
     selectRoom(room: ChatRoom): void {
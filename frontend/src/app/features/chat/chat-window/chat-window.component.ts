@@ -8,7 +8,7 @@ import { Subject, takeUntil } from 'rxjs';
 import { ChatService } from '../../../core/services/chat.service';
 import { WebSocketService } from '../../../core/services/websocket.service';
 import { ChatRoom } from '../../../core/models/chat-room.model';
-import { ChatMessage } from '../../../core/models/message.model';
+import { ChatMessage, TypingUpdate } from '../../../core/models/message.model';
 import { MessageListComponent } from '../message-list/message-list.component';
 import { MessageInputComponent } from '../message-input/message-input.component';
 import { AuthService } from '../../../core/services/auth.service';
@@ -37,7 +37,9 @@ export class ChatWindowComponent implements OnInit, OnDestroy {
     askingOracle = false;
 
     private destroy$ = new Subject<void>();
-    private typingTimeouts = new Map<string, any>();
+    // Typing sets by backend node, each replaced by that node's next update
+    private typingByNode = new Map<number, string[]>();
+    private lastTypingSentAt = 0;
     private currentUsername: string | null;
 
     constructor(
@@ -75,8 +77,8 @@ export class ChatWindowComponent implements OnInit, OnDestroy {
         // Subscribe to typing indicators
         this.webSocketService.typing$
             .pipe(takeUntil(this.destroy$))
-            .subscribe(message => {
-                this.handleTypingIndicator(message);
+            .subscribe(update => {
+                this.handleTypingUpdate(update);
             });
 
         // Connect WebSocket if not already connected
@@ -105,6 +107,8 @@ export class ChatWindowComponent implements OnInit, OnDestroy {
 
         this.currentRoom = room;
         this.chatService.clearMessages();
+        this.typingByNode.clear();
+        this.updateTypingMessage();
 
         // Load messages
         this.chatService.loadMessages(room.id).subscribe({
@@ -112,6 +116,7 @@ export class ChatWindowComponent implements OnInit, OnDestroy {
                 this.loading = false;
                 // Subscribe to new room
                 this.webSocketService.subscribeToRoom(room.id);
+                this.markLatestRead();
             },
             error: (error) => {
                 console.error('Error loading messages:', error);
@@ -123,11 +128,15 @@ export class ChatWindowComponent implements OnInit, OnDestroy {
     sendMessage(content: string): void {
         if (this.currentRoom && content.trim()) {
             this.webSocketService.sendMessage(this.currentRoom.id, content);
+            this.webSocketService.sendTypingIndicator(this.currentRoom.id, true);
+            this.lastTypingSentAt = 0;
         }
     }
 
     onTyping(): void {
-        if (this.currentRoom) {
+        const now = Date.now();
+        if (this.currentRoom && now - this.lastTypingSentAt >= 1000) {
+            this.lastTypingSentAt = now;
             this.webSocketService.sendTypingIndicator(this.currentRoom.id);
         }
     }
@@ -135,6 +144,17 @@ export class ChatWindowComponent implements OnInit, OnDestroy {
     private handleIncomingMessage(message: ChatMessage): void {
         if (message.chatRoomId === this.currentRoom?.id) {
             this.chatService.addMessage(message);
+            this.markLatestRead();
+        }
+    }
+
+    private markLatestRead(): void {
+        if (!this.currentRoom) {
+            return;
+        }
+        const latestId = this.messages.reduce((latest, message) => Math.max(latest, message.id || 0), 0);
+        if (latestId > 0) {
+            this.webSocketService.markRead(this.currentRoom.id, latestId);
         }
     }
 
@@ -145,13 +165,8 @@ export class ChatWindowComponent implements OnInit, OnDestroy {
 
         this.askingOracle = true;
         this.chatService.askOracle(this.currentRoom.id).subscribe({
-            next: (message) => {
-                // In case the WebSocket is delayed, ensure the message is added locally once.
-                message.timestamp = new Date(message.timestamp);
-                const exists = this.messages.some(m => m.id === message.id);
-                if (!exists && message.chatRoomId === this.currentRoom?.id) {
-                    this.chatService.addMessage(message);
-                }
+            next: () => {
+                // The prophecy is broadcast to the room, including to us
                 this.askingOracle = false;
             },
             error: (error) => {
@@ -161,31 +176,17 @@ export class ChatWindowComponent implements OnInit, OnDestroy {
         });
     }
 
-    private handleTypingIndicator(message: ChatMessage): void {
-        if (message.senderUsername === this.currentUsername) {
-            return; // Don't show own typing indicator
+    private handleTypingUpdate(update: TypingUpdate): void {
+        if (update.chatRoomId !== this.currentRoom?.id) {
+            return;
         }
-
-        const username = message.senderUsername;
-        this.typingUsers.add(username);
+        this.typingByNode.set(update.node, update.usernames);
         this.updateTypingMessage();
-
-        // Clear existing timeout
-        if (this.typingTimeouts.has(username)) {
-            clearTimeout(this.typingTimeouts.get(username));
-        }
-
-        // Set new timeout to remove typing indicator
-        const timeout = setTimeout(() => {
-            this.typingUsers.delete(username);
-            this.updateTypingMessage();
-            this.typingTimeouts.delete(username);
-        }, 3000);
-
-        this.typingTimeouts.set(username, timeout);
     }
 
     private updateTypingMessage(): void {
+        this.typingUsers = new Set(Array.from(this.typingByNode.values()).flat()
+            .filter(username => username !== this.currentUsername)); // Don't show own typing indicator
         const users = Array.from(this.typingUsers);
 
         if (users.length === 0) {